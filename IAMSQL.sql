@@ -10,6 +10,9 @@ CREATE TABLE IDENTITIES (
 
 ALTER TABLE IDENTITIES ADD CONSTRAINT IDENTITIES_PK PRIMARY KEY(IDENTITY_UID);
 
+CREATE INDEX IDENTITIES_DISPLAYNAME_IDX ON IDENTITIES(IDENTITY_DISPLAYNAME);
+ALTER TABLE IDENTITIES ADD CONSTRAINT IDENTITIES_EMAIL_UQ UNIQUE (IDENTITY_EMAIL);
+
 INSERT INTO IDENTITIES (IDENTITY_DISPLAYNAME, IDENTITY_EMAIL) VALUES ('Lenka Horvathova', 'l.h@gmail.com');
 INSERT INTO IDENTITIES (IDENTITY_DISPLAYNAME, IDENTITY_EMAIL) VALUES ('Janko Hrasko', 'jh@gmail.com');
 INSERT INTO IDENTITIES (IDENTITY_DISPLAYNAME, IDENTITY_EMAIL) VALUES ('John Smith', 'js@yahoo.com');
@@ -0,0 +1,87 @@
+package fr.epita.iam.datamodel;
+
+/**
+ * This class represents the credentials of a user: a username linked to an identity and a salted hash of the password.
+ * A credential is never changed, a new password produces a new credential.
+ * 
+ * @author Lenka Horvathova
+ */
+public class Credential {
+
+	private final String username;
+	private final String uid;
+	private final int iterations;
+	private final byte[] salt;
+	private final byte[] hash;
+	
+	/**
+	 * This is a Constructor for a Credential class.
+	 * 
+	 * @param username			a name the user logs in with
+	 * @param uid				a unique identification of the user's identity, null for a user without an identity
+	 * @param iterations		the number of iterations used for the hash
+	 * @param salt				the random salt of the hash
+	 * @param hash				the hash of the password
+	 */
+	public Credential(String username, String uid, int iterations, byte[] salt, byte[] hash) {
+		
+		this.username = username;
+		this.uid = uid;
+		this.iterations = iterations;
+		this.salt = salt.clone();
+		this.hash = hash.clone();
+	}
+
+	/**
+	 * Username Getter : This method returns a name the user logs in with.
+	 * 
+	 * @return 					the username
+	 */
+	public String getUsername() {
+		return username;
+	}
+
+	/**
+	 * UID Getter : This method returns a unique identification of the user's identity.
+	 * 
+	 * @return 					the uid, null for a user without an identity
+	 */
+	public String getUid() {
+		return uid;
+	}
+
+	/**
+	 * Iterations Getter : This method returns the number of iterations used for the hash.
+	 * 
+	 * @return 					the number of iterations
+	 */
+	public int getIterations() {
+		return iterations;
+	}
+
+	/**
+	 * Salt Getter : This method returns the random salt of the hash.
+	 * 
+	 * @return 					a copy of the salt
+	 */
+	public byte[] getSalt() {
+		return salt.clone();
+	}
+
+	/**
+	 * Hash Getter : This method returns the hash of the password.
+	 * 
+	 * @return 					a copy of the hash
+	 */
+	public byte[] getHash() {
+		return hash.clone();
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return username + " - " + uid;
+	}
+}
@@ -25,7 +25,18 @@ public class Identity {
 		this.displayName = displayName;
 		this.email = email;
 	}
-		
+
+	/**
+	 * This is a copy Constructor for an Identity class.
+	 * It initializes a new identity with information of the given identity.
+	 *
+	 * @param identity			the identity to copy
+	 */
+	public Identity(Identity identity) {
+
+		this(identity.getUid(), identity.getDisplayName(), identity.getEmail());
+	}
+
 	/**
 	 * UID Getter : This method returns a user's unique identification number.
 	 * 
@@ -0,0 +1,530 @@
+package fr.epita.iam.launcher;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import fr.epita.iam.datamodel.Identity;
+import fr.epita.iam.exceptions.DAOClosureException;
+import fr.epita.iam.exceptions.DAOInitializationException;
+import fr.epita.iam.services.AsyncAuditLog;
+import fr.epita.iam.services.AuditEvent;
+import fr.epita.iam.services.Authenticator;
+import fr.epita.iam.services.BatchResult;
+import fr.epita.iam.services.FileIdentityDAO;
+import fr.epita.iam.services.IdentityDAO;
+import fr.epita.iam.services.JDBCIdentityDAO;
+import fr.epita.logging.LogConfiguration;
+import fr.epita.logging.Logger;
+
+/**
+ * This is a Launcher running the commands of a file or of the standard input without any question,
+ * e.g. a nightly feed of changes. Every line holds one command, its values are separated by a semicolon:
+ *
+ * <pre>
+ * create;uid;displayName;email		(the UID is ignored by a database, which generates it)
+ * update;uid;displayName;email
+ * delete;uid
+ * search;uid;displayName			(an empty value is not used as a criterion)
+ * </pre>
+ *
+ * Empty lines and lines starting with '#' are skipped.
+ * The lines are read on a reader thread, which groups the following commands of the same kind into chunks
+ * and passes them through a bounded queue to the calling thread, which runs every chunk with a single bulk operation.
+ * So the next commands are read, while the previous ones are written, and the commands keep their order.
+ * At the end, a summary with the number of commands of every kind and the elapsed time is printed.
+ *
+ * The user is authenticated with the environment variables IAM_USERNAME and IAM_PASSWORD.
+ * The result of every command is recorded in an audit log, if one is given.
+ *
+ * @author Lenka Horvathova
+ */
+public class BatchLauncher {
+
+	private static final String DETAILS = "Details: ";
+	private static final String SEPARATOR = ";";
+
+	/** the default number of commands run at once */
+	public static final int DEFAULT_CHUNK_SIZE = 1000;
+
+	/** the number of chunks waiting in the queue between the reader and the writer */
+	private static final int QUEUE_CAPACITY = 16;
+
+	/** the marker of the end of the commands in the queue */
+	private static final Chunk END = new Chunk(null);
+
+	/**
+	 * This enumeration lists the kinds of commands.
+	 */
+	public enum Kind {
+		/** a save of a new identity */
+		CREATE,
+		/** an update of an identity */
+		UPDATE,
+		/** a deletion of an identity */
+		DELETE,
+		/** a search of identities */
+		SEARCH
+	}
+
+	private final IdentityDAO dao;
+	private final int chunkSize;
+	private final AsyncAuditLog audit;
+
+	/**
+	 * This is a Constructor for a BatchLauncher class without an audit log.
+	 *
+	 * @param dao					the DAO the commands are run on
+	 * @param chunkSize				the maximal number of commands run at once
+	 */
+	public BatchLauncher(IdentityDAO dao, int chunkSize) {
+
+		this(dao, chunkSize, null);
+	}
+
+	/**
+	 * This is a Constructor for a BatchLauncher class.
+	 *
+	 * @param dao					the DAO the commands are run on
+	 * @param chunkSize				the maximal number of commands run at once
+	 * @param audit					the audit log of the commands, null for none
+	 */
+	public BatchLauncher(IdentityDAO dao, int chunkSize, AsyncAuditLog audit) {
+
+		if (chunkSize <= 0) {
+			throw new IllegalArgumentException("The chunk size has to be positive : " + chunkSize);
+		}
+		this.dao = dao;
+		this.chunkSize = chunkSize;
+		this.audit = audit;
+	}
+
+	/**
+	 * This is a main method for running the commands from a command line.
+	 * Usage : BatchLauncher (file | database) [commands]
+	 *
+	 * @param args							the DAO and the file of commands, the standard input, if missing or '-'
+	 * @throws FileNotFoundException		the exception that can be thrown because of Logger
+	 * @throws DAOInitializationException	the customized exception that can thrown during initializing
+	 */
+	public static void main(String[] args) throws FileNotFoundException, DAOInitializationException {
+
+		if (args.length < 1 || args.length > 2) {
+			System.out.println("Usage : BatchLauncher (file | database) [commands]");
+			return;
+		}
+
+		Logger logger = new Logger(new LogConfiguration("/temp/application.log"));
+		AsyncAuditLog audit = new AsyncAuditLog(AsyncAuditLog.joined(logger::log));
+		//the events left in the buffer are written at the end of the program, even after an exception
+		Runtime.getRuntime().addShutdownHook(new Thread(audit::close));
+
+		String username = System.getenv("IAM_USERNAME");
+		String password = System.getenv("IAM_PASSWORD");
+		boolean authenticated = username != null && password != null && Authenticator.authenticate(username, password);
+		audit.record("authenticate", username, authenticated ? AuditEvent.SUCCESS : AuditEvent.FAILURE, 0);
+		if (!authenticated) {
+			System.out.println("Wrong username or password in IAM_USERNAME and IAM_PASSWORD!");
+			return;
+		}
+
+		IdentityDAO dao;
+		switch (args[0]) {
+		case "file":
+			dao = new FileIdentityDAO();
+			break;
+
+		case "database":
+			dao = new JDBCIdentityDAO();
+			break;
+
+		default:
+			System.out.println("Invalid DAO! Please, choose 'file' or 'database'.");
+			return;
+		}
+
+		boolean standardInput = args.length == 1 || "-".equals(args[1]);
+		try (InputStream stream = standardInput ? System.in : new FileInputStream(args[1]);
+				BufferedReader input = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8))) {
+			Summary summary = new BatchLauncher(dao, DEFAULT_CHUNK_SIZE, audit).run(input);
+			System.out.println(summary);
+			audit.record(new AuditEvent("batch", "run", null, AuditEvent.SUCCESS, summary.getElapsedMillis() * 1000000));
+		} catch (IOException e) {
+			System.out.println("Error during a read of commands!");
+			System.out.println(DETAILS + e.getMessage());
+			audit.record("batch", "run", AuditEvent.FAILURE);
+		} finally {
+			try {
+				dao.closeResources();
+			} catch (DAOClosureException e) {
+				System.out.println("The DAO was not closed.");
+			}
+		}
+	}
+
+	/**
+	 * This method runs all the commands of the input.
+	 * A command, which fails, is reported with its line and the other commands go on.
+	 *
+	 * @param input					the commands
+	 * @return						the summary of the run
+	 * @throws IOException			if the commands cannot be read
+	 */
+	public Summary run(BufferedReader input) throws IOException {
+
+		BlockingQueue<Chunk> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+		Summary summary = new Summary();
+		IOException[] readerError = new IOException[1];
+
+		Thread reader = new Thread(() -> {
+			try {
+				read(input, queue, summary); //a separate method for a reading of commands is used
+			} catch (IOException e) {
+				readerError[0] = e;
+			} finally {
+				try {
+					queue.put(END);
+				} catch (InterruptedException e) {
+					// the writer has already failed and doesn't wait for the end
+				}
+			}
+		}, "identity-batch-reader");
+
+		long start = System.nanoTime();
+		reader.start();
+
+		try {
+			Chunk chunk = queue.take();
+			while (chunk != END) {
+				execute(chunk, summary); //a separate method for a run of a chunk is used
+				chunk = queue.take();
+			}
+			reader.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("The batch was interrupted.");
+		} finally {
+			// the reader may be blocked on the full queue, when the writer failed
+			reader.interrupt();
+			queue.clear();
+		}
+
+		if (readerError[0] != null) {
+			throw readerError[0];
+		}
+		summary.elapsedNanos = System.nanoTime() - start;
+
+		return summary;
+	}
+
+	/**
+	 * This method reads the commands and puts them to the queue in chunks of the same kind.
+	 * A chunk is passed on, when it is full, when a command of another kind follows or when it is a search.
+	 *
+	 * @param input					the commands
+	 * @param queue					the queue of the chunks
+	 * @param summary				the summary counting the invalid lines
+	 * @throws IOException			if the commands cannot be read or the writer failed
+	 */
+	private void read(BufferedReader input, BlockingQueue<Chunk> queue, Summary summary) throws IOException {
+
+		Chunk chunk = null;
+		int lineNumber = 0;
+		String line = input.readLine();
+
+		while (line != null) {
+			lineNumber++;
+			String command = line.trim();
+
+			if (!command.isEmpty() && !command.startsWith("#")) {
+				String[] fields = command.split(SEPARATOR, -1);
+				Kind kind = kindOf(fields);
+				if (kind == null) {
+					System.out.println("Line " + lineNumber + " is not a valid command : " + command);
+					summary.invalid++;
+				} else {
+					if (chunk != null && (chunk.kind != kind || chunk.identities.size() == chunkSize)) {
+						put(queue, chunk);
+						chunk = null;
+					}
+					if (chunk == null) {
+						chunk = new Chunk(kind);
+					}
+					chunk.add(lineNumber, identityOf(kind, fields));
+					if (kind == Kind.SEARCH) {
+						put(queue, chunk);
+						chunk = null;
+					}
+				}
+			}
+			line = input.readLine();
+		}
+
+		if (chunk != null) {
+			put(queue, chunk);
+		}
+	}
+
+	/**
+	 * This method runs a chunk of commands with a single operation of the DAO.
+	 *
+	 * @param chunk					the chunk
+	 * @param summary				the summary to be updated
+	 */
+	private void execute(Chunk chunk, Summary summary) {
+
+		String operation = chunk.kind.name().toLowerCase(Locale.ROOT);
+		long start = System.nanoTime();
+		try {
+			BatchResult result;
+			switch (chunk.kind) {
+			case CREATE:
+				result = dao.saveAll(chunk.identities);
+				break;
+
+			case UPDATE:
+				result = dao.updateAll(chunk.identities);
+				break;
+
+			case DELETE:
+				result = dao.deleteAll(chunk.identities);
+				break;
+
+			default:
+				List<Identity> found = dao.search(chunk.identities.get(0));
+				System.out.println("Line " + chunk.lines.get(0) + " found " + found.size() + " identities :");
+				found.forEach(identity -> System.out.println("\t" + identity));
+				summary.add(chunk.kind, BatchResult.Status.SUCCESS, 1);
+				record(operation, chunk.identities.get(0).getUid(), BatchResult.Status.SUCCESS, System.nanoTime() - start);
+				return;
+			}
+
+			// the items are done together, so each of them gets the average time of the chunk
+			long latency = (System.nanoTime() - start) / chunk.identities.size();
+
+			List<BatchResult.Item> items = result.getItems();
+			for (int i = 0; i < items.size(); i++) {
+				BatchResult.Item item = items.get(i);
+				summary.add(chunk.kind, item.getStatus(), 1);
+				record(operation, item.getIdentity().getUid(), item.getStatus(), latency);
+				if (item.getStatus() != BatchResult.Status.SUCCESS) {
+					System.out.println("Line " + chunk.lines.get(i) + " : " + item);
+				}
+			}
+		} catch (Exception e) {
+			// the DAO has already reported the details, the whole chunk failed
+			System.out.println("Lines " + chunk.lines.get(0) + " - " + chunk.lines.get(chunk.lines.size() - 1) + " failed.");
+			summary.add(chunk.kind, BatchResult.Status.FAILED, chunk.identities.size());
+			long latency = (System.nanoTime() - start) / chunk.identities.size();
+			for (Identity identity : chunk.identities) {
+				record(operation, identity.getUid(), BatchResult.Status.FAILED, latency);
+			}
+		}
+	}
+
+	/**
+	 * This method records the result of a command in the audit log, if there is one.
+	 *
+	 * @param operation				the kind of the command
+	 * @param uid					the UID of the identity of the command
+	 * @param status				the result of the command
+	 * @param latencyNanos			the time of the command in nanoseconds
+	 */
+	private void record(String operation, String uid, BatchResult.Status status, long latencyNanos) {
+
+		if (audit != null) {
+			audit.record(operation, uid, status.name().toLowerCase(Locale.ROOT), latencyNanos);
+		}
+	}
+
+	/**
+	 * This method returns the kind of a command, if it has the right number of values.
+	 *
+	 * @param fields				the values of the command
+	 * @return						the kind or null, if the command is invalid
+	 */
+	private static Kind kindOf(String[] fields) {
+
+		Kind kind;
+		try {
+			kind = Kind.valueOf(fields[0].trim().toUpperCase(Locale.ROOT));
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+
+		int expected = (kind == Kind.DELETE) ? 2 : (kind == Kind.SEARCH) ? 3 : 4;
+		return (fields.length == expected) ? kind : null;
+	}
+
+	/**
+	 * This method creates the identity of a command, for a search it is the criteria.
+	 *
+	 * @param kind					the kind of the command
+	 * @param fields				the values of the command
+	 * @return						the identity
+	 */
+	private static Identity identityOf(Kind kind, String[] fields) {
+
+		switch (kind) {
+		case DELETE:
+			return new Identity(fields[1].trim(), null, null);
+
+		case SEARCH:
+			String uid = fields[1].trim();
+			String displayName = fields[2].trim();
+			return new Identity(uid.isEmpty() ? null : uid, displayName.isEmpty() ? null : displayName, null);
+
+		default:
+			return new Identity(fields[1].trim(), fields[2].trim(), fields[3].trim());
+		}
+	}
+
+	/**
+	 * This method puts a chunk to the queue and waits, while the queue is full.
+	 *
+	 * @param queue					the queue of the chunks
+	 * @param chunk					the chunk of commands
+	 * @throws IOException			if the waiting was interrupted, because the writer failed
+	 */
+	private static void put(BlockingQueue<Chunk> queue, Chunk chunk) throws IOException {
+
+		try {
+			queue.put(chunk);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("The batch was stopped.");
+		}
+	}
+
+	/**
+	 * This class holds following commands of the same kind with their lines.
+	 */
+	private static class Chunk {
+
+		private final Kind kind;
+		private final List<Identity> identities = new ArrayList<>();
+		private final List<Integer> lines = new ArrayList<>();
+
+		/**
+		 * This is a Constructor for a Chunk class.
+		 *
+		 * @param kind				the kind of the commands
+		 */
+		Chunk(Kind kind) {
+			this.kind = kind;
+		}
+
+		/**
+		 * This method adds a command to the chunk.
+		 *
+		 * @param line				the number of the line of the command
+		 * @param identity			the identity of the command
+		 */
+		void add(int line, Identity identity) {
+
+			lines.add(line);
+			identities.add(identity);
+		}
+	}
+
+	/**
+	 * This class counts the results of the commands of a batch.
+	 * It is filled by the writer, the reader counts only the invalid lines.
+	 */
+	public static class Summary {
+
+		private final Map<Kind, long[]> counts = new EnumMap<>(Kind.class);
+		private volatile long invalid;
+		private long elapsedNanos;
+
+		/**
+		 * This method counts the results of commands.
+		 *
+		 * @param kind				the kind of the commands
+		 * @param status			the result of the commands
+		 * @param count				the number of the commands
+		 */
+		void add(Kind kind, BatchResult.Status status, long count) {
+			counts.computeIfAbsent(kind, key -> new long[BatchResult.Status.values().length])[status.ordinal()] += count;
+		}
+
+		/**
+		 * This method returns the number of commands of a kind with the given result.
+		 *
+		 * @param kind				the kind of the commands
+		 * @param status			the result of the commands
+		 * @return					the number of commands
+		 */
+		public long count(Kind kind, BatchResult.Status status) {
+
+			long[] kindCounts = counts.get(kind);
+			return (kindCounts == null) ? 0 : kindCounts[status.ordinal()];
+		}
+
+		/**
+		 * Commands Getter : This method returns the number of all the run commands.
+		 *
+		 * @return					the number of commands
+		 */
+		public long getCommands() {
+
+			long commands = 0;
+			for (long[] kindCounts : counts.values()) {
+				for (long count : kindCounts) {
+					commands += count;
+				}
+			}
+
+			return commands;
+		}
+
+		/**
+		 * Invalid Getter : This method returns the number of invalid lines, which were skipped.
+		 *
+		 * @return					the number of lines
+		 */
+		public long getInvalid() {
+			return invalid;
+		}
+
+		/**
+		 * ElapsedMillis Getter : This method returns the time of the whole batch.
+		 *
+		 * @return					the time in milliseconds
+		 */
+		public long getElapsedMillis() {
+			return elapsedNanos / 1000000;
+		}
+
+		/* (non-Javadoc)
+		 * @see java.lang.Object#toString()
+		 */
+		@Override
+		public String toString() {
+
+			StringBuilder text = new StringBuilder("~ ~ BATCH SUMMARY ~ ~\n");
+			for (Kind kind : Kind.values()) {
+				text.append(String.format("%-8s : %d succeeded, %d not found, %d rejected, %d failed%n", kind.name().toLowerCase(Locale.ROOT),
+						count(kind, BatchResult.Status.SUCCESS), count(kind, BatchResult.Status.NOT_FOUND),
+						count(kind, BatchResult.Status.REJECTED), count(kind, BatchResult.Status.FAILED)));
+			}
+			double seconds = Math.max(elapsedNanos, 1) / 1e9;
+			text.append(String.format("invalid  : %d lines%n", invalid));
+			text.append(String.format("elapsed  : %d ms, %.0f commands per second", getElapsedMillis(), getCommands() / seconds));
+
+			return text.toString();
+		}
+	}
+}
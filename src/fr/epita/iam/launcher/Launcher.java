@@ -12,9 +12,13 @@ import fr.epita.iam.exceptions.DAOInitializationException;
 import fr.epita.iam.exceptions.DAOSaveException;
 import fr.epita.iam.exceptions.DAOSearchException;
 import fr.epita.iam.exceptions.DAOUpdateException;
+import fr.epita.iam.services.AsyncAuditLog;
+import fr.epita.iam.services.AuditEvent;
 import fr.epita.iam.services.Authenticator;
 import fr.epita.iam.services.FileIdentityDAO;
 import fr.epita.iam.services.IdentityDAO;
+import fr.epita.iam.services.IdentityPage;
+import fr.epita.iam.services.IdentitySortKey;
 import fr.epita.iam.services.JDBCIdentityDAO;
 import fr.epita.logging.LogConfiguration;
 import fr.epita.logging.Logger;
@@ -27,6 +31,10 @@ import fr.epita.logging.Logger;
 public class Launcher {
 
 	private static final String DETAILS = "Details: ";
+	private static final int PAGE_SIZE = 20;
+	private static final String MENU = "menu";
+	private static final String RESET = "reset";
+	private static final String CHOOSE_DAO = "choose-dao";
 
 	/**
 	 * At start, it asks user to choose, if he/she wants to work with a file or a database version of the program.
@@ -45,8 +53,11 @@ public class Launcher {
 	 * Each of these options has several substeps,
 	 * 	like providing parameters for the new identity, specifying the UID, etc.
 	 * While the program is running, it stores information about performed actions in '/temp/application.log'.
+	 * The actions are written by a background thread, so the user doesn't wait for the log.
 	 * 
-	 * @param args							arguments from command line, unused
+	 * With the '--batch' argument, the commands are read from a file or the standard input instead (see BatchLauncher).
+	 * 
+	 * @param args							arguments from command line, '--batch' followed by the arguments of a BatchLauncher
 	 * @throws FileNotFoundException 		signals that an attempt to open the file 
 	 * 											denoted by a specified pathname has failed
 	 * @throws FileNotFoundException		the exception that can be thrown because of Logger
@@ -54,13 +65,21 @@ public class Launcher {
 	 */
 	public static void main(String[] args) throws FileNotFoundException, DAOInitializationException {
 		
+		if (args.length > 0 && "--batch".equals(args[0])) {
+			BatchLauncher.main(Arrays.copyOfRange(args, 1, args.length));
+			return;
+		}
+		
 		Scanner scan = new Scanner(System.in);
 		LogConfiguration conf = new LogConfiguration("/temp/application.log");
 		Logger logger = new Logger(conf); //may throws an 'FileNotFoundException' exception 
+		AsyncAuditLog audit = new AsyncAuditLog(AsyncAuditLog.joined(logger::log));
+		//the events left in the buffer are written at the end of the program, even after an exception
+		Runtime.getRuntime().addShutdownHook(new Thread(audit::close));
 		
 		System.out.println("Please, choose options you prefer : ");
-		IdentityDAO dao = daoChoice(logger, scan); //a separate method for choosing a DAO
-		resetChoice(dao, logger, scan);	//a separate method for an option of a reset to the original example version 
+		IdentityDAO dao = daoChoice(audit, scan); //a separate method for choosing a DAO
+		resetChoice(dao, audit, scan);	//a separate method for an option of a reset to the original example version 
 										//may throws an 'NullPointerExcetion' exception
 		
 		String uid = "";
@@ -73,11 +92,12 @@ public class Launcher {
 		String username = scan.nextLine();		
 		System.out.print("Password : ");
 		String password = scan.nextLine();		
-		logger.log("User '" + username + "' tries to authenticate.");
+		long start = System.nanoTime();
+		boolean authenticated = Authenticator.authenticate(username, password);
+		audit.record("authenticate", username, authenticated ? AuditEvent.SUCCESS : AuditEvent.FAILURE, System.nanoTime() - start);
 		
-		if (Authenticator.authenticate(username, password)) {			
+		if (authenticated) {			
 			System.out.println("Successfully authenticated!");
-			logger.log("Successfully authenticated!");			
 			System.out.println("Please, choose an option you want to perform : ");			
 			String choice = "";
 			
@@ -88,12 +108,11 @@ public class Launcher {
 				System.out.println(" \t 4. Quit");				
 				System.out.print("Your choice : ");
 				choice = scan.nextLine();				
-				logger.log("User chose the " + choice + ". choice.");
 				
 				switch (choice) {				
 				case "1":
 					System.out.println("You chose an Identity Creation!");
-					logger.log("Identity Creation selected.");
+					audit.record(MENU, "create", AuditEvent.SUCCESS);
 					
 					if (dao instanceof FileIdentityDAO) {
 						System.out.print("Insert UID : ");
@@ -104,11 +123,13 @@ public class Launcher {
 					System.out.print("Insert email : ");
 					email = scan.nextLine();
 					
+					start = System.nanoTime();
 					try {
 						dao.save(new Identity(uid, displayName, email)); //may throws an 'NullPointerExcetion' exception
+						audit.record("save", uid, AuditEvent.SUCCESS, System.nanoTime() - start);
 						System.out.print("Identity was saved successfully! \n");
-						logger.log("A new identity was saved successfully!");	
 					} catch (DAOSaveException e) {
+						audit.record("save", uid, AuditEvent.FAILURE, System.nanoTime() - start);
 						System.out.println("Error during a save of data!");
 						System.out.println(DETAILS + e.getMessage());
 					}									
@@ -116,7 +137,7 @@ public class Launcher {
 					
 				case "2":
 					System.out.println("You chose an Identity Update!");
-					logger.log("Identity Update selected.");	
+					audit.record(MENU, "update", AuditEvent.SUCCESS);
 					
 					System.out.print("Insert UID of an identity, you want to update : ");
 					uid = scan.nextLine();					
@@ -125,11 +146,13 @@ public class Launcher {
 					System.out.print("Update email : ");
 					email = scan.nextLine();
 					
+					start = System.nanoTime();
 					try {
 						dao.update(new Identity(uid, displayName, email)); //may throw NullPointerException
+						audit.record("update", uid, AuditEvent.SUCCESS, System.nanoTime() - start);
 						System.out.print("Identity was updated successfully! \n");
-						logger.log("An identity was updated successfully!");	
 					} catch (DAOUpdateException e) {
+						audit.record("update", uid, AuditEvent.FAILURE, System.nanoTime() - start);
 						System.out.println("Error during a update of data!");
 						System.out.println(DETAILS + e.getMessage());
 					}			
@@ -137,16 +160,18 @@ public class Launcher {
 					
 				case "3":
 					System.out.println("You chose an Identity Deletion!");
-					logger.log("Identity Deletion selected.");
+					audit.record(MENU, "delete", AuditEvent.SUCCESS);
 					
 					System.out.print("Insert UID of a identity, you want to delete : ");
 					uid = scan.nextLine();
 					
+					start = System.nanoTime();
 					try {
 						dao.delete(new Identity(uid, displayName, email)); //may throws an 'NullPointerExcetion' exception
+						audit.record("delete", uid, AuditEvent.SUCCESS, System.nanoTime() - start);
 						System.out.print("Identity was deleted successfully! \n");
-						logger.log("An identity was deleted successfully!");
 					} catch (DAODeleteException e) {
+						audit.record("delete", uid, AuditEvent.FAILURE, System.nanoTime() - start);
 						System.out.println("Error during a deletion of data!");
 						System.out.println(DETAILS + e.getMessage());
 					}					
@@ -154,23 +179,22 @@ public class Launcher {
 					
 				case "4":
 					System.out.println("You decided to quit!");
-					logger.log("Quiting selected.");					
+					audit.record(MENU, "quit", AuditEvent.SUCCESS);
 					scan.close();
 					break;
 					
 				default:
 					System.out.println("Invalid choice! Please, choose number 1-4 for an action:");
-					logger.log("Invalid choice selected.");					
+					audit.record(MENU, choice, AuditEvent.FAILURE);
 					break;
 				}
 			}
 		} else {			
 			System.out.println("Wrong username or password!");
-			logger.log("Wrong username or password!");			
 			System.out.println("You did not pass authentication. Program will automatically close.");
 		}		
 		System.out.println("Thank you for your visit!");
-		logger.log("The session was closed.");	
+		audit.record("session", "close", AuditEvent.SUCCESS);
 		System.out.println("~ ~ GOODBYE ~ ~");
 	}
 	
@@ -179,12 +203,12 @@ public class Launcher {
 	 * First option is working with a file,
 	 * second option is working with a database.
 	 * 
-	 * @param logger							a logger for keeping a track of action a user took
+	 * @param audit								an audit log for keeping a track of action a user took
 	 * @param scan								a scanner used for a communication with a user
 	 * @return									returns a IdentityDAO a user chose
 	 * @throws DAOInitializationException 		the customized exception that can thrown during initializing
 	 */
-	private static IdentityDAO daoChoice(Logger logger, Scanner scan) throws DAOInitializationException {
+	private static IdentityDAO daoChoice(AsyncAuditLog audit, Scanner scan) throws DAOInitializationException {
 		
 		System.out.println("- Which DAO would you like to work with?");
 		System.out.println("\t A: a file;\n \t B: a database.");		
@@ -201,9 +225,9 @@ public class Launcher {
 			case "A": case "a":
 				dao = new FileIdentityDAO();
 				try {
-					logger.log("File version was selected.");				
+					audit.record(CHOOSE_DAO, "file", AuditEvent.SUCCESS);
 					System.out.println("The file you will work with : ");
-					dao.printContent();
+					printPages(dao, scan);
 					System.out.println("");		
 				} catch (DAOSearchException e) {
 					e.printStackTrace();
@@ -213,9 +237,9 @@ public class Launcher {
 			case "B": case "b":
 				dao = new JDBCIdentityDAO();
 				try {
-					logger.log("Database version was selected.");				
+					audit.record(CHOOSE_DAO, "database", AuditEvent.SUCCESS);
 					System.out.println("The table you will work with : ");
-					dao.printContent();
+					printPages(dao, scan);
 					System.out.println("");	
 				} catch (DAOSearchException e) {
 					e.printStackTrace();
@@ -224,7 +248,7 @@ public class Launcher {
 								
 			default: 
 				System.out.println("Invalid choice! Please, choose 'A' or 'B' : ");
-				logger.log("Invalid choice selected.");				
+				audit.record(CHOOSE_DAO, answer, AuditEvent.FAILURE);
 				break;
 			}
 		}		
@@ -235,10 +259,10 @@ public class Launcher {
 	 * This method give a user an option to reset a DAO source (a file or a table in database) to the original example version.
 	 * 
 	 * @param dao					a chosen DAO
-	 * @param logger				a logger for keeping a track of action a user took
+	 * @param audit					an audit log for keeping a track of action a user took
 	 * @param scan					a scanner used for a communication with a user
 	 */
-	private static void resetChoice(IdentityDAO dao, Logger logger, Scanner scan) {
+	private static void resetChoice(IdentityDAO dao, AsyncAuditLog audit, Scanner scan) {
 		
 		System.out.println("- Do you want to reset it to the original?");
 		System.out.println("\t A: yes;\n \t B: no.");
@@ -264,9 +288,9 @@ public class Launcher {
 				if (button != null) {					
 					try {
 						dao.resetToOriginal();
-						logger.log("The content was reset to the original version.");	
+						audit.record(RESET, "yes", AuditEvent.SUCCESS);
 						System.out.println("The file you will work with : ");
-						dao.printContent();
+						printPages(dao, scan);
 						System.out.println("");
 					} catch (Exception e) {
 						e.printStackTrace();
@@ -276,9 +300,9 @@ public class Launcher {
 								
 			case "B": case "b":
 				try {
-					logger.log("The content was not reset to the original version.");				
+					audit.record(RESET, "no", AuditEvent.SUCCESS);
 					System.out.println("The table you will work with : ");
-					dao.printContent();
+					printPages(dao, scan);
 					System.out.println("");	
 				} catch (DAOSearchException e) {
 					e.printStackTrace();
@@ -287,9 +311,34 @@ public class Launcher {
 								
 			default: 
 				System.out.println("Invalid choice! Please, choose 'A' or 'B' : ");
-				logger.log("Invalid choice selected.");				
+				audit.record(RESET, answer, AuditEvent.FAILURE);
+				break;
+			}
+		}
+	}
+	
+	/**
+	 * This method prints the identities page by page, sorted by their UIDs.
+	 * After every page, a user can continue to the next page or stop.
+	 * 
+	 * @param dao					a chosen DAO
+	 * @param scan					a scanner used for a communication with a user
+	 * @throws DAOSearchException	the customized exception that can thrown during searching
+	 */
+	private static void printPages(IdentityDAO dao, Scanner scan) throws DAOSearchException {
+		
+		IdentityPage page = dao.searchPage(null, IdentitySortKey.UID, null, PAGE_SIZE);
+		page.getIdentities().forEach(System.out::println);
+		
+		while (page.hasNext()) {
+			System.out.print("Press ENTER for the next page or 'Q' to stop : ");
+			String answer = scan.nextLine();
+			
+			if ("Q".equalsIgnoreCase(answer.trim())) {
 				break;
 			}
+			page = dao.searchPage(null, IdentitySortKey.UID, page.getCursor(), PAGE_SIZE);
+			page.getIdentities().forEach(System.out::println);
 		}
 	}
 }
@@ -0,0 +1,290 @@
+package fr.epita.iam.services;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * This class records audit events without making the caller wait for the write.
+ *
+ * The events are put into a bounded ring buffer and a background thread takes them out in batches
+ * and passes every batch to a writer, e.g. a logger, so the caller pays only for putting an event into the buffer.
+ * When the buffer is full, because the writer is slower than the callers, the overflow policy decides,
+ * if the caller waits, or which events are dropped. The dropped events are counted.
+ * The events left in the buffer are written, when the log is closed. An event is accepted under a read lock
+ * and the log is closed under the write lock, so every accepted event is written and every refused one is counted.
+ *
+ * @author Lenka Horvathova
+ */
+public class AsyncAuditLog implements Closeable {
+
+	private static final String DETAILS = "Details: ";
+
+	/** the default number of events kept in the buffer */
+	public static final int DEFAULT_CAPACITY = 8192;
+
+	/** the default maximal number of events in a batch passed to the writer */
+	public static final int DEFAULT_BATCH_SIZE = 256;
+
+	/** the time the background thread waits for an event, before it checks, if the log was closed */
+	private static final long POLL_MILLIS = 100;
+
+	/**
+	 * This enumeration lists the ways of handling an event, which doesn't fit into the full buffer.
+	 */
+	public enum OverflowPolicy {
+		/** the caller waits for a free place, no event is lost */
+		BLOCK,
+		/** the event is dropped, the caller never waits */
+		DROP,
+		/** while the buffer is more than half full, only every n-th event is kept, the caller never waits */
+		SAMPLE
+	}
+
+	/**
+	 * This interface writes a batch of events, e.g. line by line into a logger.
+	 */
+	public interface Writer {
+
+		/**
+		 * This method writes the events in their order.
+		 *
+		 * @param events				the events
+		 * @throws IOException			if the events cannot be written
+		 */
+		void write(List<AuditEvent> events) throws IOException;
+	}
+
+	/**
+	 * This method returns a writer, which passes every batch as a single text, one event per line,
+	 * e.g. to a logger, so the output is called once per batch and not once per event.
+	 *
+	 * @param output				the receiver of the texts of the batches
+	 * @return						the writer
+	 */
+	public static Writer joined(Consumer<String> output) {
+		return events -> output.accept(events.stream().map(AuditEvent::toString).collect(Collectors.joining(System.lineSeparator())));
+	}
+
+	private final BlockingQueue<AuditEvent> buffer;
+	private final Writer writer;
+	private final OverflowPolicy policy;
+	private final int sampleRate;
+	private final int batchSize;
+	private final Thread thread;
+	private final AtomicLong sampled = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+	private final AtomicLong written = new AtomicLong();
+	private final ReadWriteLock closeLock = new ReentrantReadWriteLock();
+	private volatile boolean closed;
+
+	/**
+	 * This is a Constructor for an AsyncAuditLog class with the default capacity, which makes the callers wait,
+	 * when the buffer is full.
+	 *
+	 * @param writer				the writer of the events
+	 */
+	public AsyncAuditLog(Writer writer) {
+
+		this(writer, DEFAULT_CAPACITY, OverflowPolicy.BLOCK, 1, DEFAULT_BATCH_SIZE);
+	}
+
+	/**
+	 * This is a Constructor for an AsyncAuditLog class. The background thread is started immediately.
+	 *
+	 * @param writer				the writer of the events
+	 * @param capacity				the number of events kept in the buffer
+	 * @param policy				the handling of an event, which doesn't fit into the full buffer
+	 * @param sampleRate			the n, for which every n-th event is kept by the SAMPLE policy
+	 * @param batchSize				the maximal number of events passed to the writer at once
+	 */
+	public AsyncAuditLog(Writer writer, int capacity, OverflowPolicy policy, int sampleRate, int batchSize) {
+
+		if (capacity <= 0 || sampleRate <= 0 || batchSize <= 0) {
+			throw new IllegalArgumentException("The capacity, the sample rate and the batch size have to be positive.");
+		}
+		this.buffer = new ArrayBlockingQueue<>(capacity);
+		this.writer = writer;
+		this.policy = policy;
+		this.sampleRate = sampleRate;
+		this.batchSize = batchSize;
+
+		// the thread doesn't keep the program running, close() writes the remaining events
+		this.thread = new Thread(this::writeLoop, "audit-log-writer");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * This method records an action on an identity, which happened now.
+	 *
+	 * @param operation				the kind of the action, e.g. "save"
+	 * @param uid					the UID of the concerned identity or the name of the concerned user, may be null
+	 * @param outcome				the result of the action, e.g. AuditEvent.SUCCESS
+	 * @param latencyNanos			the duration of the action in nanoseconds, 0 if not measured
+	 */
+	public void record(String operation, String uid, String outcome, long latencyNanos) {
+		record(new AuditEvent(operation, null, uid, outcome, latencyNanos));
+	}
+
+	/**
+	 * This method records a choice or another action without a concerned identity and without a measured duration.
+	 *
+	 * @param operation				the kind of the action, e.g. "menu"
+	 * @param action				the detail of the operation, e.g. the chosen option
+	 * @param outcome				the result of the action, e.g. AuditEvent.SUCCESS
+	 */
+	public void record(String operation, String action, String outcome) {
+		record(new AuditEvent(operation, action, null, outcome, 0));
+	}
+
+	/**
+	 * This method puts an event into the buffer, the overflow policy is applied, if the buffer is full.
+	 * An event recorded after the log was closed is dropped.
+	 *
+	 * @param event					the event
+	 */
+	public void record(AuditEvent event) {
+
+		boolean accepted;
+		closeLock.readLock().lock();
+		try {
+			accepted = !closed && offer(event); //a separate method for an application of the overflow policy is used
+		} finally {
+			closeLock.readLock().unlock();
+		}
+
+		if (!accepted) {
+			dropped.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Dropped Getter : This method returns the number of events, which were not written because of the overflow policy,
+	 * a closed log or a failed write.
+	 *
+	 * @return						the number of events
+	 */
+	public long getDropped() {
+		return dropped.get();
+	}
+
+	/**
+	 * Written Getter : This method returns the number of events passed to the writer.
+	 *
+	 * @return						the number of events
+	 */
+	public long getWritten() {
+		return written.get();
+	}
+
+	/**
+	 * This method stops accepting the events and waits, until all the events in the buffer are written.
+	 *
+	 * @see java.io.Closeable#close()
+	 */
+	@Override
+	public void close() {
+
+		// a caller waiting for a free place holds the read lock, the writer thread keeps freeing places meanwhile
+		closeLock.writeLock().lock();
+		try {
+			closed = true;
+		} finally {
+			closeLock.writeLock().unlock();
+		}
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * This method puts an event into the buffer according to the overflow policy.
+	 *
+	 * @param event					the event
+	 * @return						true, if the event was put into the buffer;
+	 * 								false, if it was dropped
+	 */
+	private boolean offer(AuditEvent event) {
+
+		boolean accepted;
+		switch (policy) {
+		case BLOCK:
+			try {
+				buffer.put(event);
+				accepted = true;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				accepted = false;
+			}
+			break;
+
+		case SAMPLE:
+			if (buffer.remainingCapacity() < buffer.size()) {
+				accepted = sampled.getAndIncrement() % sampleRate == 0 && buffer.offer(event);
+			} else {
+				accepted = buffer.offer(event);
+			}
+			break;
+
+		default:
+			accepted = buffer.offer(event);
+			break;
+		}
+
+		return accepted;
+	}
+
+	/**
+	 * This method is run by the background thread, it writes the events in batches until the log is closed
+	 * and the buffer is empty.
+	 */
+	private void writeLoop() {
+
+		List<AuditEvent> batch = new ArrayList<>(batchSize);
+		while (!closed || !buffer.isEmpty()) {
+			try {
+				AuditEvent first = buffer.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+				if (first == null) {
+					continue;
+				}
+				batch.add(first);
+				buffer.drainTo(batch, batchSize - 1);
+				writeBatch(batch); //a separate method for a write of a batch is used
+			} catch (InterruptedException e) {
+				// only close() stops the thread, so the remaining events are not lost
+			} finally {
+				batch.clear();
+			}
+		}
+	}
+
+	/**
+	 * This method passes a batch to the writer. A failed write is reported, the next batches are still written.
+	 *
+	 * @param batch					the events
+	 */
+	private void writeBatch(List<AuditEvent> batch) {
+
+		try {
+			writer.write(Collections.unmodifiableList(batch));
+			written.addAndGet(batch.size());
+		} catch (IOException | RuntimeException e) {
+			System.out.println("Error during a write of audit events!");
+			System.out.println(DETAILS + e.getMessage());
+			dropped.addAndGet(batch.size());
+		}
+	}
+}
@@ -0,0 +1,237 @@
+package fr.epita.iam.services;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import fr.epita.iam.datamodel.Identity;
+
+/**
+ * This class gives an asynchronous access to any IdentityDAO.
+ * Every call returns immediately a CompletableFuture, which is completed, when the DAO finishes the call,
+ * or completed exceptionally with the exception of the DAO, e.g. a DAOSaveException.
+ *
+ * At most the given number of calls is run on the DAO at once, the other calls wait in a queue, which costs
+ * only a small task, not a thread, so thousands of calls can be issued at once.
+ * By default, the calls run on an own pool with one thread for every allowed call.
+ * Any other executor can be given instead, e.g. an executor of virtual threads on a newer Java,
+ * and then the limit is kept by permits taken by the running calls.
+ *
+ * @author Lenka Horvathova
+ */
+public class AsyncIdentityDAO {
+
+	private final IdentityDAO dao;
+	private final Executor executor;
+	private final ExecutorService ownExecutor;
+	private final Semaphore permits;
+
+	/**
+	 * This is a Constructor for an AsyncIdentityDAO class with an own pool of threads.
+	 *
+	 * @param dao					the DAO to be called
+	 * @param maxConcurrency		the maximal number of calls run on the DAO at once
+	 */
+	public AsyncIdentityDAO(IdentityDAO dao, int maxConcurrency) {
+
+		this(dao, newPool(maxConcurrency), maxConcurrency, true);
+	}
+
+	/**
+	 * This is a Constructor for an AsyncIdentityDAO class running the calls on the given executor.
+	 * The executor is not shut down with the facade, it is up to its creator.
+	 *
+	 * @param dao					the DAO to be called
+	 * @param executor				the executor running the calls
+	 * @param maxConcurrency		the maximal number of calls run on the DAO at once
+	 */
+	public AsyncIdentityDAO(IdentityDAO dao, Executor executor, int maxConcurrency) {
+
+		this(dao, executor, maxConcurrency, false);
+	}
+
+	/**
+	 * This is a Constructor for an AsyncIdentityDAO class.
+	 *
+	 * @param dao					the DAO to be called
+	 * @param executor				the executor running the calls
+	 * @param maxConcurrency		the maximal number of calls run on the DAO at once
+	 * @param ownExecutor			true, if the executor should be shut down with the facade
+	 */
+	private AsyncIdentityDAO(IdentityDAO dao, Executor executor, int maxConcurrency, boolean ownExecutor) {
+
+		this.dao = dao;
+		this.executor = executor;
+		this.ownExecutor = ownExecutor ? (ExecutorService) executor : null;
+		this.permits = new Semaphore(maxConcurrency, true);
+	}
+
+	/**
+	 * This method saves a new identity asynchronously.
+	 *
+	 * @param identity				the identity to record
+	 * @return						the future completed after the save
+	 */
+	public CompletableFuture<Void> save(Identity identity) {
+
+		return submit(() -> {
+			dao.save(identity);
+			return null;
+		});
+	}
+
+	/**
+	 * This method searches the identities, which met criteria, asynchronously.
+	 *
+	 * @param criteria				the criteria of the identity to be met
+	 * @return						the future completed with the list of identities corresponding to the criteria
+	 */
+	public CompletableFuture<List<Identity>> search(Identity criteria) {
+
+		return submit(() -> dao.search(criteria));
+	}
+
+	/**
+	 * This method searches one page of the identities, which met criteria, asynchronously.
+	 *
+	 * @param criteria				the criteria of the identity to be met
+	 * @param sortKey				the attribute the identities are sorted by
+	 * @param after					the cursor of the previous page, null for the first page
+	 * @param limit					the maximal number of identities on the page
+	 * @return						the future completed with the page of identities
+	 */
+	public CompletableFuture<IdentityPage> searchPage(Identity criteria, IdentitySortKey sortKey, Identity after, int limit) {
+
+		return submit(() -> dao.searchPage(criteria, sortKey, after, limit));
+	}
+
+	/**
+	 * This method updates an identity asynchronously.
+	 *
+	 * @param identity				the identity with unique UID and rest of info updated
+	 * @return						the future completed after the update
+	 */
+	public CompletableFuture<Void> update(Identity identity) {
+
+		return submit(() -> {
+			dao.update(identity);
+			return null;
+		});
+	}
+
+	/**
+	 * This method deletes an identity asynchronously.
+	 *
+	 * @param identity				the identity to be deleted
+	 * @return						the future completed after the deletion
+	 */
+	public CompletableFuture<Void> delete(Identity identity) {
+
+		return submit(() -> {
+			dao.delete(identity);
+			return null;
+		});
+	}
+
+	/**
+	 * DAO Getter : This method returns the wrapped DAO.
+	 *
+	 * @return						the DAO
+	 */
+	public IdentityDAO getDAO() {
+		return dao;
+	}
+
+	/**
+	 * This method stops accepting new calls and waits for the queued ones to finish.
+	 * The wrapped DAO is not closed, it is up to its creator.
+	 * A given executor is not shut down, only an own pool.
+	 */
+	public void close() {
+
+		if (ownExecutor != null) {
+			ownExecutor.shutdown();
+			try {
+				ownExecutor.awaitTermination(1, TimeUnit.MINUTES);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * This method runs a call of the DAO on the executor, once a permit is available.
+	 *
+	 * @param call					the call of the DAO
+	 * @param <T>					the type of the result
+	 * @return						the future of the result
+	 */
+	private <T> CompletableFuture<T> submit(DAOCall<T> call) {
+
+		CompletableFuture<T> future = new CompletableFuture<>();
+
+		try {
+			executor.execute(() -> {
+				try {
+					permits.acquire();
+					try {
+						future.complete(call.call());
+					} finally {
+						permits.release();
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					future.completeExceptionally(e);
+				} catch (Exception e) {
+					future.completeExceptionally(e);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			future.completeExceptionally(e);
+		}
+
+		return future;
+	}
+
+	/**
+	 * This method creates an own pool of daemon threads, so waiting calls don't keep the program running.
+	 *
+	 * @param maxConcurrency		the number of threads
+	 * @return						the pool
+	 */
+	private static ExecutorService newPool(int maxConcurrency) {
+
+		if (maxConcurrency < 1) {
+			throw new IllegalArgumentException("The concurrency has to be at least 1 : " + maxConcurrency);
+		}
+
+		AtomicInteger counter = new AtomicInteger();
+		return Executors.newFixedThreadPool(maxConcurrency, runnable -> {
+			Thread thread = new Thread(runnable, "identity-async-" + counter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * This is an Interface for a call of the DAO, which can throw the exceptions of the DAO.
+	 *
+	 * @param <T>					the type of the result
+	 */
+	private interface DAOCall<T> {
+
+		/**
+		 * This method calls the DAO.
+		 *
+		 * @return					the result of the call
+		 * @throws Exception		the exception of the DAO
+		 */
+		T call() throws Exception;
+	}
+}
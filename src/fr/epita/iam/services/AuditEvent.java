@@ -0,0 +1,186 @@
+package fr.epita.iam.services;
+
+import java.time.Instant;
+
+/**
+ * This class represents a single action recorded in an audit log, e.g. a save of an identity.
+ * The action is kept in separate fields, so it is formatted only by the writer of the log, not by the caller.
+ *
+ * The event is written on a single line of fields, e.g.
+ *
+ * <pre>
+ * time=2017-06-30T10:15:30Z operation=menu action=create outcome=success
+ * time=2017-06-30T10:15:42Z operation=save uid=42 outcome=failure latency=1250us
+ * </pre>
+ *
+ * A value with a space, a quote, an equal sign, a backslash or a control character, or an empty value
+ * is written in quotes, with a backslash before a quote or a backslash, and the control characters escaped.
+ *
+ * @author Lenka Horvathova
+ */
+public class AuditEvent {
+
+	/** the outcome of a successful action */
+	public static final String SUCCESS = "success";
+
+	/** the outcome of a failed or refused action */
+	public static final String FAILURE = "failure";
+
+	private final long timestamp;
+	private final String operation;
+	private final String action;
+	private final String uid;
+	private final String outcome;
+	private final long latencyNanos;
+
+	/**
+	 * This is a Constructor for an AuditEvent class, which happened now.
+	 *
+	 * @param operation				the kind of the action, e.g. "save" or "menu"
+	 * @param action				the detail of the operation, e.g. the chosen option of a menu, may be null
+	 * @param uid					the UID of the concerned identity or the name of the concerned user, may be null
+	 * @param outcome				the result of the action, e.g. SUCCESS or FAILURE
+	 * @param latencyNanos			the duration of the action in nanoseconds, 0 if not measured
+	 */
+	public AuditEvent(String operation, String action, String uid, String outcome, long latencyNanos) {
+
+		this.timestamp = System.currentTimeMillis();
+		this.operation = operation;
+		this.action = action;
+		this.uid = uid;
+		this.outcome = outcome;
+		this.latencyNanos = latencyNanos;
+	}
+
+	/**
+	 * Timestamp Getter : This method returns the time of the event.
+	 *
+	 * @return						the time in milliseconds since the epoch
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	/**
+	 * Operation Getter : This method returns the kind of the action of the event.
+	 *
+	 * @return						the operation
+	 */
+	public String getOperation() {
+		return operation;
+	}
+
+	/**
+	 * Action Getter : This method returns the detail of the operation, e.g. the chosen option.
+	 *
+	 * @return						the action, may be null
+	 */
+	public String getAction() {
+		return action;
+	}
+
+	/**
+	 * Uid Getter : This method returns the UID of the identity or the name of the user concerned by the event.
+	 *
+	 * @return						the UID, may be null
+	 */
+	public String getUid() {
+		return uid;
+	}
+
+	/**
+	 * Outcome Getter : This method returns the result of the action.
+	 *
+	 * @return						the outcome
+	 */
+	public String getOutcome() {
+		return outcome;
+	}
+
+	/**
+	 * LatencyNanos Getter : This method returns the duration of the action.
+	 *
+	 * @return						the duration in nanoseconds, 0 if not measured
+	 */
+	public long getLatencyNanos() {
+		return latencyNanos;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+
+		// the time of the event is written, the event may be written a bit later
+		StringBuilder text = new StringBuilder("time=").append(Instant.ofEpochMilli(timestamp));
+		appendField(text, "operation", operation);
+		appendField(text, "action", action);
+		appendField(text, "uid", uid);
+		appendField(text, "outcome", outcome);
+		if (latencyNanos > 0) {
+			text.append(" latency=").append(latencyNanos / 1000).append("us");
+		}
+
+		return text.toString();
+	}
+
+	/**
+	 * This method appends a field to the text of an event, a missing value is left out.
+	 *
+	 * @param text					the text of the event
+	 * @param name					the name of the field
+	 * @param value					the value of the field, may be null
+	 */
+	private static void appendField(StringBuilder text, String name, String value) {
+
+		if (value == null) {
+			return;
+		}
+		text.append(' ').append(name).append('=');
+
+		if (!needsQuotes(value)) {
+			text.append(value);
+			return;
+		}
+		text.append('"');
+		for (char character : value.toCharArray()) {
+			if (character == '"' || character == '\\') {
+				text.append('\\').append(character);
+			} else if (character == '\n') {
+				text.append("\\n");
+			} else if (character == '\r') {
+				text.append("\\r");
+			} else if (character == '\t') {
+				text.append("\\t");
+			} else if (Character.isISOControl(character)) {
+				text.append(String.format("\\u%04x", (int) character));
+			} else {
+				text.append(character);
+			}
+		}
+		text.append('"');
+	}
+
+	/**
+	 * This method tells, if a value has to be quoted to be read back unambiguously.
+	 *
+	 * @param value					the value
+	 * @return						true, if the value is empty or contains a special character;
+	 * 								false, otherwise
+	 */
+	private static boolean needsQuotes(String value) {
+
+		if (value.isEmpty()) {
+			return true;
+		}
+		for (char character : value.toCharArray()) {
+			if (Character.isWhitespace(character) || Character.isISOControl(character)
+					|| character == '"' || character == '=' || character == '\\') {
+				return true;
+			}
+		}
+
+		return false;
+	}
+}
@@ -5,11 +5,19 @@ package fr.epita.iam.services;
 
 /**
  * This is a main authenticator service.
+ * It checks the users against a CredentialStore, which starts with the administrator 'adm' (password 'pwd')
+ * and where users linked to identities can be registered.
  * 
  * @author Lenka Horvathova
  */
 public class Authenticator {
 
+	private static final CredentialStore CREDENTIALS = new CredentialStore();
+
+	static {
+		CREDENTIALS.register("adm", null, "pwd".toCharArray());
+	}
+
 	/**
 	 * This method is checking authentication.
 	 * 
@@ -20,7 +28,15 @@ public class Authenticator {
 	 */
 	public static boolean authenticate(String username, String password) {
 		
-		// for now only an administrator with username 'adm' and password 'pwd' can access
-		return "adm".equals(username) && "pwd".equals(password);
+		return password != null && CREDENTIALS.verify(username, password.toCharArray());
+	}
+
+	/**
+	 * CredentialStore Getter : This method returns the store of the users, e.g. to register a new user.
+	 * 
+	 * @return				the credential store
+	 */
+	public static CredentialStore getCredentialStore() {
+		return CREDENTIALS;
 	}
 }
@@ -0,0 +1,150 @@
+package fr.epita.iam.services;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import fr.epita.iam.datamodel.Identity;
+
+/**
+ * This class reports the result of a bulk operation, item by item, in the order the identities were given.
+ *
+ * @author Lenka Horvathova
+ */
+public class BatchResult {
+
+	/**
+	 * This enumeration lists the possible results of a single item.
+	 */
+	public enum Status {
+		/** the identity was saved, updated or deleted */
+		SUCCESS,
+		/** the identity to update or delete does not exist */
+		NOT_FOUND,
+		/** the identity was refused, e.g. its UID already exists */
+		REJECTED,
+		/** the operation failed for the identity */
+		FAILED
+	}
+
+	/**
+	 * This class represents the result of a single item.
+	 */
+	public static class Item {
+
+		private final Identity identity;
+		private final Status status;
+		private final String message;
+
+		/**
+		 * This is a Constructor for an Item class.
+		 *
+		 * @param identity			the given identity, a saved one with its generated UID
+		 * @param status			the result for the identity
+		 * @param message			the details of the result, may be null
+		 */
+		public Item(Identity identity, Status status, String message) {
+
+			this.identity = identity;
+			this.status = status;
+			this.message = message;
+		}
+
+		/**
+		 * Identity Getter : This method returns the given identity. A saved identity has the UID given by the DAO.
+		 *
+		 * @return				the identity
+		 */
+		public Identity getIdentity() {
+			return identity;
+		}
+
+		/**
+		 * Status Getter : This method returns the result for the identity.
+		 *
+		 * @return				the status
+		 */
+		public Status getStatus() {
+			return status;
+		}
+
+		/**
+		 * Message Getter : This method returns the details of the result.
+		 *
+		 * @return				the message, may be null
+		 */
+		public String getMessage() {
+			return message;
+		}
+
+		/* (non-Javadoc)
+		 * @see java.lang.Object#toString()
+		 */
+		@Override
+		public String toString() {
+			return status + " : " + identity + ((message == null) ? "" : (" (" + message + ")"));
+		}
+	}
+
+	private final List<Item> items = new ArrayList<>();
+
+	/**
+	 * This method records the result of a next item.
+	 *
+	 * @param identity				the given identity
+	 * @param status				the result for the identity
+	 * @param message				the details of the result, may be null
+	 */
+	public void add(Identity identity, Status status, String message) {
+
+		items.add(new Item(identity, status, message));
+	}
+
+	/**
+	 * Items Getter : This method returns the results of all the items.
+	 *
+	 * @return						the unmodifiable list of results
+	 */
+	public List<Item> getItems() {
+		return Collections.unmodifiableList(items);
+	}
+
+	/**
+	 * This method counts the items with the given result.
+	 *
+	 * @param status				the result to count
+	 * @return						the number of items
+	 */
+	public int count(Status status) {
+
+		int count = 0;
+		for (Item item : items) {
+			if (item.getStatus() == status) {
+				count++;
+			}
+		}
+
+		return count;
+	}
+
+	/**
+	 * This method checks, if all the items succeeded.
+	 *
+	 * @return						true, if every item succeeded;
+	 * 								false, otherwise
+	 */
+	public boolean isSuccessful() {
+		return count(Status.SUCCESS) == items.size();
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+
+		return items.size() + " items : " + count(Status.SUCCESS) + " succeeded, "
+			 + count(Status.NOT_FOUND) + " not found, " + count(Status.REJECTED) + " rejected, "
+			 + count(Status.FAILED) + " failed";
+	}
+}
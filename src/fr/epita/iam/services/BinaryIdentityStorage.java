@@ -0,0 +1,60 @@
+package fr.epita.iam.services;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * This class keeps identities in a file of the compact binary format described in IdentityBinaryFormat.
+ * The file is read at once into a buffer and rewritten as a whole after every change.
+ *
+ * @author Lenka Horvathova
+ */
+public class BinaryIdentityStorage implements IdentityStorage {
+
+	private final File file;
+
+	/**
+	 * This is a Constructor for a BinaryIdentityStorage class.
+	 *
+	 * @param filePath				a path to the binary file with identities
+	 */
+	public BinaryIdentityStorage(String filePath) {
+
+		this.file = new File(filePath);
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.epita.iam.services.IdentityStorage#getFile()
+	 */
+	@Override
+	public File getFile() {
+		return file;
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.epita.iam.services.IdentityStorage#load()
+	 */
+	@Override
+	public void load(IdentityStore store) throws IOException {
+
+		IdentityBinaryFormat.load(file, store);
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.epita.iam.services.IdentityStorage#write()
+	 */
+	@Override
+	public void write(List<IdentityChange> changes, IdentityStore store) throws IOException {
+
+		IdentityBinaryFormat.rewrite(file, store.values());
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.epita.iam.services.IdentityStorage#close()
+	 */
+	@Override
+	public void close() throws IOException {
+		// the file is not kept open
+	}
+}
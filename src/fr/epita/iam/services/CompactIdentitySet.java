@@ -0,0 +1,590 @@
+package fr.epita.iam.services;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import fr.epita.iam.datamodel.Identity;
+
+/**
+ * This class keeps a large set of identities in a compact form, keyed by their UIDs.
+ *
+ * Instead of an Identity object with three strings for every identity, the identities are kept in a few big arrays:
+ * a numeric UID is kept as a long, the texts are kept as UTF-8 bytes in a single shared byte array
+ * and the domain of an email is kept as a number from an EmailDomainDictionary.
+ * A single identity then costs a few bytes more than the length of its texts.
+ *
+ * Identities are returned as new Identity objects created on demand, so changing a returned identity
+ * doesn't change the set. The identities are iterated in the order they were added, an update keeps the position.
+ * Replaced and removed texts are left in the byte array, until they take more than half of it and the set is compacted.
+ * The set is not synchronized, its owner has to guard it.
+ *
+ * @author Lenka Horvathova
+ */
+public class CompactIdentitySet implements Iterable<Identity> {
+
+	/** the marker of a UID, which is not a number and is kept as a text */
+	private static final long TEXT_UID = Long.MIN_VALUE;
+
+	/** the marker of a removed identity or an email without a domain */
+	private static final int NONE = -1;
+
+	/** the size of the byte array, under which the set is never compacted */
+	private static final int MIN_COMPACTION_BYTES = 1 << 20;
+
+	private final EmailDomainDictionary domains;
+
+	private long[] uids = new long[16];
+	private int[] offsets = new int[16];
+	private int[] domainIds = new int[16];
+	private int slots;
+	private int live;
+
+	private byte[] bytes = new byte[256];
+	private int used;
+	private int garbage;
+
+	private long[] indexKeys = new long[32];
+	private int[] indexSlots = newIndexSlots(32);
+	private int indexed;
+	private final Map<String, Integer> textIndex = new HashMap<>();
+
+	/**
+	 * This is a Constructor for a CompactIdentitySet class with its own dictionary of email domains.
+	 */
+	public CompactIdentitySet() {
+
+		this(new EmailDomainDictionary());
+	}
+
+	/**
+	 * This is a Constructor for a CompactIdentitySet class sharing the given dictionary of email domains.
+	 *
+	 * @param domains				the dictionary of email domains
+	 */
+	public CompactIdentitySet(EmailDomainDictionary domains) {
+
+		this.domains = domains;
+	}
+
+	/**
+	 * This method adds an identity or replaces the identity with the same UID.
+	 *
+	 * @param identity				the identity to add
+	 * @return						the replaced identity or null, if there was none
+	 */
+	public Identity put(Identity identity) {
+
+		String uid = identity.getUid();
+		long number = toNumber(uid);
+		int slot = find(uid, number);
+		Identity previous = null;
+
+		if (slot == NONE) {
+			slot = newSlot(uid, number); //a separate method for an allocation of a slot is used
+		} else if (offsets[slot] != NONE) {
+			previous = read(slot);
+			garbage += recordLength(slot);
+		}
+		if (offsets[slot] == NONE) {
+			live++;
+		}
+		write(slot, uid, number, identity); //a separate method for an encoding of an identity is used
+		compactIfNeeded();
+
+		return previous;
+	}
+
+	/**
+	 * This method returns the identity with the given UID.
+	 *
+	 * @param uid					the UID
+	 * @return						a new copy of the identity or null, if there is no such identity
+	 */
+	public Identity get(String uid) {
+
+		int slot = find(uid, toNumber(uid));
+		return (slot == NONE || offsets[slot] == NONE) ? null : read(slot);
+	}
+
+	/**
+	 * This method checks, if there is an identity with the given UID.
+	 *
+	 * @param uid					the UID
+	 * @return						true, if the identity exists;
+	 * 								false, otherwise
+	 */
+	public boolean contains(String uid) {
+
+		int slot = find(uid, toNumber(uid));
+		return slot != NONE && offsets[slot] != NONE;
+	}
+
+	/**
+	 * This method removes the identity with the given UID.
+	 *
+	 * @param uid					the UID
+	 * @return						the removed identity or null, if there was none
+	 */
+	public Identity remove(String uid) {
+
+		int slot = find(uid, toNumber(uid));
+		if (slot == NONE || offsets[slot] == NONE) {
+			return null;
+		}
+
+		Identity removed = read(slot);
+		garbage += recordLength(slot);
+		offsets[slot] = NONE;
+		live--;
+		compactIfNeeded();
+
+		return removed;
+	}
+
+	/**
+	 * Size Getter : This method returns the number of identities.
+	 *
+	 * @return						the number of identities
+	 */
+	public int size() {
+		return live;
+	}
+
+	/**
+	 * This method returns the identities one by one, in the order they were added.
+	 * The set must not be changed during the iteration.
+	 *
+	 * @see java.lang.Iterable#iterator()
+	 */
+	@Override
+	public Iterator<Identity> iterator() {
+
+		return new Iterator<Identity>() {
+
+			private int slot = skipRemoved(0);
+
+			@Override
+			public boolean hasNext() {
+				return slot < slots;
+			}
+
+			@Override
+			public Identity next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				Identity identity = read(slot);
+				slot = skipRemoved(slot + 1);
+				return identity;
+			}
+		};
+	}
+
+	/**
+	 * This method returns the identities as a stream, in the order they were added.
+	 *
+	 * @return						the stream of new copies of the identities
+	 */
+	public Stream<Identity> stream() {
+
+		return StreamSupport.stream(Spliterators.spliterator(iterator(), live, Spliterator.ORDERED | Spliterator.NONNULL), false);
+	}
+
+	/**
+	 * This method returns the approximate number of bytes of the memory taken by the set, without the dictionary of domains.
+	 *
+	 * @return						the number of bytes
+	 */
+	public long getMemoryUsage() {
+
+		return (long) uids.length * Long.BYTES + (long) offsets.length * Integer.BYTES + (long) domainIds.length * Integer.BYTES
+			 + bytes.length + (long) indexKeys.length * Long.BYTES + (long) indexSlots.length * Integer.BYTES
+			 + textIndex.size() * 64L;
+	}
+
+	/**
+	 * This method drops the removed identities and the replaced texts, so the arrays hold only the current identities.
+	 */
+	public void compact() {
+
+		long[] oldUids = uids;
+		int[] oldOffsets = offsets;
+		int[] oldDomainIds = domainIds;
+		int oldSlots = slots;
+		byte[] oldBytes = bytes;
+
+		int capacity = Math.max(16, live);
+		uids = new long[capacity];
+		offsets = new int[capacity];
+		domainIds = new int[capacity];
+		bytes = new byte[Math.max(256, used - garbage)];
+		slots = 0;
+		used = 0;
+		garbage = 0;
+		indexKeys = new long[indexCapacity(capacity)];
+		indexSlots = newIndexSlots(indexKeys.length);
+		indexed = 0;
+		textIndex.clear();
+
+		for (int old = 0; old < oldSlots; old++) {
+			if (oldOffsets[old] == NONE) {
+				continue;
+			}
+			int start = oldOffsets[old];
+			int length = recordLength(oldBytes, start, oldUids[old] == TEXT_UID);
+			int slot = slots++;
+			uids[slot] = oldUids[old];
+			domainIds[slot] = oldDomainIds[old];
+			offsets[slot] = used;
+			System.arraycopy(oldBytes, start, bytes, used, length);
+			used += length;
+			index(slot); //a separate method for an indexing of a slot is used
+		}
+	}
+
+	/**
+	 * This method returns the slot of an identity, including a removed one.
+	 *
+	 * @param uid					the UID of the identity
+	 * @param number				the UID as a number or TEXT_UID
+	 * @return						the slot or NONE, if the UID was never added
+	 */
+	private int find(String uid, long number) {
+
+		if (number == TEXT_UID) {
+			Integer slot = textIndex.get(uid);
+			return (slot == null) ? NONE : slot;
+		}
+
+		int mask = indexKeys.length - 1;
+		for (int position = mix(number) & mask; indexSlots[position] != NONE; position = (position + 1) & mask) {
+			if (indexKeys[position] == number) {
+				return indexSlots[position];
+			}
+		}
+
+		return NONE;
+	}
+
+	/**
+	 * This method allocates a new slot for a UID and indexes it.
+	 *
+	 * @param uid					the UID
+	 * @param number				the UID as a number or TEXT_UID
+	 * @return						the new slot, marked as removed
+	 */
+	private int newSlot(String uid, long number) {
+
+		if (slots == uids.length) {
+			int capacity = uids.length * 2;
+			uids = Arrays.copyOf(uids, capacity);
+			offsets = Arrays.copyOf(offsets, capacity);
+			domainIds = Arrays.copyOf(domainIds, capacity);
+		}
+
+		int slot = slots++;
+		uids[slot] = number;
+		offsets[slot] = NONE;
+		if (number == TEXT_UID) {
+			textIndex.put(uid, slot);
+		} else {
+			index(slot);
+		}
+
+		return slot;
+	}
+
+	/**
+	 * This method adds a slot with a numeric UID to the index, growing the index if it is half full.
+	 *
+	 * @param slot					the slot
+	 */
+	private void index(int slot) {
+
+		if (uids[slot] == TEXT_UID) {
+			textIndex.put(readUidText(slot), slot);
+			return;
+		}
+
+		if ((indexed + 1) * 2 > indexKeys.length) {
+			long[] oldKeys = indexKeys;
+			int[] oldSlots = indexSlots;
+			indexKeys = new long[oldKeys.length * 2];
+			indexSlots = newIndexSlots(indexKeys.length);
+			for (int position = 0; position < oldKeys.length; position++) {
+				if (oldSlots[position] != NONE) {
+					insert(oldKeys[position], oldSlots[position]);
+				}
+			}
+		}
+		insert(uids[slot], slot);
+		indexed++;
+	}
+
+	/**
+	 * This method puts a numeric UID to the first free position of the index.
+	 *
+	 * @param number				the UID
+	 * @param slot					the slot of the UID
+	 */
+	private void insert(long number, int slot) {
+
+		int mask = indexKeys.length - 1;
+		int position = mix(number) & mask;
+		while (indexSlots[position] != NONE) {
+			position = (position + 1) & mask;
+		}
+		indexKeys[position] = number;
+		indexSlots[position] = slot;
+	}
+
+	/**
+	 * This method encodes an identity at the end of the byte array and points the slot to it.
+	 * A record is the UID (only if it is a text), the name and the part of the email before the domain.
+	 *
+	 * @param slot					the slot of the identity
+	 * @param uid					the UID
+	 * @param number				the UID as a number or TEXT_UID
+	 * @param identity				the identity
+	 */
+	private void write(int slot, String uid, long number, Identity identity) {
+
+		String email = identity.getEmail();
+		int at = (email == null) ? -1 : email.lastIndexOf('@');
+		String local = (at < 0) ? email : email.substring(0, at);
+		domainIds[slot] = (at < 0) ? NONE : domains.intern(email.substring(at + 1));
+
+		offsets[slot] = used;
+		if (number == TEXT_UID) {
+			writeField(uid);
+		}
+		writeField(identity.getDisplayName());
+		writeField(local);
+	}
+
+	/**
+	 * This method appends a text to the byte array: its length plus one (0 for null) as a variable-length number,
+	 * followed by its UTF-8 bytes.
+	 *
+	 * @param text					the text, may be null
+	 */
+	private void writeField(String text) {
+
+		byte[] encoded = (text == null) ? null : text.getBytes(StandardCharsets.UTF_8);
+		int length = (encoded == null) ? 0 : (encoded.length + 1);
+
+		ensureBytes(5 + ((encoded == null) ? 0 : encoded.length));
+		while (length >= 0x80) {
+			bytes[used++] = (byte) (length | 0x80);
+			length >>>= 7;
+		}
+		bytes[used++] = (byte) length;
+		if (encoded != null) {
+			System.arraycopy(encoded, 0, bytes, used, encoded.length);
+			used += encoded.length;
+		}
+	}
+
+	/**
+	 * This method decodes the identity of a slot.
+	 *
+	 * @param slot					the slot
+	 * @return						a new identity
+	 */
+	private Identity read(int slot) {
+
+		int[] position = {offsets[slot]};
+		String uid = (uids[slot] == TEXT_UID) ? readField(bytes, position) : Long.toString(uids[slot]);
+		String displayName = readField(bytes, position);
+		String local = readField(bytes, position);
+		String email = (domainIds[slot] == NONE) ? local : (local + "@" + domains.getDomain(domainIds[slot]));
+
+		return new Identity(uid, displayName, email);
+	}
+
+	/**
+	 * This method decodes only the UID of a slot with a text UID.
+	 *
+	 * @param slot					the slot
+	 * @return						the UID
+	 */
+	private String readUidText(int slot) {
+		return readField(bytes, new int[] {offsets[slot]});
+	}
+
+	/**
+	 * This method decodes a text of a record.
+	 *
+	 * @param source				the byte array
+	 * @param position				the position of the text, moved after the text
+	 * @return						the text, may be null
+	 */
+	private static String readField(byte[] source, int[] position) {
+
+		int length = readLength(source, position);
+		if (length == 0) {
+			return null;
+		}
+		String text = new String(source, position[0], length - 1, StandardCharsets.UTF_8);
+		position[0] += length - 1;
+
+		return text;
+	}
+
+	/**
+	 * This method decodes a variable-length number.
+	 *
+	 * @param source				the byte array
+	 * @param position				the position of the number, moved after the number
+	 * @return						the number
+	 */
+	private static int readLength(byte[] source, int[] position) {
+
+		int length = 0;
+		int shift = 0;
+		byte next;
+		do {
+			next = source[position[0]++];
+			length |= (next & 0x7F) << shift;
+			shift += 7;
+		} while ((next & 0x80) != 0);
+
+		return length;
+	}
+
+	/**
+	 * This method returns the number of bytes of the record of a slot.
+	 *
+	 * @param slot					the slot
+	 * @return						the number of bytes
+	 */
+	private int recordLength(int slot) {
+		return recordLength(bytes, offsets[slot], uids[slot] == TEXT_UID);
+	}
+
+	/**
+	 * This method returns the number of bytes of a record.
+	 *
+	 * @param source				the byte array
+	 * @param start					the position of the record
+	 * @param textUid				true, if the record starts with a UID
+	 * @return						the number of bytes
+	 */
+	private static int recordLength(byte[] source, int start, boolean textUid) {
+
+		int[] position = {start};
+		for (int field = textUid ? 0 : 1; field < 3; field++) {
+			int length = readLength(source, position);
+			position[0] += Math.max(0, length - 1);
+		}
+
+		return position[0] - start;
+	}
+
+	/**
+	 * This method grows the byte array, so the given number of bytes can be appended.
+	 *
+	 * @param needed				the number of bytes to append
+	 */
+	private void ensureBytes(int needed) {
+
+		if (used + needed > bytes.length) {
+			bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, used + needed));
+		}
+	}
+
+	/**
+	 * This method compacts the set, if the replaced and removed texts take more than half of a big byte array.
+	 */
+	private void compactIfNeeded() {
+
+		if (used > MIN_COMPACTION_BYTES && garbage > used / 2) {
+			compact();
+		}
+	}
+
+	/**
+	 * This method returns the position of the first slot, which is not removed.
+	 *
+	 * @param from					the first slot to check
+	 * @return						the slot or the number of slots, if there is none
+	 */
+	private int skipRemoved(int from) {
+
+		int slot = from;
+		while (slot < slots && offsets[slot] == NONE) {
+			slot++;
+		}
+
+		return slot;
+	}
+
+	/**
+	 * This method reads a UID as a number, if it is written exactly as the number.
+	 *
+	 * @param uid					the UID
+	 * @return						the number or TEXT_UID, e.g. for '007' or 'adm'
+	 */
+	private static long toNumber(String uid) {
+
+		if (uid == null || uid.isEmpty() || uid.length() > 19) {
+			return TEXT_UID;
+		}
+		try {
+			long number = Long.parseLong(uid);
+			return (number != TEXT_UID && Long.toString(number).equals(uid)) ? number : TEXT_UID;
+		} catch (NumberFormatException e) {
+			return TEXT_UID;
+		}
+	}
+
+	/**
+	 * This method spreads the bits of a number, so close numbers don't fall to close positions of the index.
+	 *
+	 * @param number				the number
+	 * @return						the hash of the number
+	 */
+	private static int mix(long number) {
+
+		long hash = number * 0x9E3779B97F4A7C15L;
+		return (int) (hash ^ (hash >>> 32));
+	}
+
+	/**
+	 * This method returns the size of an index for the given number of UIDs, a power of two at least twice as big.
+	 *
+	 * @param entries				the number of UIDs
+	 * @return						the size of the index
+	 */
+	private static int indexCapacity(int entries) {
+
+		int capacity = 32;
+		while (capacity < entries * 2) {
+			capacity <<= 1;
+		}
+
+		return capacity;
+	}
+
+	/**
+	 * This method returns a new array of positions of an index, all of them free.
+	 *
+	 * @param capacity				the size of the index
+	 * @return						the array
+	 */
+	private static int[] newIndexSlots(int capacity) {
+
+		int[] positions = new int[capacity];
+		Arrays.fill(positions, NONE);
+
+		return positions;
+	}
+}
@@ -0,0 +1,481 @@
+package fr.epita.iam.services;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class is a bounded pool of database connections.
+ * A borrowed connection is returned to the pool, when it is closed, so it can be used with a try-with-resources statement.
+ *
+ * At most the configured number of connections are open at the same time. If all of them are borrowed,
+ * a caller waits for a returned one, but not longer than the configured maximal wait.
+ * An idle connection is validated before it is borrowed again and it is closed after it was not used for a while.
+ * Every connection keeps its prepared statements in a StatementCache, so the frequently used statements
+ * are compiled by the database only once per connection.
+ *
+ * @author Lenka Horvathova
+ */
+public class ConnectionPool {
+
+	private static final String DETAILS = "Details: ";
+
+	/** the default maximal number of open connections */
+	public static final int DEFAULT_MAX_SIZE = 10;
+
+	/** the default maximal time in milliseconds a caller waits for a connection */
+	public static final long DEFAULT_MAX_WAIT_MILLIS = 5000;
+
+	/** the default time in milliseconds after which an unused connection is closed */
+	public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 60000;
+
+	/** the default maximal number of cached prepared statements per connection */
+	public static final int DEFAULT_STATEMENT_CACHE_SIZE = 20;
+
+	private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+
+	private final String connectionString;
+	private final String user;
+	private final String password;
+	private final long maxWaitMillis;
+	private final long idleTimeoutMillis;
+	private final int statementCacheSize;
+
+	private final Semaphore permits;
+	private final Deque<PooledConnection> idle = new ArrayDeque<>();
+	private final ScheduledExecutorService evictor;
+	private volatile boolean closed;
+
+	private final AtomicInteger active = new AtomicInteger();
+	private final AtomicLong borrowCount = new AtomicLong();
+	private final AtomicLong waitNanos = new AtomicLong();
+	private final AtomicLong timeoutCount = new AtomicLong();
+	private final AtomicLong statementHits = new AtomicLong();
+	private final AtomicLong statementMisses = new AtomicLong();
+
+	/**
+	 * This is a Constructor for a ConnectionPool class with the default limits.
+	 *
+	 * @param connectionString		the JDBC URL of the database
+	 * @param user					the user of the database
+	 * @param password				the password of the user
+	 */
+	public ConnectionPool(String connectionString, String user, String password) {
+
+		this(connectionString, user, password, DEFAULT_MAX_SIZE, DEFAULT_MAX_WAIT_MILLIS, DEFAULT_IDLE_TIMEOUT_MILLIS,
+			 DEFAULT_STATEMENT_CACHE_SIZE);
+	}
+
+	/**
+	 * This is a Constructor for a ConnectionPool class.
+	 *
+	 * @param connectionString		the JDBC URL of the database
+	 * @param user					the user of the database
+	 * @param password				the password of the user
+	 * @param maxSize				the maximal number of open connections
+	 * @param maxWaitMillis			the maximal time in milliseconds a caller waits for a connection
+	 * @param idleTimeoutMillis		the time in milliseconds after which an unused connection is closed
+	 * @param statementCacheSize	the maximal number of cached prepared statements per connection, 0 for no cache
+	 */
+	public ConnectionPool(String connectionString, String user, String password,
+						  int maxSize, long maxWaitMillis, long idleTimeoutMillis, int statementCacheSize) {
+
+		if (maxSize < 1) {
+			throw new IllegalArgumentException("The pool has to allow at least one connection : " + maxSize);
+		}
+		this.connectionString = connectionString;
+		this.user = user;
+		this.password = password;
+		this.maxWaitMillis = maxWaitMillis;
+		this.idleTimeoutMillis = idleTimeoutMillis;
+		this.statementCacheSize = statementCacheSize;
+		this.permits = new Semaphore(maxSize, true);
+
+		this.evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "connection-pool-evictor");
+			thread.setDaemon(true);
+			return thread;
+		});
+		long period = Math.max(idleTimeoutMillis / 2, 1);
+		evictor.scheduleAtFixedRate(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * This method borrows a connection from the pool.
+	 * The connection has to be closed after use, which returns it to the pool.
+	 *
+	 * @return						the borrowed connection
+	 * @throws SQLException			if no connection was returned in time or a new connection cannot be opened
+	 */
+	public Connection getConnection() throws SQLException {
+
+		if (closed) {
+			throw new SQLException("The connection pool is closed.");
+		}
+
+		long start = System.nanoTime();
+		try {
+			if (!permits.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS)) {
+				timeoutCount.incrementAndGet();
+				throw new SQLException("No connection was available within " + maxWaitMillis + " ms.");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while waiting for a connection.", e);
+		} finally {
+			waitNanos.addAndGet(System.nanoTime() - start);
+		}
+
+		try {
+			PooledConnection pooled = takeValidIdle(); //a separate method for a validation of idle connections is used
+			if (pooled == null) {
+				pooled = new PooledConnection(DriverManager.getConnection(connectionString, user, password));
+			}
+			active.incrementAndGet();
+			borrowCount.incrementAndGet();
+
+			return pooled.lend();
+		} catch (SQLException | RuntimeException e) {
+			permits.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * This method closes all the idle connections and refuses to lend new ones.
+	 * Borrowed connections are closed, when they are returned.
+	 */
+	public void close() {
+
+		closed = true;
+		evictor.shutdownNow();
+
+		synchronized (idle) {
+			for (PooledConnection pooled : idle) {
+				pooled.closePhysical();
+			}
+			idle.clear();
+		}
+	}
+
+	/**
+	 * Active Count Getter : This method returns the number of currently borrowed connections.
+	 *
+	 * @return						the number of borrowed connections
+	 */
+	public int getActiveCount() {
+		return active.get();
+	}
+
+	/**
+	 * Idle Count Getter : This method returns the number of open connections waiting in the pool.
+	 *
+	 * @return						the number of idle connections
+	 */
+	public int getIdleCount() {
+
+		synchronized (idle) {
+			return idle.size();
+		}
+	}
+
+	/**
+	 * Borrow Count Getter : This method returns the number of connections borrowed since the pool was created.
+	 *
+	 * @return						the number of borrows
+	 */
+	public long getBorrowCount() {
+		return borrowCount.get();
+	}
+
+	/**
+	 * Timeout Count Getter : This method returns the number of callers, who did not get a connection in time.
+	 *
+	 * @return						the number of timeouts
+	 */
+	public long getTimeoutCount() {
+		return timeoutCount.get();
+	}
+
+	/**
+	 * Total Wait Getter : This method returns the total time callers waited for a connection.
+	 *
+	 * @return						the total wait time in milliseconds
+	 */
+	public long getTotalWaitMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(waitNanos.get());
+	}
+
+	/**
+	 * Statement Hit Count Getter : This method returns the number of prepared statements reused from the caches.
+	 *
+	 * @return						the number of cache hits
+	 */
+	public long getStatementHitCount() {
+		return statementHits.get();
+	}
+
+	/**
+	 * Statement Miss Count Getter : This method returns the number of prepared statements compiled by the database.
+	 *
+	 * @return						the number of cache misses
+	 */
+	public long getStatementMissCount() {
+		return statementMisses.get();
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+
+		return "ConnectionPool[active=" + getActiveCount() + ", idle=" + getIdleCount()
+			 + ", borrowed=" + getBorrowCount() + ", timeouts=" + getTimeoutCount()
+			 + ", waited=" + getTotalWaitMillis() + " ms"
+			 + ", statement hits=" + getStatementHitCount() + ", misses=" + getStatementMissCount() + "]";
+	}
+
+	/**
+	 * This method takes the most recently used idle connection, which is still valid.
+	 * Invalid connections are closed and skipped.
+	 *
+	 * @return						the valid idle connection or null, if there is none
+	 */
+	private PooledConnection takeValidIdle() {
+
+		while (true) {
+			PooledConnection pooled;
+			synchronized (idle) {
+				pooled = idle.pollFirst();
+			}
+			if (pooled == null) {
+				return null;
+			}
+			if (pooled.isValid()) {
+				return pooled;
+			}
+			pooled.closePhysical();
+		}
+	}
+
+	/**
+	 * This method returns a connection to the pool, when its borrower closed it.
+	 *
+	 * @param pooled				the returned connection
+	 */
+	private void giveBack(PooledConnection pooled) {
+
+		active.decrementAndGet();
+		try {
+			if (closed || !pooled.reset()) {
+				pooled.closePhysical();
+			} else {
+				synchronized (idle) {
+					idle.addFirst(pooled);
+				}
+			}
+		} finally {
+			permits.release();
+		}
+	}
+
+	/**
+	 * This method closes the connections, which have not been used for longer than the idle timeout.
+	 * It runs periodically on the background evictor.
+	 */
+	private void evictIdle() {
+
+		long limit = System.currentTimeMillis() - idleTimeoutMillis;
+
+		synchronized (idle) {
+			Iterator<PooledConnection> iterator = idle.iterator();
+			while (iterator.hasNext()) {
+				PooledConnection pooled = iterator.next();
+				if (pooled.lastUsed < limit) {
+					iterator.remove();
+					pooled.closePhysical();
+				}
+			}
+		}
+	}
+
+	/**
+	 * This class holds a physical connection of the pool.
+	 */
+	private class PooledConnection {
+
+		private final Connection physical;
+		private final StatementCache statements = new StatementCache(statementCacheSize, statementHits, statementMisses);
+		private long lastUsed = System.currentTimeMillis();
+
+		/**
+		 * This is a Constructor for a PooledConnection class.
+		 *
+		 * @param physical			the opened connection to the database
+		 */
+		PooledConnection(Connection physical) {
+			this.physical = physical;
+		}
+
+		/**
+		 * This method returns a new handle of the connection for a borrower.
+		 * Closing the handle returns the connection to the pool.
+		 *
+		 * @return					the handle
+		 */
+		Connection lend() {
+
+			return (Connection) Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(),
+					new Class<?>[] {Connection.class}, new Handle(this));
+		}
+
+		/**
+		 * This method checks, if the connection still works.
+		 *
+		 * @return					true, if the connection is valid;
+		 * 							false, otherwise
+		 */
+		boolean isValid() {
+
+			try {
+				return physical.isValid(VALIDATION_TIMEOUT_SECONDS);
+			} catch (SQLException e) {
+				return false;
+			}
+		}
+
+		/**
+		 * This method returns the connection to its default state after a borrower used it.
+		 *
+		 * @return					true, if the connection can be used again;
+		 * 							false, otherwise
+		 */
+		boolean reset() {
+
+			lastUsed = System.currentTimeMillis();
+			statements.releaseAll();
+			try {
+				if (physical.isClosed()) {
+					return false;
+				}
+				if (!physical.getAutoCommit()) {
+					physical.rollback();
+					physical.setAutoCommit(true);
+				}
+				return true;
+			} catch (SQLException e) {
+				return false;
+			}
+		}
+
+		/**
+		 * This method closes the physical connection.
+		 */
+		void closePhysical() {
+
+			statements.closeAll();
+			try {
+				physical.close();
+			} catch (SQLException e) {
+				System.out.println("Error during a closure of a connection!");
+				System.out.println(DETAILS + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * This class is a handle of a borrowed connection.
+	 * It passes all the calls to the physical connection, except for a closure, which returns the connection to the pool.
+	 */
+	private class Handle implements InvocationHandler {
+
+		private final PooledConnection pooled;
+		private boolean returned;
+
+		/**
+		 * This is a Constructor for a Handle class.
+		 *
+		 * @param pooled			the borrowed connection
+		 */
+		Handle(PooledConnection pooled) {
+			this.pooled = pooled;
+		}
+
+		/* (non-Javadoc)
+		 * @see java.lang.reflect.InvocationHandler#invoke(java.lang.Object, java.lang.reflect.Method, java.lang.Object[])
+		 */
+		@Override
+		public synchronized Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+
+			switch (method.getName()) {
+			case "close":
+				if (!returned) {
+					returned = true;
+					giveBack(pooled);
+				}
+				return null;
+
+			case "isClosed":
+				return returned || pooled.physical.isClosed();
+
+			case "equals":
+				return proxy == args[0];
+
+			case "hashCode":
+				return System.identityHashCode(proxy);
+
+			case "toString":
+				return "Pooled " + pooled.physical;
+
+			case "prepareStatement":
+				if (!returned && (args.length == 1 || args.length == 3) && args[0] instanceof String) {
+					int type = (args.length == 3) ? (Integer) args[1] : ResultSet.TYPE_FORWARD_ONLY;
+					int concurrency = (args.length == 3) ? (Integer) args[2] : ResultSet.CONCUR_READ_ONLY;
+					return pooled.statements.prepare(pooled.physical, (String) args[0], type, concurrency);
+				}
+				if (!returned && args.length == 2 && args[0] instanceof String && args[1] instanceof Integer) {
+					return pooled.statements.prepare(pooled.physical, (String) args[0], (Integer) args[1]);
+				}
+				return invokePhysical(method, args);
+
+			default:
+				return invokePhysical(method, args);
+			}
+		}
+
+		/**
+		 * This method passes a call to the physical connection.
+		 *
+		 * @param method			the called method
+		 * @param args				the arguments of the call
+		 * @return					the result of the call
+		 * @throws Throwable		the exception thrown by the physical connection
+		 */
+		private Object invokePhysical(Method method, Object[] args) throws Throwable {
+
+			if (returned) {
+				throw new SQLException("The connection was already returned to the pool.");
+			}
+			try {
+				return method.invoke(pooled.physical, args);
+			} catch (InvocationTargetException e) {
+				throw e.getCause();
+			}
+		}
+	}
+}
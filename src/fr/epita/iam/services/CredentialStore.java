@@ -0,0 +1,391 @@
+package fr.epita.iam.services;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+import fr.epita.iam.datamodel.Credential;
+
+/**
+ * This class keeps the credentials of the users, indexed by their usernames and by the UIDs of their identities.
+ *
+ * Passwords are kept only as salted PBKDF2 hashes. Computing a hash is deliberately slow, its cost is set by
+ * the number of iterations. A credential keeps the number of iterations it was hashed with, so the work factor
+ * can be raised at any time: an older credential is hashed again with the new work factor, when its user logs in.
+ *
+ * The recent successful verifications are kept in a bounded cache, so a repeated login of the same user
+ * with the same password skips the slow hash. The cache keeps only a fast digest of the password with a secret
+ * of the store, never the password itself, and an entry expires after the given time or with a change of the password.
+ *
+ * @author Lenka Horvathova
+ */
+public class CredentialStore {
+
+	/** the default number of PBKDF2 iterations */
+	public static final int DEFAULT_ITERATIONS = 65536;
+
+	/** the default number of cached verifications */
+	public static final int DEFAULT_CACHE_SIZE = 1000;
+
+	/** the default time a cached verification is valid, in milliseconds */
+	public static final long DEFAULT_CACHE_TTL_MILLIS = 10 * 60 * 1000L;
+
+	private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+	private static final int SALT_BYTES = 16;
+	private static final int HASH_BITS = 256;
+	private static final String SEPARATOR = ":";
+
+	private final int iterations;
+	private final int cacheSize;
+	private final long cacheTtlMillis;
+	private final SecureRandom random = new SecureRandom();
+	private final byte[] cacheSecret = new byte[32];
+
+	private final Map<String, Credential> byUsername = new ConcurrentHashMap<>();
+	private final Map<String, Credential> byUid = new ConcurrentHashMap<>();
+	private final Map<String, CachedVerification> cache;
+
+	/**
+	 * This is a Constructor for a CredentialStore class with the default work factor and cache.
+	 */
+	public CredentialStore() {
+
+		this(DEFAULT_ITERATIONS, DEFAULT_CACHE_SIZE, DEFAULT_CACHE_TTL_MILLIS);
+	}
+
+	/**
+	 * This is a Constructor for a CredentialStore class.
+	 *
+	 * @param iterations			the number of PBKDF2 iterations of a new hash, the higher the slower every login
+	 * @param cacheSize				the maximal number of cached verifications, 0 to verify every login with the hash
+	 * @param cacheTtlMillis		the time a cached verification is valid, in milliseconds
+	 */
+	public CredentialStore(int iterations, int cacheSize, long cacheTtlMillis) {
+
+		if (iterations < 1 || cacheSize < 0) {
+			throw new IllegalArgumentException("The iterations have to be positive and the cache size not negative.");
+		}
+		this.iterations = iterations;
+		this.cacheSize = cacheSize;
+		this.cacheTtlMillis = cacheTtlMillis;
+		random.nextBytes(cacheSecret);
+		this.cache = new LinkedHashMap<String, CachedVerification>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, CachedVerification> eldest) {
+				return size() > CredentialStore.this.cacheSize;
+			}
+		};
+	}
+
+	/**
+	 * This method registers a new user or sets a new password of an existing user.
+	 *
+	 * @param username				a name the user logs in with, without spaces and colons
+	 * @param uid					a unique identification of the user's identity, null for a user without an identity
+	 * @param password				the password of the user
+	 * @return						the new credential
+	 */
+	public Credential register(String username, String uid, char[] password) {
+
+		if (username == null || username.isEmpty() || username.contains(SEPARATOR) || username.matches(".*\\s.*")) {
+			throw new IllegalArgumentException("A username cannot be empty or contain spaces or colons : " + username);
+		}
+
+		Credential credential = create(username, uid, password); //a separate method for a hashing of a password is used
+		put(credential); //a separate method for an indexing of a credential is used
+
+		return credential;
+	}
+
+	/**
+	 * This method removes a user.
+	 *
+	 * @param username				the name of the user
+	 * @return						the removed credential or null, if there was no such user
+	 */
+	public Credential remove(String username) {
+
+		Credential removed = byUsername.remove(username);
+		if (removed != null && removed.getUid() != null) {
+			byUid.remove(removed.getUid(), removed);
+		}
+		synchronized (cache) {
+			cache.remove(username);
+		}
+
+		return removed;
+	}
+
+	/**
+	 * This method returns the credential of a user.
+	 *
+	 * @param username				the name of the user
+	 * @return						the credential or null, if there is no such user
+	 */
+	public Credential findByUsername(String username) {
+		return (username == null) ? null : byUsername.get(username);
+	}
+
+	/**
+	 * This method returns the credential linked to an identity.
+	 *
+	 * @param uid					the UID of the identity
+	 * @return						the credential or null, if the identity has no credential
+	 */
+	public Credential findByUid(String uid) {
+		return (uid == null) ? null : byUid.get(uid);
+	}
+
+	/**
+	 * This method checks the password of a user.
+	 * A recently verified password is checked in the cache, otherwise its hash is computed.
+	 *
+	 * @param username				the name of the user
+	 * @param password				the password to check
+	 * @return						true, if the user exists and the password is correct;
+	 * 								false, otherwise
+	 */
+	public boolean verify(String username, char[] password) {
+
+		Credential credential = findByUsername(username);
+		if (credential == null || password == null) {
+			return false;
+		}
+
+		byte[] digest = digest(password);
+		if (cacheSize > 0) {
+			synchronized (cache) {
+				CachedVerification cached = cache.get(username);
+				// a cached verification is valid only for the same credential, so a new password invalidates it
+				if (cached != null && cached.credential == credential && System.currentTimeMillis() < cached.expires
+						&& MessageDigest.isEqual(cached.digest, digest)) {
+					return true;
+				}
+			}
+		}
+
+		if (!MessageDigest.isEqual(credential.getHash(), hash(password, credential.getSalt(), credential.getIterations()))) {
+			return false;
+		}
+
+		if (credential.getIterations() < iterations) {
+			Credential upgraded = create(username, credential.getUid(), password);
+			// the hash is replaced only, if the password was not changed in the meantime, otherwise it would be reverted
+			if (!byUsername.replace(username, credential, upgraded)) {
+				return true;
+			}
+			if (credential.getUid() != null) {
+				byUid.replace(credential.getUid(), credential, upgraded);
+			}
+			credential = upgraded;
+		}
+		if (cacheSize > 0) {
+			synchronized (cache) {
+				cache.put(username, new CachedVerification(credential, digest, System.currentTimeMillis() + cacheTtlMillis));
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Size Getter : This method returns the number of users.
+	 *
+	 * @return						the number of users
+	 */
+	public int size() {
+		return byUsername.size();
+	}
+
+	/**
+	 * This method reads the credentials from a file and adds them to the store.
+	 * Every line of the file holds one credential : username:iterations:salt:hash:uid
+	 *
+	 * @param file					the file to read
+	 * @throws IOException			if the file cannot be read or is damaged
+	 */
+	public void load(File file) throws IOException {
+
+		try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+			String line = reader.readLine();
+			while (line != null) {
+				if (!line.trim().isEmpty()) {
+					put(parse(line)); //a separate method for a parsing of a credential is used
+				}
+				line = reader.readLine();
+			}
+		}
+	}
+
+	/**
+	 * This method writes all the credentials to a file, replacing its content.
+	 * The credentials are written to a temporary file first, which then replaces the file.
+	 *
+	 * @param file					the file to write
+	 * @throws IOException			if the file cannot be written
+	 */
+	public void save(File file) throws IOException {
+
+		File tmpFile = IdentityTextFormat.tmpFile(file);
+		Base64.Encoder encoder = Base64.getEncoder();
+
+		try (PrintWriter printer = new PrintWriter(new BufferedWriter(new FileWriter(tmpFile)))) {
+			for (Credential credential : byUsername.values()) {
+				printer.println(credential.getUsername() + SEPARATOR + credential.getIterations()
+						+ SEPARATOR + encoder.encodeToString(credential.getSalt())
+						+ SEPARATOR + encoder.encodeToString(credential.getHash())
+						+ SEPARATOR + ((credential.getUid() == null) ? "" : credential.getUid()));
+			}
+			IdentityTextFormat.checkError(printer, tmpFile);
+		}
+
+		Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * This method creates a credential with a new salt and the hash of the password with the current iterations.
+	 *
+	 * @param username				the name of the user
+	 * @param uid					the UID of the user's identity, may be null
+	 * @param password				the password of the user
+	 * @return						the credential
+	 */
+	private Credential create(String username, String uid, char[] password) {
+
+		byte[] salt = new byte[SALT_BYTES];
+		random.nextBytes(salt);
+
+		return new Credential(username, uid, iterations, salt, hash(password, salt, iterations));
+	}
+
+	/**
+	 * This method indexes a credential, replacing the previous credential of the same user.
+	 *
+	 * @param credential			the credential to index
+	 */
+	private void put(Credential credential) {
+
+		Credential previous = byUsername.put(credential.getUsername(), credential);
+		if (previous != null && previous.getUid() != null) {
+			byUid.remove(previous.getUid(), previous);
+		}
+		if (credential.getUid() != null) {
+			byUid.put(credential.getUid(), credential);
+		}
+	}
+
+	/**
+	 * This method reads a credential from a line of a file.
+	 *
+	 * @param line					the line
+	 * @return						the credential
+	 * @throws IOException			if the line is damaged
+	 */
+	private static Credential parse(String line) throws IOException {
+
+		String[] fields = line.split(SEPARATOR, 5);
+		if (fields.length != 5) {
+			throw new IOException("Unexpected line in the file of credentials : " + fields[0]);
+		}
+
+		try {
+			Base64.Decoder decoder = Base64.getDecoder();
+			return new Credential(fields[0], fields[4].isEmpty() ? null : fields[4], Integer.parseInt(fields[1]),
+					decoder.decode(fields[2]), decoder.decode(fields[3]));
+		} catch (IllegalArgumentException e) {
+			throw new IOException("A damaged credential in the file : " + fields[0], e);
+		}
+	}
+
+	/**
+	 * This method computes the PBKDF2 hash of a password.
+	 *
+	 * @param password				the password
+	 * @param salt					the salt
+	 * @param rounds				the number of iterations
+	 * @return						the hash
+	 */
+	private static byte[] hash(char[] password, byte[] salt, int rounds) {
+
+		PBEKeySpec spec = new PBEKeySpec(password, salt, rounds, HASH_BITS);
+		try {
+			return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+		} catch (GeneralSecurityException e) {
+			// every Java 8 runtime has to provide the algorithm
+			throw new IllegalStateException("The password cannot be hashed.", e);
+		} finally {
+			spec.clearPassword();
+		}
+	}
+
+	/**
+	 * This method computes a fast digest of a password with the secret of the store, used only by the cache.
+	 *
+	 * @param password				the password
+	 * @return						the digest
+	 */
+	private byte[] digest(char[] password) {
+
+		ByteBuffer bytes = StandardCharsets.UTF_8.encode(CharBuffer.wrap(password));
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			digest.update(cacheSecret);
+			digest.update(bytes);
+			return digest.digest();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("The password cannot be digested.", e);
+		} finally {
+			if (bytes.hasArray()) {
+				Arrays.fill(bytes.array(), (byte) 0);
+			}
+		}
+	}
+
+	/**
+	 * This class holds a recent successful verification.
+	 */
+	private static class CachedVerification {
+
+		private final Credential credential;
+		private final byte[] digest;
+		private final long expires;
+
+		/**
+		 * This is a Constructor for a CachedVerification class.
+		 *
+		 * @param credential		the verified credential
+		 * @param digest			the digest of the verified password
+		 * @param expires			the time, when the verification expires, in milliseconds
+		 */
+		CachedVerification(Credential credential, byte[] digest, long expires) {
+
+			this.credential = credential;
+			this.digest = digest;
+			this.expires = expires;
+		}
+	}
+}
@@ -0,0 +1,142 @@
+package fr.epita.iam.services;
+
+import java.text.Normalizer;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import fr.epita.iam.datamodel.Identity;
+
+/**
+ * This class is a prefix index over the names of identities.
+ * The identities are kept sorted by their name, so all the identities with a name starting with a given prefix
+ * form one continuous range, which is found without looking at any other identity.
+ *
+ * The index can use normalized names, so a search does not depend on the case and the accents,
+ * e.g. 'horv' finds 'HORVATHOVA' as well as the name written with accents.
+ *
+ * @author Lenka Horvathova
+ */
+public class DisplayNameIndex implements IdentityIndex {
+
+	// separates the name from the UID in a key, so identities with the same name have different keys
+	private static final char KEY_SEPARATOR = '\u0000';
+
+	private final boolean normalized;
+	private final NavigableMap<String, Identity> identities = new TreeMap<>();
+
+	/**
+	 * This is a Constructor for a DisplayNameIndex class.
+	 *
+	 * @param normalized			true, if the names should be compared without the case and the accents;
+	 * 								false, if they should be compared exactly
+	 */
+	public DisplayNameIndex(boolean normalized) {
+
+		this.normalized = normalized;
+	}
+
+	/**
+	 * Normalized Getter : This method tells, if the names are compared without the case and the accents.
+	 *
+	 * @return						true, if the names are normalized;
+	 * 								false, otherwise
+	 */
+	public boolean isNormalized() {
+		return normalized;
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.epita.iam.services.IdentityIndex#added()
+	 */
+	@Override
+	public void added(Identity identity) {
+
+		if (identity.getDisplayName() != null) {
+			identities.put(key(identity), identity);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.epita.iam.services.IdentityIndex#removed()
+	 */
+	@Override
+	public void removed(Identity identity) {
+
+		if (identity.getDisplayName() != null) {
+			identities.remove(key(identity));
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.epita.iam.services.IdentityIndex#cleared()
+	 */
+	@Override
+	public void cleared() {
+
+		identities.clear();
+	}
+
+	/**
+	 * This method returns all the identities with a name starting with the given prefix, sorted by their name.
+	 *
+	 * @param prefix				the beginning of the name
+	 * @return						the unmodifiable view of the matching identities
+	 */
+	public Collection<Identity> findByPrefix(String prefix) {
+
+		String from = normalized ? normalize(prefix) : prefix;
+
+		return Collections.unmodifiableCollection(identities.subMap(from, true, from + Character.MAX_VALUE, false).values());
+	}
+
+	/**
+	 * This method returns a name without accents and in lower case.
+	 *
+	 * @param name					the name to normalize
+	 * @return						the normalized name
+	 */
+	public static String normalize(String name) {
+
+		if (isAscii(name)) {
+			//a name without accents only needs the lower case
+			return name.toLowerCase(Locale.ROOT);
+		}
+		String decomposed = Normalizer.normalize(name, Normalizer.Form.NFD);
+
+		return decomposed.replaceAll("\\p{M}", "").toLowerCase(Locale.ROOT);
+	}
+
+	/**
+	 * This method checks, if a name has only ASCII characters, so it has no accents.
+	 *
+	 * @param name					the name
+	 * @return						true, if all the characters are ASCII;
+	 * 								false, otherwise
+	 */
+	private static boolean isAscii(String name) {
+
+		for (int i = 0; i < name.length(); i++) {
+			if (name.charAt(i) >= 0x80) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * This method returns a key of an identity in the index.
+	 *
+	 * @param identity				the identity
+	 * @return						the key made of the name and the UID
+	 */
+	private String key(Identity identity) {
+
+		String name = normalized ? normalize(identity.getDisplayName()) : identity.getDisplayName();
+
+		return name + KEY_SEPARATOR + identity.getUid();
+	}
+}
@@ -0,0 +1,55 @@
+package fr.epita.iam.services;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class gives every distinct email domain (e.g. 'gmail.com') a small number,
+ * so a domain repeated in many identities is kept in the memory only once.
+ *
+ * @author Lenka Horvathova
+ */
+public class EmailDomainDictionary {
+
+	private final Map<String, Integer> ids = new HashMap<>();
+	private final List<String> domains = new ArrayList<>();
+
+	/**
+	 * This method returns the number of a domain, adding the domain to the dictionary, if it is new.
+	 *
+	 * @param domain				the domain
+	 * @return						the number of the domain
+	 */
+	public synchronized int intern(String domain) {
+
+		Integer id = ids.get(domain);
+		if (id == null) {
+			id = domains.size();
+			domains.add(domain);
+			ids.put(domain, id);
+		}
+
+		return id;
+	}
+
+	/**
+	 * Domain Getter : This method returns the domain with the given number.
+	 *
+	 * @param id					the number of the domain
+	 * @return						the domain
+	 */
+	public synchronized String getDomain(int id) {
+		return domains.get(id);
+	}
+
+	/**
+	 * Size Getter : This method returns the number of distinct domains.
+	 *
+	 * @return						the number of domains
+	 */
+	public synchronized int size() {
+		return domains.size();
+	}
+}
@@ -0,0 +1,75 @@
+package fr.epita.iam.services;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import fr.epita.iam.datamodel.Identity;
+
+/**
+ * This class is a unique hash index over the emails of identities.
+ * An identity is found by its email without looking at any other identity, so it can also tell at once,
+ * if an email is already used by another identity. The emails are compared exactly, identities without an email
+ * are not indexed.
+ *
+ * @author Lenka Horvathova
+ */
+public class EmailIndex implements IdentityIndex {
+
+	private final Map<String, Identity> identities = new HashMap<>();
+
+	/* (non-Javadoc)
+	 * @see fr.epita.iam.services.IdentityIndex#added()
+	 */
+	@Override
+	public void added(Identity identity) {
+
+		if (identity.getEmail() != null) {
+			identities.put(identity.getEmail(), identity);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.epita.iam.services.IdentityIndex#removed()
+	 */
+	@Override
+	public void removed(Identity identity) {
+
+		if (identity.getEmail() != null) {
+			//only the identity itself is removed, not another one using the same email in a damaged file
+			identities.remove(identity.getEmail(), identity);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.epita.iam.services.IdentityIndex#cleared()
+	 */
+	@Override
+	public void cleared() {
+
+		identities.clear();
+	}
+
+	/**
+	 * This method returns the identity with the given email.
+	 *
+	 * @param email					the email
+	 * @return						the identity or null, if there is no identity with this email
+	 */
+	public Identity findByEmail(String email) {
+		return (email == null) ? null : identities.get(email);
+	}
+
+	/**
+	 * This method checks, if the email of an identity is already used by an identity with another UID.
+	 *
+	 * @param identity				the identity to be saved or updated
+	 * @return						true, if the email is used by another identity;
+	 * 								false, otherwise
+	 */
+	public boolean isTakenByOther(Identity identity) {
+
+		Identity owner = findByEmail(identity.getEmail());
+
+		return owner != null && !owner.getUid().equals(identity.getUid());
+	}
+}
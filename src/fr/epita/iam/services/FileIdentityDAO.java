@@ -1,16 +1,20 @@
 package fr.epita.iam.services;
 
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.nio.file.Files;
-import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.List;
-import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import fr.epita.iam.datamodel.Identity;
 import fr.epita.iam.exceptions.DAOClosureException;
@@ -23,30 +27,93 @@ import fr.epita.iam.exceptions.DAOUpdateException;
 /**
  * This class manages identities using a file.
  * It implements an IdentityDAO interface.
- * 
+ *
+ * The file is read only once, when the DAO is initialized, and its identities are kept in an in-memory store
+ * indexed by UID. Searches are served from the memory and only changes are written to the file.
+ * How the changes are written depends on the used IdentityStorage: the whole file can be rewritten
+ * (TextIdentityStorage, the default) or the changes can be appended to a journal (JournalIdentityStorage).
+ *
+ * One DAO can be shared by several threads. Searches hold a read lock, so they run in parallel,
+ * while changes hold a write lock, so they are applied one after another and no search sees a half-applied change.
+ * Every search sees all the changes, which were finished before it started.
+ *
+ * Changes of several threads made at the same time are written together (a group commit): they are merged
+ * into a single write of the storage, which is forced to the disk once, and every caller returns only when its changes
+ * are durable. A maximal batch delay can make the changes wait a little for others to join their group.
+ * The written changes are numbered and published to the listeners of the change publisher in the same order.
+ *
  * @author Lenka Horvathova
  */
 public class FileIdentityDAO implements IdentityDAO {
-	
+
 	private static final String DETAILS = "Details: ";
 
 	private static final String IDENTITY_FILE_PATH = "/temp/tests/identities.txt";
-	
-	private PrintWriter printer;
-	private Scanner scanner;
-	private FileWriter writer;
-	private FileReader reader;
-	
+	static final String ORIGINAL_FILE_PATH = "/temp/identities.txt";
+
+	private final IdentityStorage storage;
+	private final IdentityStore store = new IdentityStore();
+	private final DisplayNameIndex nameIndex;
+	private final TrigramIndex textIndex = new TrigramIndex();
+	private final EmailIndex emailIndex = new EmailIndex();
+	private final IdentityChangePublisher publisher = new IdentityChangePublisher();
+	private final StampedLock lock = new StampedLock();
+	private final ReentrantLock commitLock = new ReentrantLock();
+	private final Condition committed = commitLock.newCondition();
+	private final List<CommitRequest> pendingCommits = new ArrayList<>();
+	private boolean committing;
+	private volatile long maxBatchDelayMillis;
+
 	/**
 	 * This is a Constructor for a FileIdentityDAO class.
-	 * A file is prepared with every initialization. 
+	 * A file is prepared with every initialization.
 	 */
 	public FileIdentityDAO() {
-		
-		File file = new File(IDENTITY_FILE_PATH);	
-		
-		initFile(file); //a separate method for an initialization of a file is used		
-		System.out.println("All the identities can be found in this file : " + file.getAbsolutePath());			
+
+		this(IDENTITY_FILE_PATH);
+	}
+
+	/**
+	 * This is a Constructor for a FileIdentityDAO class working with the given file.
+	 * The file is prepared and all its identities are loaded into the memory.
+	 *
+	 * @param filePath			a path to the file with identities
+	 */
+	public FileIdentityDAO(String filePath) {
+
+		this(new TextIdentityStorage(filePath));
+	}
+
+	/**
+	 * This is a Constructor for a FileIdentityDAO class working with the given storage.
+	 * The file of the storage is prepared and all its identities are loaded into the memory.
+	 *
+	 * @param storage			a storage keeping the identities in a file
+	 */
+	public FileIdentityDAO(IdentityStorage storage) {
+
+		this(storage, false);
+	}
+
+	/**
+	 * This is a Constructor for a FileIdentityDAO class working with the given storage.
+	 * The file of the storage is prepared and all its identities are loaded into the memory.
+	 *
+	 * @param storage			a storage keeping the identities in a file
+	 * @param normalizedNames	true, if a search by a name should ignore the case and the accents;
+	 * 							false, if the name has to start exactly with the searched one
+	 */
+	public FileIdentityDAO(IdentityStorage storage, boolean normalizedNames) {
+
+		this.storage = storage;
+		this.nameIndex = new DisplayNameIndex(normalizedNames);
+		store.addIndex(nameIndex);
+		store.addIndex(textIndex);
+		store.addIndex(emailIndex);
+
+		initFile(storage.getFile()); //a separate method for an initialization of a file is used
+		loadFile(); //a separate method for a load of a file is used
+		System.out.println("All the identities can be found in this file : " + storage.getFile().getAbsolutePath());
 	}
 
 	/* (non-Javadoc)
@@ -54,270 +121,607 @@ public class FileIdentityDAO implements IdentityDAO {
 	 */
 	@Override
 	public void save(Identity identity) throws DAOSaveException {
-		
-		ArrayList<Identity> result = scanAllIdentities();
-		
-		result.add(identity);		
-		updateFile(result); //a separate method for an update of a file is used
+
+		BatchResult result;
+		try {
+			result = applyAll(IdentityChange.Type.SAVE, Collections.singletonList(identity)); //a separate method for an update of a file is used
+		} catch (IOException e) {
+			System.out.println("Error during a save of data!");
+			System.out.println(DETAILS + e.getMessage());
+			throw new DAOSaveException();
+		}
+
+		if (!result.isSuccessful()) {
+			System.out.println("Error during a save of data!");
+			System.out.println(DETAILS + result.getItems().get(0).getMessage() + " : " + identity.getUid());
+			DAOSaveException exception = new DAOSaveException();
+			exception.setFaultObject(identity);
+			throw exception;
+		}
 	}
-	
+
 	/* (non-Javadoc)
 	 * @see fr.epita.iam.services.IdentityDAO#search()
 	 */
 	@Override
 	public List<Identity> search(Identity criteria) throws DAOSearchException {
-		
-		ArrayList<Identity> results = new ArrayList<>();
-		
-		while (this.scanner.hasNext()) {			
-			Identity identity = scanIdentity(scanner); //a separate method for a scanning of an identity is used		
-			
-			if ((criteria == null) 
-			 || (identity.getUid().equals(criteria.getUid()))
-			 || (identity.getDisplayName().startsWith(criteria.getDisplayName()))) {				
-				results.add(identity);	
-			}			
-		}		
-		scanReset(); //a separate method for a reset of a scanner is used
-		
-		return results;		
+
+		long stamp = lock.readLock();
+		try {
+			return matching(criteria).map(Identity::new).collect(Collectors.toList());
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * This is a search method that returns the identities that met criteria one by one.
+	 * The stream holds a read lock of the DAO until it is closed, so changes of identities wait for it
+	 * and the same thread must not change identities, while its stream is open.
+	 *
+	 * @see fr.epita.iam.services.IdentityDAO#searchStream(Identity)
+	 */
+	@Override
+	public Stream<Identity> searchStream(Identity criteria) throws DAOSearchException {
+
+		// the identities are walked lazily in the store, only the currently returned one is copied;
+		// the read lock is held until the stream is closed, possibly by another thread, so changes wait for it
+		long stamp = lock.readLock();
+		AtomicBoolean closed = new AtomicBoolean();
+		try {
+			return matching(criteria).map(Identity::new).onClose(() -> {
+				if (closed.compareAndSet(false, true)) {
+					lock.unlockRead(stamp);
+				}
+			});
+		} catch (RuntimeException e) {
+			lock.unlockRead(stamp);
+			throw e;
+		}
 	}
-	
+
+	/* (non-Javadoc)
+	 * @see fr.epita.iam.services.IdentityDAO#searchPage()
+	 */
+	@Override
+	public IdentityPage searchPage(Identity criteria, IdentitySortKey sortKey, Identity after, int limit)
+			throws DAOSearchException {
+
+		long stamp = lock.readLock();
+		try {
+			// the page is selected from the stored identities, only the identities of the page are copied
+			IdentityPage page = IdentityPage.top(matching(criteria).iterator(), sortKey, after, limit);
+			List<Identity> copies = page.getIdentities().stream().map(Identity::new).collect(Collectors.toList());
+
+			return new IdentityPage(copies, page.hasNext());
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
 	/* (non-Javadoc)
 	 * @see fr.epita.iam.services.IdentityDAO#update()
 	 */
 	@Override
 	public void update(Identity updatedIdentity) throws DAOUpdateException {
-		
-		ArrayList<Identity> results = new ArrayList<>();
-		
-		while (this.scanner.hasNext()) {
-			Identity currentIdentity = scanIdentity(scanner); //a separate method for a scanning of an identity is used
-			
-			if (updatedIdentity.getUid().equals(currentIdentity.getUid())) {				
-				results.add(updatedIdentity);
-			} else {				
-				results.add(currentIdentity);
-			}
+
+		BatchResult result;
+		try {
+			result = applyAll(IdentityChange.Type.UPDATE, Collections.singletonList(updatedIdentity)); //a separate method for an update of a file is used
+		} catch (IOException e) {
+			System.out.println("Error during an update of data!");
+			System.out.println(DETAILS + e.getMessage());
+			throw new DAOUpdateException();
+		}
+
+		// an update of a missing identity is silently ignored, only a conflicting email is an error
+		if (result.count(BatchResult.Status.REJECTED) > 0) {
+			System.out.println("Error during an update of data!");
+			System.out.println(DETAILS + result.getItems().get(0).getMessage() + " : " + updatedIdentity.getUid());
+			throw new DAOUpdateException();
 		}
-		updateFile(results); //a separate method for an update of a file is used
 	}
-	
+
 	/* (non-Javadoc)
 	 * @see fr.epita.iam.services.IdentityDAO#delete()
 	 */
 	@Override
 	public void delete(Identity identity) throws DAODeleteException {
-		
-		ArrayList<Identity> results = new ArrayList<>();
-		
-		while (this.scanner.hasNext()) {
-			Identity currentIdentity = scanIdentity(scanner); //a separate method for a scanning of an identity is used
-			
-			if (!identity.getUid().equals(currentIdentity.getUid())) {				
-				results.add(currentIdentity);				
-			}
+
+		try {
+			applyAll(IdentityChange.Type.DELETE, Collections.singletonList(identity)); //a separate method for an update of a file is used
+		} catch (IOException e) {
+			System.out.println("Error during a deletion of data!");
+			System.out.println(DETAILS + e.getMessage());
+			throw new DAODeleteException();
 		}
-		updateFile(results); //a separate method for an update of a file is used
 	}
-	
+
+	/* (non-Javadoc)
+	 * @see fr.epita.iam.services.IdentityDAO#saveAll()
+	 */
+	@Override
+	public BatchResult saveAll(Collection<Identity> identities) throws DAOSaveException {
+
+		try {
+			return applyAll(IdentityChange.Type.SAVE, identities);
+		} catch (IOException e) {
+			System.out.println("Error during a save of data!");
+			System.out.println(DETAILS + e.getMessage());
+			throw new DAOSaveException();
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.epita.iam.services.IdentityDAO#updateAll()
+	 */
+	@Override
+	public BatchResult updateAll(Collection<Identity> identities) throws DAOUpdateException {
+
+		try {
+			return applyAll(IdentityChange.Type.UPDATE, identities);
+		} catch (IOException e) {
+			System.out.println("Error during an update of data!");
+			System.out.println(DETAILS + e.getMessage());
+			throw new DAOUpdateException();
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.epita.iam.services.IdentityDAO#deleteAll()
+	 */
+	@Override
+	public BatchResult deleteAll(Collection<Identity> identities) throws DAODeleteException {
+
+		try {
+			return applyAll(IdentityChange.Type.DELETE, identities);
+		} catch (IOException e) {
+			System.out.println("Error during a deletion of data!");
+			System.out.println(DETAILS + e.getMessage());
+			throw new DAODeleteException();
+		}
+	}
+
 	/* (non-Javadoc)
 	 * @see fr.epita.iam.services.IdentityDAO#closeResources()
 	 */
 	@Override
-	public void closeResources() throws DAOClosureException {		
-		
+	public void closeResources() throws DAOClosureException {
+
+		long stamp = lock.writeLock();
 		try {
-			this.scanner.close();
-			this.printer.close();
-			this.writer.close();
-			this.reader.close();			
-		} catch (Exception e) {			
+			storage.close();
+		} catch (IOException e) {
 			System.out.println("Error during a closure of resources!");
 			System.out.println(DETAILS + e.getMessage());
 			throw new DAOClosureException();
-		}	
+		} finally {
+			store.clear();
+			lock.unlockWrite(stamp);
+		}
 	}
-	
+
 	/* (non-Javadoc)
 	 * @see fr.epita.iam.services.IdentityDAO#resetToOriginal()
 	 */
 	@Override
 	public void resetToOriginal() throws DAOInitializationException {
-		File oldFile = new File(IDENTITY_FILE_PATH);
-		File orgFile = new File("/temp/identities.txt");		
-		initFile(orgFile); //a separate method for an initialization of a file is used			
-				
-		try {						
-			oldFile.delete();
-			Files.copy(orgFile.toPath(), oldFile.toPath(), StandardCopyOption.REPLACE_EXISTING);			
-			oldFile = new File(IDENTITY_FILE_PATH);
-			initFile(oldFile); //a separate method for an initialization of a file is used				
-		} catch (IOException e) {			
+
+		File orgFile = new File(ORIGINAL_FILE_PATH);
+		initFile(orgFile); //a separate method for an initialization of a file is used
+
+		// the original is a text file, so it is read as text and written in the format of the storage
+		IdentityStore original = new IdentityStore();
+		try {
+			new TextIdentityStorage(ORIGINAL_FILE_PATH).load(original);
+		} catch (IOException e) {
+			System.out.println("Error during a load of the original file!");
+			System.out.println(DETAILS + e.getMessage());
+			throw new DAOInitializationException();
+		}
+
+		long stamp = lock.writeLock();
+		List<Identity> previous = new ArrayList<>(store.values());
+		try {
+			List<IdentityChange> changes = new ArrayList<>(previous.size() + original.size());
+			for (Identity identity : previous) {
+				changes.add(new IdentityChange(IdentityChange.Type.DELETE, identity));
+			}
+			store.clear();
+			for (Identity identity : original.values()) {
+				store.put(identity);
+				changes.add(new IdentityChange(IdentityChange.Type.SAVE, identity));
+			}
+			storage.write(changes, store);
+			publisher.publishReset();
+		} catch (IOException e) {
+			store.clear();
+			previous.forEach(store::put);
 			System.out.println("Error during a reset of a file!");
 			System.out.println(DETAILS + e.getMessage());
 			throw new DAOInitializationException();
+		} finally {
+			lock.unlockWrite(stamp);
 		}
 	}
-	
+
 	/* (non-Javadoc)
 	 * @see fr.epita.iam.services.IdentityDAO#printContent()
 	 */
 	@Override
 	public void printContent() throws DAOSearchException {
-		List<Identity> identities = search(null);
-		
-		for (Identity identity : identities) {
-			System.out.println(identity);
+
+		long stamp = lock.readLock();
+		try {
+			for (Identity identity : store.values()) {
+				System.out.println(identity);
+			}
+		} finally {
+			lock.unlockRead(stamp);
 		}
 	}
-	
+
 	/**
-	 * This method creates a new file, if doesn't exist, and sets a printer and a scanner.
-	 * 
-	 * @param file				the file to be prepared
+	 * This is a search method that returns the identity with the given email, found in the email index.
+	 *
+	 * @see fr.epita.iam.services.IdentityDAO#findByEmail(String)
 	 */
-	private void initFile(File file) {
-		
-		if ((this.printer != null) 	|| (this.scanner != null) 
-		|| 	(this.writer != null) 	|| (this.reader != null)) {			
-			try {
-				closeResources();
-			} catch (DAOClosureException e) {
-				e.printStackTrace();
-			}
+	@Override
+	public Identity findByEmail(String email) throws DAOSearchException {
+
+		long stamp = lock.readLock();
+		try {
+			Identity identity = emailIndex.findByEmail(email);
+			return (identity == null) ? null : new Identity(identity);
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * This method returns the identities with a name or an email containing the given text, in any case and accents.
+	 * The identities are found in a trigram index, the ones containing the text earlier come first.
+	 *
+	 * @param text				the searched text, e.g. 'vath' or 'gmail'
+	 * @param limit				the maximal number of returned identities
+	 * @return					the copies of the matching identities
+	 */
+	public List<Identity> findContaining(String text, int limit) {
+
+		long stamp = lock.readLock();
+		try {
+			return textIndex.findContaining(text, limit).stream().map(Identity::new).collect(Collectors.toList());
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * This method returns the identities with a name or an email similar to the given text, e.g. with a typo.
+	 * The identities are found in a trigram index, the most similar come first.
+	 *
+	 * @param text				the searched text, e.g. 'horvatova'
+	 * @param limit				the maximal number of returned identities
+	 * @return					the copies of the similar identities
+	 */
+	public List<Identity> findSimilar(String text, int limit) {
+
+		long stamp = lock.readLock();
+		try {
+			return textIndex.findSimilar(text, limit).stream().map(Identity::new).collect(Collectors.toList());
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * ChangePublisher Getter : This method returns the publisher of the saves, updates and deletions of this DAO.
+	 * Listeners registered there receive every change, after it was written to the file, and a notice of a reset.
+	 * The file is written only by this DAO, so no change is missed.
+	 *
+	 * @return					the publisher
+	 */
+	@Override
+	public IdentityChangePublisher getChangePublisher() {
+		return publisher;
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.epita.iam.services.IdentityDAO#isSoleWriter()
+	 */
+	@Override
+	public boolean isSoleWriter() {
+		return true;
+	}
+
+	/**
+	 * MaxBatchDelay Getter : This method returns the time, which a group of changes waits for other changes to join it.
+	 *
+	 * @return					the delay in milliseconds
+	 */
+	public long getMaxBatchDelay() {
+		return maxBatchDelayMillis;
+	}
+
+	/**
+	 * MaxBatchDelay Setter : This method sets the time, which a group of changes waits for other changes to join it.
+	 * With 0 (the default), a group is written at once and it holds only the changes queued during the previous write.
+	 *
+	 * @param maxBatchDelayMillis	the delay in milliseconds, not negative
+	 */
+	public void setMaxBatchDelay(long maxBatchDelayMillis) {
+		if (maxBatchDelayMillis < 0) {
+			throw new IllegalArgumentException("The batch delay cannot be negative : " + maxBatchDelayMillis);
 		}
-		
-		try {		
-			if (!file.exists()) {				
-				file.getParentFile().mkdirs();
+		this.maxBatchDelayMillis = maxBatchDelayMillis;
+	}
+
+	/**
+	 * This method returns the stored identities meeting the criteria:
+	 * the identity with the same UID, found in the UID index, followed by the identities
+	 * with a name starting with the name in the criteria, found in the name index and sorted by the name.
+	 *
+	 * @param criteria			the criteria to be met, null for all the identities
+	 * @return					the lazy stream of the stored (not copied) identities
+	 */
+	private Stream<Identity> matching(Identity criteria) {
+
+		if (criteria == null) {
+			return store.values().stream();
+		}
+
+		String uid = criteria.getUid();
+		Identity byUid = (uid == null) ? null : store.get(uid);
+		Stream<Identity> uidMatch = (byUid == null) ? Stream.empty() : Stream.of(byUid);
+
+		if (criteria.getDisplayName() == null) {
+			return uidMatch;
+		}
+
+		Stream<Identity> nameMatches = nameIndex.findByPrefix(criteria.getDisplayName()).stream()
+				.filter(identity -> byUid == null || !byUid.getUid().equals(identity.getUid()));
+
+		return Stream.concat(uidMatch, nameMatches);
+	}
+
+	/**
+	 * This method creates a new file, if doesn't exist.
+	 *
+	 * @param file				the file to be prepared
+	 */
+	private static void initFile(File file) {
+
+		try {
+			if (!file.exists()) {
+				file.getAbsoluteFile().getParentFile().mkdirs();
 				file.createNewFile();
-			}			
-			writer = new FileWriter(file,true);
-			reader = new FileReader(file);			
-		} catch (IOException e) {			
+			}
+		} catch (IOException e) {
 			System.out.println("Error during a preparation of a file!");
 			System.out.println(DETAILS + e.getMessage());
 		}
-		
-		if (writer == null || reader == null) {				
-			System.out.println("Error during a preparation of a writer and a reader for a file!");
-			return;			
-		} else {			
-			try {				
-				this.printer = new PrintWriter(writer);
-				this.scanner = new Scanner(file);				
-			} catch (FileNotFoundException e) {				
-				System.out.println("Error during a preparation of a printer and a scanner for a file!");
-				System.out.println(DETAILS + e.getMessage());
-			}
-		}
 	}
-	
+
 	/**
-	 * This method updates a file after an addition, update or deletion of an identity.
-	 * 
-	 * @param results			the updated list of identities to be saved 
-	 * @throws DAOInitializationException 
+	 * This method reads all identities in the file into the in-memory store.
 	 */
-	private void updateFile(ArrayList<Identity> results) {
-		
-		File tmpFile = new File("/temp/tests/identities.tmp.txt");		
-		initFile(tmpFile); // a separate method for a initialization of a file is used
+	private void loadFile() {
 
-		for (Identity tobeSaved : results) {			
-			printIdentity(tobeSaved); // a separate method for a print of an identity is used
+		try {
+			storage.load(store);
+		} catch (IOException e) {
+			System.out.println("Error during a load of a file!");
+			System.out.println(DETAILS + e.getMessage());
 		}
-		
-		if ((this.reader != null) || (this.writer != null)) {			
-			try {
-				closeResources();
-			} catch (DAOClosureException e) {
-				e.printStackTrace();
+	}
+
+	/**
+	 * This method applies changes of the same kind to the in-memory store and writes them to the file
+	 * together with the changes of the other threads waiting at the same time (a group commit).
+	 *
+	 * The changes are queued. If no group is being written, the caller becomes the leader: it takes all the queued
+	 * changes, applies them under the write lock, writes them with a single write of the storage and releases
+	 * the other callers of the group. Otherwise the caller waits, until its changes were written by a leader.
+	 * Either way, the caller returns only when its changes are durable.
+	 *
+	 * @param type				the kind of the changes
+	 * @param identities		the identities to save, update or delete
+	 * @return					the result for every identity
+	 * @throws IOException		if the file cannot be written
+	 */
+	private BatchResult applyAll(IdentityChange.Type type, Collection<Identity> identities) throws IOException {
+
+		CommitRequest request = new CommitRequest(type, identities);
+		boolean interrupted = false;
+
+		commitLock.lock();
+		try {
+			pendingCommits.add(request);
+			while (!request.done) {
+				if (!committing) {
+					committing = true;
+					try {
+						leadGroup(); //a separate method for a commit of a group is used
+					} finally {
+						committing = false;
+						committed.signalAll();
+					}
+				} else {
+					try {
+						committed.await();
+					} catch (InterruptedException e) {
+						// the change is already queued, so the caller still waits for its result
+						interrupted = true;
+					}
+				}
+			}
+		} finally {
+			commitLock.unlock();
+			if (interrupted) {
+				Thread.currentThread().interrupt();
 			}
 		}
-			
-		File oldFile = new File(IDENTITY_FILE_PATH);	
-			
-		try {					
-			oldFile.delete();
-			Files.move(tmpFile.toPath(), oldFile.toPath(), StandardCopyOption.REPLACE_EXISTING);		
-			oldFile = new File(IDENTITY_FILE_PATH);
-			initFile(oldFile);			
-		} catch (IOException e) {			
-			System.out.println("Error during an update of a file!");
-			System.out.println(DETAILS + e.getMessage());
+
+		if (request.error instanceof IOException) {
+			throw (IOException) request.error;
+		} else if (request.error != null) {
+			throw (RuntimeException) request.error;
 		}
+
+		return request.result;
 	}
-	
+
 	/**
-	 * This is a method for printing an identity.
-	 * It records the identity in the file using the format:
-	 * 
-	 * <pre>
-	 * --- Identity ---
-	 * uid
-	 * displayName
-	 * email
-	 * --- Identity ---
-	 * </pre>
-	 * 
-	 * @param identity			the identity to record
+	 * This method waits for the maximal batch delay, takes all the queued changes and commits them.
+	 * It is called by the leader holding the commit lock, which is released while the group is written.
 	 */
-	private void printIdentity(Identity identity) {
-		
-		this.printer.println("--- Identity ---");		
-		this.printer.println(identity.getUid());
-		this.printer.println(identity.getDisplayName());
-		this.printer.println(identity.getEmail());		
-		this.printer.println("--- Identity ---");
-		this.printer.flush();
+	private void leadGroup() {
+
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxBatchDelayMillis);
+		long remaining = deadline - System.nanoTime();
+		while (remaining > 0) {
+			try {
+				// only the leader signals the condition, so the wait lasts the whole delay
+				committed.awaitNanos(remaining);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+			remaining = deadline - System.nanoTime();
+		}
+
+		List<CommitRequest> group = new ArrayList<>(pendingCommits);
+		pendingCommits.clear();
+
+		commitLock.unlock();
+		try {
+			commitGroup(group);
+		} finally {
+			commitLock.lock();
+			for (CommitRequest request : group) {
+				request.done = true;
+			}
+		}
 	}
-	
+
 	/**
-	 * This method reads an identity from the file with identities.
-	 * 
-	 * @param scanner			the scanner used for reading the file
-	 * @return					the read identity
+	 * This method applies the changes of all the requests of a group to the in-memory store and then writes them all
+	 * to the file at once. If the file cannot be written, the store is returned to its previous state
+	 * and every request of the group fails. The written changes are kept and reported as done,
+	 * even if the change log cannot be written (see IdentityChangePublisher). The whole operation holds the write lock.
+	 *
+	 * @param group				the requests to commit, in the order they were queued
 	 */
-	private Identity scanIdentity(Scanner scanner) {
-		
-		scanner.nextLine();		
-		String uid = scanner.nextLine();
-		String displayName = scanner.nextLine();
-		String mail = scanner.nextLine();		
-		scanner.nextLine();
-		
-		return new Identity(uid, displayName, mail);		
+	private void commitGroup(List<CommitRequest> group) {
+
+		List<IdentityChange> changes = new ArrayList<>();
+		Deque<Runnable> undo = new ArrayDeque<>();
+
+		long stamp = lock.writeLock();
+		try {
+			for (CommitRequest request : group) {
+				request.result = new BatchResult();
+				for (Identity identity : request.identities) {
+					BatchResult.Status status = apply(request.type, identity, changes, undo); //a separate method for a change of the store is used
+
+					if (status == BatchResult.Status.REJECTED && emailIndex.isTakenByOther(identity)) {
+						request.result.add(identity, status, "an identity with this email already exists");
+					} else if (status == BatchResult.Status.REJECTED) {
+						request.result.add(identity, status, "an identity with this UID already exists");
+					} else if (status == BatchResult.Status.NOT_FOUND) {
+						request.result.add(identity, status, "there is no identity with this UID");
+					} else {
+						request.result.add(identity, status, null);
+					}
+				}
+			}
+
+			if (!changes.isEmpty()) {
+				storage.write(changes, store);
+				// still under the write lock, so the changes are published in the order they were applied
+				publisher.publish(changes);
+			}
+		} catch (IOException | RuntimeException e) {
+			while (!undo.isEmpty()) {
+				undo.pop().run();
+			}
+			for (CommitRequest request : group) {
+				request.result = null;
+				request.error = e;
+			}
+		} finally {
+			lock.unlockWrite(stamp);
+		}
 	}
-	
+
 	/**
-	 * This method reads all identities in the file.
-	 * 
-	 * @return					the list of all identities
+	 * This method applies a single change to the in-memory store.
+	 *
+	 * @param type				the kind of the change
+	 * @param identity			the identity to save, update or delete
+	 * @param changes			the list, where the applied change is added
+	 * @param undo				the stack, where an action reverting the change is pushed
+	 * @return					the result for the identity
 	 */
-	private ArrayList<Identity> scanAllIdentities() {
-		
-		ArrayList<Identity> results = new ArrayList<>();		
-		while (scanner.hasNext()) {			
-			results.add(scanIdentity(scanner));
+	private BatchResult.Status apply(IdentityChange.Type type, Identity identity, List<IdentityChange> changes, Deque<Runnable> undo) {
+
+		switch (type) {
+		case SAVE:
+			if (store.contains(identity.getUid()) || emailIndex.isTakenByOther(identity)) {
+				return BatchResult.Status.REJECTED;
+			}
+			Identity saved = new Identity(identity);
+			store.put(saved);
+			changes.add(new IdentityChange(type, saved));
+			undo.push(() -> store.remove(saved.getUid()));
+			return BatchResult.Status.SUCCESS;
+
+		case UPDATE:
+			if (!store.contains(identity.getUid())) {
+				return BatchResult.Status.NOT_FOUND;
+			}
+			if (emailIndex.isTakenByOther(identity)) {
+				return BatchResult.Status.REJECTED;
+			}
+			Identity updated = new Identity(identity);
+			Identity previous = store.put(updated);
+			changes.add(new IdentityChange(type, updated));
+			undo.push(() -> store.put(previous));
+			return BatchResult.Status.SUCCESS;
+
+		default:
+			Identity removed = store.remove(identity.getUid());
+			if (removed == null) {
+				return BatchResult.Status.NOT_FOUND;
+			}
+			changes.add(new IdentityChange(type, removed));
+			undo.push(() -> store.put(removed));
+			return BatchResult.Status.SUCCESS;
 		}
-		scanReset(); //a separate method for a reset of a scanner is used
-		
-		return results;
 	}
-	
+
 	/**
-	 * This method resets a scanner to the beginning of the file.
+	 * This class holds the changes of a single caller waiting for a group commit and their result.
+	 * Its state is guarded by the commit lock.
 	 */
-	private void scanReset() {
-		
-		try {			
-			this.scanner.close();
-			this.scanner = new Scanner(new File(IDENTITY_FILE_PATH));			
-		} catch (FileNotFoundException e) {			
-			System.out.println("Error during a reset of a scanner!");	
-			System.out.println(DETAILS + e.getMessage());
+	private static class CommitRequest {
+
+		private final IdentityChange.Type type;
+		private final Collection<Identity> identities;
+		private BatchResult result;
+		private Exception error;
+		private boolean done;
+
+		/**
+		 * This is a Constructor for a CommitRequest class.
+		 *
+		 * @param type				the kind of the changes
+		 * @param identities		the identities to save, update or delete
+		 */
+		CommitRequest(IdentityChange.Type type, Collection<Identity> identities) {
+
+			this.type = type;
+			this.identities = identities;
 		}
 	}
 }
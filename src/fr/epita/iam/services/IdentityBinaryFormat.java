@@ -0,0 +1,173 @@
+package fr.epita.iam.services;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+
+import fr.epita.iam.datamodel.Identity;
+
+/**
+ * This class reads and writes identities in a compact binary format.
+ * The file starts with a header and continues with the records of all identities:
+ *
+ * <pre>
+ * header : magic 'IAMI' (4 bytes) | version (int) | record count (int)
+ * record : uid | displayName | email
+ * field  : length in bytes (int, -1 for null) | UTF-8 bytes
+ * </pre>
+ *
+ * The file is read at once into a buffer, so no line has to be searched for and no regular expression
+ * is used, unlike in the text format. The buffer is on the heap, not mapped, so the file is not held open
+ * after the load and can be replaced by the next rewrite on every system.
+ *
+ * @author Lenka Horvathova
+ */
+public class IdentityBinaryFormat {
+
+	/** the first bytes of every binary identity file */
+	public static final int MAGIC = 0x49414D49; // 'IAMI'
+
+	/** the version of the format written by this class */
+	public static final int VERSION = 1;
+
+	private static final int NULL_LENGTH = -1;
+
+	private IdentityBinaryFormat() {
+		// only static methods
+	}
+
+	/**
+	 * This method reads all the records of the file into the given store.
+	 * The store is cleared first. An empty file is read as a file without identities.
+	 *
+	 * @param file				the file to read
+	 * @param store				the store to be filled
+	 * @return					the number of records in the file
+	 * @throws IOException		if the file cannot be read or is damaged
+	 */
+	public static int load(File file, IdentityStore store) throws IOException {
+
+		store.clear();
+
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size == 0) {
+				return 0;
+			}
+			if (size > Integer.MAX_VALUE) {
+				throw new IOException("The file " + file.getAbsolutePath() + " is too big to be read.");
+			}
+
+			ByteBuffer buffer = ByteBuffer.allocate((int) size);
+			while (buffer.hasRemaining()) {
+				if (channel.read(buffer) < 0) {
+					throw new IOException("The file " + file.getAbsolutePath() + " was cut while being read.");
+				}
+			}
+			buffer.flip();
+			if (buffer.getInt() != MAGIC) {
+				throw new IOException("The file " + file.getAbsolutePath() + " is not a binary identity file.");
+			}
+			int version = buffer.getInt();
+			if (version != VERSION) {
+				throw new IOException("Unsupported version of a binary identity file : " + version);
+			}
+
+			int count = buffer.getInt();
+			byte[] bytes = new byte[256];
+			for (int i = 0; i < count; i++) {
+				String uid = readField(buffer, bytes);
+				String displayName = readField(buffer, bytes);
+				String email = readField(buffer, bytes);
+				store.put(new Identity(uid, displayName, email));
+			}
+
+			return count;
+		} catch (BufferUnderflowException e) {
+			throw new IOException("The file " + file.getAbsolutePath() + " ends in the middle of an identity.", e);
+		}
+	}
+
+	/**
+	 * This method writes the given identities to the file, replacing its content.
+	 * The identities are written to a temporary file first, which is forced to the disk and then replaces the file.
+	 *
+	 * @param file				the file to write
+	 * @param identities		the identities to be written
+	 * @throws IOException		if the file cannot be written
+	 */
+	public static void rewrite(File file, Collection<Identity> identities) throws IOException {
+
+		File tmpFile = IdentityTextFormat.tmpFile(file);
+
+		try (FileOutputStream tmpOutput = new FileOutputStream(tmpFile);
+				DataOutputStream output = new DataOutputStream(new BufferedOutputStream(tmpOutput))) {
+			output.writeInt(MAGIC);
+			output.writeInt(VERSION);
+			output.writeInt(identities.size());
+
+			for (Identity identity : identities) {
+				writeField(output, identity.getUid());
+				writeField(output, identity.getDisplayName());
+				writeField(output, identity.getEmail());
+			}
+			output.flush();
+			tmpOutput.getChannel().force(false);
+		}
+
+		Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * This method reads a single field.
+	 *
+	 * @param buffer			the buffer positioned at the field
+	 * @param bytes				a reusable array, used if the field fits in it
+	 * @return					the read field
+	 * @throws IOException		if the length of the field is invalid
+	 */
+	private static String readField(ByteBuffer buffer, byte[] bytes) throws IOException {
+
+		int length = buffer.getInt();
+		if (length == NULL_LENGTH) {
+			return null;
+		}
+		if (length < 0 || length > buffer.remaining()) {
+			throw new IOException("Invalid length of a field : " + length);
+		}
+
+		byte[] target = (length <= bytes.length) ? bytes : new byte[length];
+		buffer.get(target, 0, length);
+
+		return new String(target, 0, length, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * This method writes a single field.
+	 *
+	 * @param output			the stream used for writing the file
+	 * @param value				the field to write
+	 * @throws IOException		if the file cannot be written
+	 */
+	private static void writeField(DataOutputStream output, String value) throws IOException {
+
+		if (value == null) {
+			output.writeInt(NULL_LENGTH);
+			return;
+		}
+
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		output.writeInt(bytes.length);
+		output.write(bytes);
+	}
+}
@@ -0,0 +1,88 @@
+package fr.epita.iam.services;
+
+import fr.epita.iam.datamodel.Identity;
+
+/**
+ * This class represents a single change of identities: a save, an update or a deletion of an identity.
+ *
+ * @author Lenka Horvathova
+ */
+public class IdentityChange {
+
+	/**
+	 * This enumeration lists the kinds of changes.
+	 */
+	public enum Type {
+		/** a new identity was saved */
+		SAVE,
+		/** an existing identity was updated */
+		UPDATE,
+		/** an existing identity was deleted */
+		DELETE
+	}
+
+	private final long sequence;
+	private final Type type;
+	private final Identity identity;
+
+	/**
+	 * This is a Constructor for an IdentityChange class, which was not published yet.
+	 *
+	 * @param type				the kind of the change
+	 * @param identity			the changed identity, for a deletion only its UID is relevant
+	 */
+	public IdentityChange(Type type, Identity identity) {
+
+		this(0, type, identity);
+	}
+
+	/**
+	 * This is a Constructor for an IdentityChange class.
+	 *
+	 * @param sequence			the number of the change given by an IdentityChangePublisher, 0 if it was not published
+	 * @param type				the kind of the change
+	 * @param identity			the changed identity, for a deletion only its UID is relevant
+	 */
+	public IdentityChange(long sequence, Type type, Identity identity) {
+
+		this.sequence = sequence;
+		this.type = type;
+		this.identity = identity;
+	}
+
+	/**
+	 * Sequence Getter : This method returns the number of the change. The published changes are numbered 1, 2, 3...
+	 * in the order they were made.
+	 *
+	 * @return					the sequence number or 0, if the change was not published
+	 */
+	public long getSequence() {
+		return sequence;
+	}
+
+	/**
+	 * Type Getter : This method returns the kind of the change.
+	 *
+	 * @return					the type
+	 */
+	public Type getType() {
+		return type;
+	}
+
+	/**
+	 * Identity Getter : This method returns the changed identity.
+	 *
+	 * @return					the identity
+	 */
+	public Identity getIdentity() {
+		return identity;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "#" + sequence + " " + type + " " + identity;
+	}
+}
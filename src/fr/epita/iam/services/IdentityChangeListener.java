@@ -0,0 +1,30 @@
+package fr.epita.iam.services;
+
+import java.util.List;
+
+/**
+ * This is an Interface for a receiver of the changes of identities published by a DAO,
+ * e.g. a cache, an index or a replica, which applies the changes instead of reading all the identities again.
+ *
+ * @author Lenka Horvathova
+ */
+public interface IdentityChangeListener {
+
+	/**
+	 * This method receives the changes made together, after they were written.
+	 * The changes come in the order of their sequence numbers, one call at a time.
+	 * The method should return quickly, it delays the DAO.
+	 *
+	 * @param changes				the unmodifiable list of the changes
+	 */
+	public void changed(List<IdentityChange> changes);
+
+	/**
+	 * This method receives a notice, that the whole content of the DAO was replaced without single changes,
+	 * e.g. by a reset to the original version. A listener keeping a state of the DAO has to read it again.
+	 * By default, the notice is ignored.
+	 */
+	public default void reset() {
+		// nothing to do for a listener, which doesn't keep a state of the DAO
+	}
+}
@@ -0,0 +1,391 @@
+package fr.epita.iam.services;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import fr.epita.iam.datamodel.Identity;
+
+/**
+ * This class keeps the published changes of identities in a file, so they can be replayed later,
+ * e.g. by a replica, which was stopped for a while.
+ * Every change is recorded on a single line using the format:
+ *
+ * <pre>
+ * sequence TAB type TAB uid TAB displayName TAB email
+ * </pre>
+ *
+ * A tab, a new line and a backslash in a value are written with a backslash, a missing value is written as \N.
+ * A reset of the whole content of a DAO is recorded as a line of the type RESET without any values,
+ * it is replayed as a call of IdentityChangeListener#reset().
+ * The changes are only appended and every group of changes is forced to the disk before it is passed on.
+ * A group, which cannot be written, is cut off, so the log can be written again.
+ * A line cut by a crash is removed, when the log is opened again.
+ *
+ * @author Lenka Horvathova
+ */
+public class IdentityChangeLog implements Closeable {
+
+	private static final String DETAILS = "Details: ";
+	private static final char SEPARATOR = '\t';
+	private static final String NULL = "\\N";
+	private static final String RESET = "RESET";
+	private static final int REPLAY_CHUNK = 1000;
+
+	private final File file;
+	private final FileOutputStream output;
+	private long lastSequence;
+
+	/**
+	 * This is a Constructor for an IdentityChangeLog class.
+	 * The file is created, if it doesn't exist, otherwise the new changes are appended to it.
+	 *
+	 * @param filePath				a path to the file of the log
+	 * @throws IOException			if the file cannot be opened or is damaged
+	 */
+	public IdentityChangeLog(String filePath) throws IOException {
+
+		this.file = new File(filePath);
+		file.getAbsoluteFile().getParentFile().mkdirs();
+		removeCutLine(); //a separate method for a repair of the end of the file is used
+		this.lastSequence = readLastSequence(); //a separate method for a read of the last line is used
+
+		this.output = new FileOutputStream(file, true);
+	}
+
+	/**
+	 * File Getter : This method returns the file of the log.
+	 *
+	 * @return						the file
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * LastSequence Getter : This method returns the sequence number of the last change in the log.
+	 *
+	 * @return						the sequence number or 0, if the log is empty
+	 */
+	public synchronized long getLastSequence() {
+		return lastSequence;
+	}
+
+	/**
+	 * This method appends numbered changes to the log and forces them to the disk.
+	 * If they cannot be written, the written part is cut off and the last sequence number stays the same.
+	 *
+	 * @param changes				the changes, numbered after the last change in the log
+	 * @throws IOException			if the changes cannot be written
+	 */
+	public synchronized void append(List<IdentityChange> changes) throws IOException {
+
+		long last = lastSequence;
+		StringBuilder lines = new StringBuilder();
+		for (IdentityChange change : changes) {
+			checkOrder(change.getSequence(), last); //a separate method for a check of the numbering is used
+			last = change.getSequence();
+			Identity identity = change.getIdentity();
+			appendLine(lines, last, change.getType().name(), identity.getUid(), identity.getDisplayName(), identity.getEmail());
+		}
+
+		write(lines); //a separate method for a durable write is used
+		lastSequence = last;
+	}
+
+	/**
+	 * This method appends a numbered reset of the whole content of a DAO to the log and forces it to the disk.
+	 * A listener replaying the log reads the DAO again at this point, the changes before it are not enough.
+	 *
+	 * @param sequence				the number of the reset, after the last change in the log
+	 * @throws IOException			if the reset cannot be written
+	 */
+	public synchronized void appendReset(long sequence) throws IOException {
+
+		checkOrder(sequence, lastSequence);
+		StringBuilder line = new StringBuilder();
+		appendLine(line, sequence, RESET, null, null, null);
+
+		write(line);
+		lastSequence = sequence;
+	}
+
+	/**
+	 * This method checks, that a change is numbered after the last change in the log.
+	 *
+	 * @param sequence				the number of the change
+	 * @param last					the number of the previous change
+	 * @throws IOException			if the change is not after the previous one
+	 */
+	private static void checkOrder(long sequence, long last) throws IOException {
+
+		if (sequence <= last) {
+			throw new IOException("The change #" + sequence + " is not after the last change #" + last + ".");
+		}
+	}
+
+	/**
+	 * This method writes the lines to the end of the file directly, without a buffer, and forces them to the disk.
+	 * If they cannot be written, the written part is cut off, so nothing of them is left to be written later.
+	 *
+	 * @param lines					the lines, each ending with a new line
+	 * @throws IOException			if the lines cannot be written
+	 */
+	private void write(CharSequence lines) throws IOException {
+
+		long length = output.getChannel().size();
+		try {
+			output.write(lines.toString().getBytes(StandardCharsets.UTF_8));
+			output.getChannel().force(false);
+		} catch (IOException e) {
+			try {
+				output.getChannel().truncate(length);
+			} catch (IOException truncateError) {
+				// the cut line is removed, when the log is opened again
+				e.addSuppressed(truncateError);
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * This method appends a change on a single line.
+	 *
+	 * @param lines					the lines to be written
+	 * @param sequence				the number of the change
+	 * @param type					the kind of the change
+	 * @param uid					the UID, may be null
+	 * @param displayName			the display name, may be null
+	 * @param email					the email, may be null
+	 */
+	private static void appendLine(StringBuilder lines, long sequence, String type, String uid, String displayName, String email) {
+
+		lines.append(sequence).append(SEPARATOR).append(type).append(SEPARATOR)
+			 .append(escape(uid)).append(SEPARATOR)
+			 .append(escape(displayName)).append(SEPARATOR)
+			 .append(escape(email)).append('\n');
+	}
+
+	/**
+	 * This method reads the changes after the given one and passes them to a listener, in chunks, in their order.
+	 * A recorded reset ends the current chunk and is passed as a call of IdentityChangeListener#reset().
+	 *
+	 * @param afterSequence			the sequence number of the last change already known to the listener, 0 for all
+	 * @param listener				the listener receiving the changes
+	 * @return						the number of the replayed changes
+	 * @throws IOException			if the log cannot be read or is damaged
+	 */
+	public long replay(long afterSequence, IdentityChangeListener listener) throws IOException {
+
+		long replayed = 0;
+		List<IdentityChange> chunk = new ArrayList<>(REPLAY_CHUNK);
+
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+			String line = reader.readLine();
+			while (line != null) {
+				if (isReset(line)) {
+					if (sequenceOf(line) > afterSequence) {
+						// the changes before the reset are passed first
+						if (!chunk.isEmpty()) {
+							listener.changed(Collections.unmodifiableList(new ArrayList<>(chunk)));
+							replayed += chunk.size();
+							chunk.clear();
+						}
+						listener.reset();
+					}
+				} else if (!line.isEmpty()) {
+					IdentityChange change = parse(line); //a separate method for a parsing of a change is used
+					if (change.getSequence() > afterSequence) {
+						chunk.add(change);
+					}
+				}
+				if (chunk.size() == REPLAY_CHUNK) {
+					listener.changed(Collections.unmodifiableList(new ArrayList<>(chunk)));
+					replayed += chunk.size();
+					chunk.clear();
+				}
+				line = reader.readLine();
+			}
+		}
+		if (!chunk.isEmpty()) {
+			listener.changed(Collections.unmodifiableList(chunk));
+			replayed += chunk.size();
+		}
+
+		return replayed;
+	}
+
+	/**
+	 * This method closes the file of the log.
+	 *
+	 * @see java.io.Closeable#close()
+	 */
+	@Override
+	public synchronized void close() {
+
+		try {
+			output.close();
+		} catch (IOException e) {
+			System.out.println("Error during a closure of a change log!");
+			System.out.println(DETAILS + e.getMessage());
+		}
+	}
+
+	/**
+	 * This method reads the sequence number of the last line of the file.
+	 *
+	 * @return						the sequence number or 0, if the log is empty
+	 * @throws IOException			if the log cannot be read or is damaged
+	 */
+	private long readLastSequence() throws IOException {
+
+		String last = null;
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+			String line = reader.readLine();
+			while (line != null) {
+				if (!line.isEmpty()) {
+					last = line;
+				}
+				line = reader.readLine();
+			}
+		}
+
+		return (last == null) ? 0 : sequenceOf(last);
+	}
+
+	/**
+	 * This method tells, if a line records a reset.
+	 *
+	 * @param line					the line
+	 * @return						true, if the line is a reset;
+	 * 								false, otherwise
+	 */
+	private static boolean isReset(String line) {
+
+		String[] fields = line.split(String.valueOf(SEPARATOR), -1);
+		return fields.length == 5 && RESET.equals(fields[1]);
+	}
+
+	/**
+	 * This method reads the sequence number of a line.
+	 *
+	 * @param line					the line
+	 * @return						the sequence number
+	 * @throws IOException			if the number is damaged
+	 */
+	private static long sequenceOf(String line) throws IOException {
+
+		try {
+			return Long.parseLong(line.substring(0, line.indexOf(SEPARATOR)));
+		} catch (IndexOutOfBoundsException | NumberFormatException e) {
+			throw new IOException("A damaged change in the change log : " + line, e);
+		}
+	}
+
+	/**
+	 * This method removes a line without its end at the end of the file, left by a write cut by a crash.
+	 *
+	 * @throws IOException			if the file cannot be repaired
+	 */
+	private void removeCutLine() throws IOException {
+
+		try (RandomAccessFile content = new RandomAccessFile(file, "rw")) {
+			long end = content.length();
+			while (end > 0) {
+				content.seek(end - 1);
+				if (content.read() == '\n') {
+					break;
+				}
+				end--;
+			}
+			content.setLength(end);
+		}
+	}
+
+	/**
+	 * This method reads a change from a line of the log.
+	 *
+	 * @param line					the line
+	 * @return						the change
+	 * @throws IOException			if the line is damaged
+	 */
+	private static IdentityChange parse(String line) throws IOException {
+
+		String[] fields = line.split(String.valueOf(SEPARATOR), -1);
+		if (fields.length != 5) {
+			throw new IOException("Unexpected line in the change log : " + line);
+		}
+
+		try {
+			return new IdentityChange(Long.parseLong(fields[0]), IdentityChange.Type.valueOf(fields[1]),
+					new Identity(unescape(fields[2]), unescape(fields[3]), unescape(fields[4])));
+		} catch (IllegalArgumentException e) {
+			throw new IOException("A damaged change in the change log : " + line, e);
+		}
+	}
+
+	/**
+	 * This method writes a value with a backslash before the special characters.
+	 *
+	 * @param value					the value, may be null
+	 * @return						the escaped value
+	 */
+	private static String escape(String value) {
+
+		if (value == null) {
+			return NULL;
+		}
+
+		StringBuilder escaped = new StringBuilder(value.length());
+		for (char character : value.toCharArray()) {
+			if (character == '\\') {
+				escaped.append("\\\\");
+			} else if (character == '\t') {
+				escaped.append("\\t");
+			} else if (character == '\n') {
+				escaped.append("\\n");
+			} else if (character == '\r') {
+				escaped.append("\\r");
+			} else {
+				escaped.append(character);
+			}
+		}
+
+		return escaped.toString();
+	}
+
+	/**
+	 * This method reads a value written by the escape method.
+	 *
+	 * @param value					the escaped value
+	 * @return						the value, may be null
+	 */
+	private static String unescape(String value) {
+
+		if (NULL.equals(value)) {
+			return null;
+		}
+
+		StringBuilder unescaped = new StringBuilder(value.length());
+		for (int i = 0; i < value.length(); i++) {
+			char character = value.charAt(i);
+			if (character == '\\' && i + 1 < value.length()) {
+				char next = value.charAt(++i);
+				unescaped.append((next == 't') ? '\t' : (next == 'n') ? '\n' : (next == 'r') ? '\r' : next);
+			} else {
+				unescaped.append(character);
+			}
+		}
+
+		return unescaped.toString();
+	}
+}
@@ -0,0 +1,160 @@
+package fr.epita.iam.services;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import fr.epita.iam.datamodel.Identity;
+
+/**
+ * This class numbers the changes made by a DAO and passes them to the registered listeners.
+ *
+ * Every published change gets the next sequence number, so the listeners see the changes in the order
+ * they were made and can tell, which changes they have already applied. If a change log is set, the changes
+ * and the resets are written to it first, so a listener, which missed some changes, can replay them from the log.
+ * The listeners receive copies of the identities, so they cannot change the identities of the DAO.
+ *
+ * The changes are published after they were written by the DAO, so a failure of the log does not undo them.
+ * The log is only marked as out of sync and the next write of the log starts with a reset,
+ * which tells a listener replaying the log to read the DAO again.
+ *
+ * @author Lenka Horvathova
+ */
+public class IdentityChangePublisher {
+
+	private static final String DETAILS = "Details: ";
+
+	private final List<IdentityChangeListener> listeners = new CopyOnWriteArrayList<>();
+	private IdentityChangeLog changeLog;
+	private boolean changeLogInSync = true;
+	private long lastSequence;
+
+	/**
+	 * This method registers a listener, which receives the changes published from now on.
+	 *
+	 * @param listener				the listener
+	 */
+	public void addListener(IdentityChangeListener listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * This method stops passing the changes to a listener.
+	 *
+	 * @param listener				the listener
+	 */
+	public void removeListener(IdentityChangeListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * ChangeLog Setter : This method sets the log, which the changes are written to before they are passed
+	 * to the listeners. The numbering continues after the last change in the log.
+	 *
+	 * @param changeLog				the change log, null for none
+	 */
+	public synchronized void setChangeLog(IdentityChangeLog changeLog) {
+
+		this.changeLog = changeLog;
+		this.changeLogInSync = true;
+		if (changeLog != null) {
+			lastSequence = Math.max(lastSequence, changeLog.getLastSequence());
+		}
+	}
+
+	/**
+	 * LastSequence Getter : This method returns the sequence number of the last published change.
+	 *
+	 * @return						the sequence number or 0, if nothing was published
+	 */
+	public synchronized long getLastSequence() {
+		return lastSequence;
+	}
+
+	/**
+	 * ChangeLogInSync Getter : This method tells, if the change log holds all the published changes.
+	 *
+	 * @return						true, if every change was written to the log or no log is set;
+	 * 								false, if a write of the log failed and no reset was written since
+	 */
+	public synchronized boolean isChangeLogInSync() {
+		return changeLogInSync;
+	}
+
+	/**
+	 * This method numbers the changes and passes them to the change log and to the listeners.
+	 * The changes are already written, so a failing log or listener is only reported, it does not stop the others.
+	 *
+	 * @param changes				the written changes, in the order they were made
+	 */
+	public synchronized void publish(List<IdentityChange> changes) {
+
+		if (changes.isEmpty() || (changeLog == null && listeners.isEmpty())) {
+			// nobody receives the changes, but the numbering goes on, so a log set later does not repeat a number
+			lastSequence += changes.size();
+			return;
+		}
+
+		// the missed changes cannot be replayed, so the log has to tell its readers to start again
+		long resetSequence = (changeLog != null && !changeLogInSync) ? ++lastSequence : 0;
+
+		List<IdentityChange> numbered = new ArrayList<>(changes.size());
+		for (IdentityChange change : changes) {
+			numbered.add(new IdentityChange(++lastSequence, change.getType(), new Identity(change.getIdentity())));
+		}
+		numbered = Collections.unmodifiableList(numbered);
+
+		if (changeLog != null) {
+			try {
+				if (resetSequence > 0) {
+					changeLog.appendReset(resetSequence);
+				}
+				changeLog.append(numbered);
+				changeLogInSync = true;
+			} catch (IOException e) {
+				changeLogInSync = false;
+				System.out.println("Error during a write of a change log!");
+				System.out.println(DETAILS + e.getMessage());
+			}
+		}
+
+		for (IdentityChangeListener listener : listeners) {
+			try {
+				listener.changed(numbered);
+			} catch (RuntimeException e) {
+				System.out.println("Error during a notification of changes!");
+				System.out.println(DETAILS + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * This method tells the change log and the listeners, that the whole content of the DAO was replaced,
+	 * see IdentityChangeListener#reset(). The reset gets the next sequence number.
+	 */
+	public synchronized void publishReset() {
+
+		long sequence = ++lastSequence;
+		if (changeLog != null) {
+			try {
+				changeLog.appendReset(sequence);
+				changeLogInSync = true;
+			} catch (IOException e) {
+				changeLogInSync = false;
+				System.out.println("Error during a write of a change log!");
+				System.out.println(DETAILS + e.getMessage());
+			}
+		}
+
+		for (IdentityChangeListener listener : listeners) {
+			try {
+				listener.reset();
+			} catch (RuntimeException e) {
+				System.out.println("Error during a notification of a reset!");
+				System.out.println(DETAILS + e.getMessage());
+			}
+		}
+	}
+}
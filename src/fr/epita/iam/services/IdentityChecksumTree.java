@@ -0,0 +1,226 @@
+package fr.epita.iam.services;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import fr.epita.iam.datamodel.Identity;
+
+/**
+ * This class keeps a tree of checksums (a Merkle tree) of the identities of a DAO.
+ *
+ * The UIDs are spread by their hash over a fixed number of ranges, the leaves of the tree. Every leaf keeps
+ * a checksum of each of its identities, and the checksum of a leaf is the sum of them. Every other node holds
+ * the sum of its two children, so two trees with the same root hold the same identities, and a difference
+ * is found by descending only into the nodes, which differ.
+ *
+ * The sums can be changed by a single identity, so the tree is kept up to date as an IdentityChangeListener,
+ * with the work of a path from a leaf to the root for every change, and the DAO is read only once.
+ * A saved identity without a UID cannot be placed, so the tree is marked as stale and has to be rebuilt,
+ * as well as after a reset of the DAO.
+ *
+ * @author Lenka Horvathova
+ */
+public class IdentityChecksumTree implements IdentityChangeListener {
+
+	/** the default number of levels under the root, 2^12 leaves */
+	public static final int DEFAULT_DEPTH = 12;
+
+	private final int depth;
+	private final int leafCount;
+	private final long[] nodes;
+	private final Map<String, Long>[] leaves;
+	private boolean stale;
+
+	/**
+	 * This is a Constructor for an empty IdentityChecksumTree class.
+	 *
+	 * @param depth					the number of levels under the root, between 1 and 24
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public IdentityChecksumTree(int depth) {
+
+		if (depth < 1 || depth > 24) {
+			throw new IllegalArgumentException("The depth has to be between 1 and 24 : " + depth);
+		}
+		this.depth = depth;
+		this.leafCount = 1 << depth;
+		// the nodes are stored level by level, the root at 1, the children of a node n at 2n and 2n + 1
+		this.nodes = new long[2 * leafCount];
+		this.leaves = new Map[leafCount];
+	}
+
+	/**
+	 * This method fills the tree with the identities of a full scan of a DAO, replacing its content.
+	 *
+	 * @param identities			all the identities of the DAO
+	 */
+	public synchronized void rebuild(Stream<Identity> identities) {
+
+		Arrays.fill(nodes, 0);
+		Arrays.fill(leaves, null);
+		stale = false;
+		identities.forEach(this::put);
+	}
+
+	/**
+	 * This method applies the published changes of the DAO to the tree.
+	 *
+	 * @see fr.epita.iam.services.IdentityChangeListener#changed(java.util.List)
+	 */
+	@Override
+	public synchronized void changed(List<IdentityChange> changes) {
+
+		for (IdentityChange change : changes) {
+			Identity identity = change.getIdentity();
+			if (identity.getUid() == null) {
+				stale = true;
+			} else if (change.getType() == IdentityChange.Type.DELETE) {
+				remove(identity.getUid());
+			} else {
+				put(identity);
+			}
+		}
+	}
+
+	/**
+	 * This method marks the tree as stale, the content of the DAO was replaced.
+	 *
+	 * @see fr.epita.iam.services.IdentityChangeListener#reset()
+	 */
+	@Override
+	public synchronized void reset() {
+		stale = true;
+	}
+
+	/**
+	 * Stale Getter : This method tells, if the tree missed a change and has to be rebuilt.
+	 *
+	 * @return						true, if the tree is stale;
+	 * 								false, otherwise
+	 */
+	public synchronized boolean isStale() {
+		return stale;
+	}
+
+	/**
+	 * Depth Getter : This method returns the number of levels under the root.
+	 *
+	 * @return						the depth
+	 */
+	public int getDepth() {
+		return depth;
+	}
+
+	/**
+	 * This method returns the checksum of a node.
+	 *
+	 * @param node					the node, 1 for the root, 2n and 2n + 1 for the children of n
+	 * @return						the checksum
+	 */
+	public synchronized long getChecksum(int node) {
+		return nodes[node];
+	}
+
+	/**
+	 * This method returns the checksums of the identities of a leaf.
+	 *
+	 * @param leaf					the leaf, between 0 and 2^depth - 1
+	 * @return						the copy of the checksums by the UIDs
+	 */
+	public synchronized Map<String, Long> getLeaf(int leaf) {
+		return (leaves[leaf] == null) ? new HashMap<>() : new HashMap<>(leaves[leaf]);
+	}
+
+	/**
+	 * This method adds or replaces an identity.
+	 *
+	 * @param identity				the identity
+	 */
+	private void put(Identity identity) {
+
+		int leaf = leafOf(identity.getUid());
+		if (leaves[leaf] == null) {
+			leaves[leaf] = new HashMap<>();
+		}
+		long checksum = checksum(identity);
+		Long previous = leaves[leaf].put(identity.getUid(), checksum);
+		addToPath(leaf, checksum - ((previous == null) ? 0 : previous));
+	}
+
+	/**
+	 * This method removes an identity.
+	 *
+	 * @param uid					the UID of the identity
+	 */
+	private void remove(String uid) {
+
+		int leaf = leafOf(uid);
+		Long previous = (leaves[leaf] == null) ? null : leaves[leaf].remove(uid);
+		if (previous != null) {
+			addToPath(leaf, -previous);
+		}
+	}
+
+	/**
+	 * This method adds a difference to the checksums of a leaf and of all the nodes above it.
+	 *
+	 * @param leaf					the leaf
+	 * @param difference			the difference, the sums overflow on purpose
+	 */
+	private void addToPath(int leaf, long difference) {
+
+		for (int node = leafCount + leaf; node > 0; node >>>= 1) {
+			nodes[node] += difference;
+		}
+	}
+
+	/**
+	 * This method returns the leaf of a UID.
+	 *
+	 * @param uid					the UID
+	 * @return						the leaf
+	 */
+	private int leafOf(String uid) {
+		return (int) (mix(uid.hashCode()) >>> (64 - depth));
+	}
+
+	/**
+	 * This method computes a checksum of all the attributes of an identity (FNV-1a, then mixed).
+	 *
+	 * @param identity				the identity
+	 * @return						the checksum
+	 */
+	private static long checksum(Identity identity) {
+
+		long hash = 0xcbf29ce484222325L;
+		for (String value : new String[] {identity.getUid(), identity.getDisplayName(), identity.getEmail()}) {
+			// a missing value and an empty value have different checksums
+			hash = (hash ^ ((value == null) ? 0xFFFF : 0xFFFE)) * 0x100000001b3L;
+			if (value != null) {
+				for (int i = 0; i < value.length(); i++) {
+					hash = (hash ^ value.charAt(i)) * 0x100000001b3L;
+				}
+			}
+		}
+
+		return mix(hash);
+	}
+
+	/**
+	 * This method spreads the bits of a number (the finalizer of MurmurHash3).
+	 *
+	 * @param value					the number
+	 * @return						the mixed number
+	 */
+	private static long mix(long value) {
+
+		long mixed = value;
+		mixed = (mixed ^ (mixed >>> 33)) * 0xff51afd7ed558ccdL;
+		mixed = (mixed ^ (mixed >>> 33)) * 0xc4ceb9fe1a85ec53L;
+
+		return mixed ^ (mixed >>> 33);
+	}
+}
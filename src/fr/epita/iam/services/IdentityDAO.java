@@ -1,6 +1,8 @@
 package fr.epita.iam.services;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 
 import fr.epita.iam.datamodel.Identity;
 import fr.epita.iam.exceptions.DAOClosureException;
@@ -35,6 +37,82 @@ public interface IdentityDAO {
 	 */
 	public List<Identity> search(Identity criteria) throws DAOSearchException;
 	
+	/**
+	 * This is a search method that returns the identities that met criteria one by one, as they are read,
+	 * instead of collecting them all in a list first.
+	 * The returned stream holds resources of the DAO source, so it has to be closed after use,
+	 * e.g. with a try-with-resources statement.
+	 * 
+	 * @param criteria				 		the criteria of the identity to be met
+	 * @throws DAOSearchException			the customized exception that can thrown during searching
+	 * @return								the stream of identities corresponding to the criteria
+	 */
+	public Stream<Identity> searchStream(Identity criteria) throws DAOSearchException;
+	
+	/**
+	 * This is a search method that returns one page of the identities that met criteria, sorted by the given key.
+	 * The next page is asked for with the cursor of the previous page, so every page is found
+	 * without reading the pages before it.
+	 * By default, the matching identities are walked and only the page is kept, implementations can ask the source
+	 * for the page directly.
+	 * 
+	 * @param criteria				 		the criteria of the identity to be met
+	 * @param sortKey						the attribute the identities are sorted by
+	 * @param after							the cursor of the previous page, null for the first page
+	 * @param limit							the maximal number of identities on the page, at least 1
+	 * @throws DAOSearchException			the customized exception that can thrown during searching
+	 * @return								the page of identities corresponding to the criteria
+	 */
+	public default IdentityPage searchPage(Identity criteria, IdentitySortKey sortKey, Identity after, int limit)
+			throws DAOSearchException {
+		
+		try (Stream<Identity> identities = searchStream(criteria)) {
+			return IdentityPage.top(identities.iterator(), sortKey, after, limit);
+		}
+	}
+	
+	/**
+	 * This is a search method that returns the identity with the given email.
+	 * Emails are unique, so there is at most one such identity.
+	 * By default, all the identities are walked, implementations look the email up in an index.
+	 * 
+	 * @param email							the email of the identity
+	 * @throws DAOSearchException			the customized exception that can thrown during searching
+	 * @return								the identity or null, if there is no identity with this email
+	 */
+	public default Identity findByEmail(String email) throws DAOSearchException {
+		
+		if (email == null) {
+			return null;
+		}
+		try (Stream<Identity> identities = searchStream(null)) {
+			return identities.filter(identity -> email.equals(identity.getEmail())).findFirst().orElse(null);
+		}
+	}
+	
+	/**
+	 * This method returns the publisher of the changes made by this DAO, see IdentityChangeListener.
+	 * By default, the changes are not published.
+	 * 
+	 * @return								the publisher or null, if the DAO doesn't publish its changes
+	 */
+	public default IdentityChangePublisher getChangePublisher() {
+		return null;
+	}
+	
+	/**
+	 * This method tells, if the identities are changed only through this DAO, so its change publisher sees
+	 * every change. A state of the DAO kept up to date by the published changes cannot be trusted otherwise,
+	 * e.g. for a table of a database shared with other programs.
+	 * By default, other writers are expected.
+	 * 
+	 * @return								true, if no other writer changes the identities;
+	 * 										false, otherwise
+	 */
+	public default boolean isSoleWriter() {
+		return false;
+	}
+	
 	/**
 	 * This is an update method for updating an identity, if it already exists.
 	 * 
@@ -51,6 +129,73 @@ public interface IdentityDAO {
 	 */
 	public void delete(Identity identity) throws DAODeleteException;
 	
+	/**
+	 * This is a bulk save method for adding many new identities at once.
+	 * By default, the identities are saved one by one, implementations write them together.
+	 * 
+	 * @param identities					the identities to record
+	 * @throws DAOSaveException				the customized exception that can thrown, if the whole batch cannot be saved
+	 * @return								the result for every identity, in the given order,
+	 * 										a saved identity with the UID given by the DAO, if it generates the UIDs
+	 */
+	public default BatchResult saveAll(Collection<Identity> identities) throws DAOSaveException {
+		
+		BatchResult result = new BatchResult();
+		for (Identity identity : identities) {
+			try {
+				save(identity);
+				result.add(identity, BatchResult.Status.SUCCESS, null);
+			} catch (DAOSaveException e) {
+				result.add(identity, BatchResult.Status.FAILED, e.getMessage());
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * This is a bulk update method for updating many identities at once.
+	 * By default, the identities are updated one by one, implementations write them together.
+	 * 
+	 * @param identities					the identities with unique UIDs and rest of info updated
+	 * @throws DAOUpdateException			the customized exception that can thrown, if the whole batch cannot be updated
+	 * @return								the result for every identity, in the given order
+	 */
+	public default BatchResult updateAll(Collection<Identity> identities) throws DAOUpdateException {
+		
+		BatchResult result = new BatchResult();
+		for (Identity identity : identities) {
+			try {
+				update(identity);
+				result.add(identity, BatchResult.Status.SUCCESS, null);
+			} catch (DAOUpdateException e) {
+				result.add(identity, BatchResult.Status.FAILED, e.getMessage());
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * This is a bulk delete method for deleting many identities at once.
+	 * By default, the identities are deleted one by one, implementations write them together.
+	 * 
+	 * @param identities					the identities to be deleted
+	 * @throws DAODeleteException			the customized exception that can thrown, if the whole batch cannot be deleted
+	 * @return								the result for every identity, in the given order
+	 */
+	public default BatchResult deleteAll(Collection<Identity> identities) throws DAODeleteException {
+		
+		BatchResult result = new BatchResult();
+		for (Identity identity : identities) {
+			try {
+				delete(identity);
+				result.add(identity, BatchResult.Status.SUCCESS, null);
+			} catch (DAODeleteException e) {
+				result.add(identity, BatchResult.Status.FAILED, e.getMessage());
+			}
+		}
+		return result;
+	}
+	
 	/**
 	 * This method releases all the resources.
 	 * 
@@ -0,0 +1,85 @@
+package fr.epita.iam.services;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * This class converts identity files between the text format and the binary format.
+ *
+ * @author Lenka Horvathova
+ */
+public class IdentityFileConverter {
+
+	private IdentityFileConverter() {
+		// only static methods
+	}
+
+	/**
+	 * This method converts a text identity file to a binary identity file.
+	 * Tombstones of a journal are applied, so only the current identities are converted.
+	 *
+	 * @param textFile			the text file to read
+	 * @param binaryFile		the binary file to write
+	 * @return					the number of converted identities
+	 * @throws IOException		if a file cannot be read or written
+	 */
+	public static int textToBinary(File textFile, File binaryFile) throws IOException {
+
+		IdentityStore store = new IdentityStore();
+		IdentityTextFormat.load(textFile, store);
+		IdentityBinaryFormat.rewrite(binaryFile, store.values());
+
+		return store.size();
+	}
+
+	/**
+	 * This method converts a binary identity file to a text identity file.
+	 *
+	 * @param binaryFile		the binary file to read
+	 * @param textFile			the text file to write
+	 * @return					the number of converted identities
+	 * @throws IOException		if a file cannot be read or written
+	 */
+	public static int binaryToText(File binaryFile, File textFile) throws IOException {
+
+		IdentityStore store = new IdentityStore();
+		IdentityBinaryFormat.load(binaryFile, store);
+		IdentityTextFormat.rewrite(textFile, store.values());
+
+		return store.size();
+	}
+
+	/**
+	 * This is a main method for converting a file from a command line.
+	 * Usage : IdentityFileConverter (text-to-binary | binary-to-text) source target
+	 *
+	 * @param args				the direction of the conversion, the source file and the target file
+	 * @throws IOException		if a file cannot be read or written
+	 */
+	public static void main(String[] args) throws IOException {
+
+		if (args.length != 3) {
+			System.out.println("Usage : IdentityFileConverter (text-to-binary | binary-to-text) source target");
+			return;
+		}
+
+		File source = new File(args[1]);
+		File target = new File(args[2]);
+		int count;
+
+		switch (args[0]) {
+		case "text-to-binary":
+			count = textToBinary(source, target);
+			break;
+
+		case "binary-to-text":
+			count = binaryToText(source, target);
+			break;
+
+		default:
+			System.out.println("Invalid direction! Please, choose 'text-to-binary' or 'binary-to-text'.");
+			return;
+		}
+		System.out.println(count + " identities were converted to : " + target.getAbsolutePath());
+	}
+}
@@ -0,0 +1,31 @@
+package fr.epita.iam.services;
+
+import fr.epita.iam.datamodel.Identity;
+
+/**
+ * This is an Interface for a secondary index of an IdentityStore.
+ * The store informs all its indexes about every change, so they are always up to date.
+ *
+ * @author Lenka Horvathova
+ */
+public interface IdentityIndex {
+
+	/**
+	 * This method adds an identity, which was stored, to the index.
+	 *
+	 * @param identity				the stored identity
+	 */
+	public void added(Identity identity);
+
+	/**
+	 * This method removes an identity, which was removed or replaced in the store, from the index.
+	 *
+	 * @param identity				the removed identity
+	 */
+	public void removed(Identity identity);
+
+	/**
+	 * This method removes all the identities from the index.
+	 */
+	public void cleared();
+}
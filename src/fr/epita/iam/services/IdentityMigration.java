@@ -0,0 +1,357 @@
+package fr.epita.iam.services;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.stream.Stream;
+
+import fr.epita.iam.datamodel.Identity;
+import fr.epita.iam.exceptions.DAOClosureException;
+import fr.epita.iam.exceptions.DAOInitializationException;
+import fr.epita.iam.exceptions.DAOSaveException;
+import fr.epita.iam.exceptions.DAOSearchException;
+
+/**
+ * This class moves identities between an identity file in the text format and an IdentityDAO, usually the database.
+ *
+ * An import reads the file on a parser thread, which passes chunks of identities through a bounded queue
+ * to the calling thread, which saves every chunk with a single bulk save. The parser stops, when the queue is full,
+ * so only a few chunks are in the memory at once, however big the file is.
+ * An export walks the identities of the DAO one by one and appends them to the file.
+ * Both report their progress and the number of rows per second.
+ *
+ * @author Lenka Horvathova
+ */
+public class IdentityMigration {
+
+	private static final String DETAILS = "Details: ";
+
+	/** the default number of identities saved at once */
+	public static final int DEFAULT_CHUNK_SIZE = 1000;
+
+	/** the default number of chunks waiting in the queue between the parser and the writer */
+	public static final int DEFAULT_QUEUE_CAPACITY = 16;
+
+	/** the number of identities, after which the progress is reported */
+	private static final int PROGRESS_INTERVAL = 100000;
+
+	/** the marker of the end of the file in the queue */
+	private static final List<Identity> END = new ArrayList<>();
+
+	private final int chunkSize;
+	private final int queueCapacity;
+
+	/**
+	 * This is a Constructor for an IdentityMigration class with the default chunk size and queue capacity.
+	 */
+	public IdentityMigration() {
+
+		this(DEFAULT_CHUNK_SIZE, DEFAULT_QUEUE_CAPACITY);
+	}
+
+	/**
+	 * This is a Constructor for an IdentityMigration class.
+	 *
+	 * @param chunkSize				the number of identities saved at once
+	 * @param queueCapacity			the number of chunks waiting in the queue between the parser and the writer
+	 */
+	public IdentityMigration(int chunkSize, int queueCapacity) {
+
+		if (chunkSize <= 0 || queueCapacity <= 0) {
+			throw new IllegalArgumentException("The chunk size and the queue capacity have to be positive.");
+		}
+		this.chunkSize = chunkSize;
+		this.queueCapacity = queueCapacity;
+	}
+
+	/**
+	 * This method saves all the identities of the file to the DAO.
+	 * The file must not contain deleted identities (a journal has to be compacted first),
+	 * because the DAO may assign new UIDs to the saved identities.
+	 *
+	 * @param source				the text file to read
+	 * @param target				the DAO to save the identities to
+	 * @return						the number of saved identities
+	 * @throws IOException			if the file cannot be read or is damaged
+	 * @throws DAOSaveException		if a chunk of identities cannot be saved
+	 */
+	public long importFile(File source, IdentityDAO target) throws IOException, DAOSaveException {
+
+		BlockingQueue<List<Identity>> queue = new ArrayBlockingQueue<>(queueCapacity);
+		IOException[] parserError = new IOException[1];
+
+		Thread parser = new Thread(() -> {
+			try {
+				parse(source, queue); //a separate method for a parsing of a file is used
+			} catch (IOException e) {
+				parserError[0] = e;
+			} finally {
+				try {
+					queue.put(END);
+				} catch (InterruptedException e) {
+					// the writer has already failed and doesn't wait for the end
+				}
+			}
+		}, "identity-import-parser");
+
+		Progress progress = new Progress("Imported");
+		long saved = 0;
+		long rejected = 0;
+		parser.start();
+
+		try {
+			List<Identity> chunk = queue.take();
+			while (chunk != END) {
+				BatchResult result = target.saveAll(chunk);
+				saved += result.count(BatchResult.Status.SUCCESS);
+				rejected += chunk.size() - result.count(BatchResult.Status.SUCCESS);
+				progress.add(chunk.size());
+				chunk = queue.take();
+			}
+			parser.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("The import was interrupted.");
+		} finally {
+			// the parser may be blocked on the full queue, when the writer failed
+			parser.interrupt();
+			queue.clear();
+		}
+
+		if (parserError[0] != null) {
+			throw parserError[0];
+		}
+		progress.finish();
+		if (rejected > 0) {
+			System.out.println(rejected + " identities were not saved.");
+		}
+
+		return saved;
+	}
+
+	/**
+	 * This method writes all the identities of the DAO to the file, replacing its content.
+	 * The identities are written to a temporary file first, which then replaces the file.
+	 *
+	 * @param source				the DAO to read the identities from
+	 * @param target				the text file to write
+	 * @return						the number of written identities
+	 * @throws IOException			if the file cannot be written
+	 * @throws DAOSearchException	if the identities cannot be read
+	 */
+	public long exportFile(IdentityDAO source, File target) throws IOException, DAOSearchException {
+
+		File tmpFile = IdentityTextFormat.tmpFile(target);
+		Progress progress = new Progress("Exported");
+
+		try (Stream<Identity> identities = source.searchStream(null);
+				PrintWriter printer = new PrintWriter(new BufferedWriter(new FileWriter(tmpFile)))) {
+			Iterator<Identity> iterator = identities.iterator();
+			while (iterator.hasNext()) {
+				IdentityTextFormat.printIdentity(printer, iterator.next());
+				progress.add(1);
+			}
+			IdentityTextFormat.checkError(printer, tmpFile);
+		} catch (IllegalStateException e) {
+			// a failure of a database cursor is reported, while the identities are walked
+			System.out.println("Error during an export of identities!");
+			System.out.println(DETAILS + e.getMessage());
+			tmpFile.delete();
+			throw new DAOSearchException();
+		}
+
+		Files.move(tmpFile.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		progress.finish();
+
+		return progress.count;
+	}
+
+	/**
+	 * This method reads the file and puts its identities to the queue in chunks.
+	 *
+	 * @param source				the text file to read
+	 * @param queue					the queue of the chunks
+	 * @throws IOException			if the file cannot be read, contains a deleted identity or the writer failed
+	 */
+	private void parse(File source, BlockingQueue<List<Identity>> queue) throws IOException {
+
+		Chunker chunker = new Chunker(queue);
+		IdentityTextFormat.read(source, chunker);
+		chunker.flush();
+	}
+
+	/**
+	 * This method puts a chunk to the queue and waits, while the queue is full.
+	 *
+	 * @param queue					the queue of the chunks
+	 * @param chunk					the chunk of identities
+	 * @throws IOException			if the waiting was interrupted, because the writer failed
+	 */
+	private static void put(BlockingQueue<List<Identity>> queue, List<Identity> chunk) throws IOException {
+
+		try {
+			queue.put(chunk);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("The import was stopped.");
+		}
+	}
+
+	/**
+	 * This is a main method for migrating identities between a file and the database from a command line.
+	 * Usage : IdentityMigration (import | export) file
+	 *
+	 * @param args					the direction of the migration and the text file
+	 */
+	public static void main(String[] args) {
+
+		if (args.length != 2) {
+			System.out.println("Usage : IdentityMigration (import | export) file");
+			return;
+		}
+
+		File file = new File(args[1]);
+		IdentityMigration migration = new IdentityMigration();
+
+		try {
+			JDBCIdentityDAO dao = new JDBCIdentityDAO();
+			try {
+				switch (args[0]) {
+				case "import":
+					migration.importFile(file, dao);
+					break;
+
+				case "export":
+					migration.exportFile(dao, file);
+					break;
+
+				default:
+					System.out.println("Invalid direction! Please, choose 'import' or 'export'.");
+					break;
+				}
+			} finally {
+				dao.closeResources();
+			}
+		} catch (IOException e) {
+			System.out.println("Error during a migration of identities!");
+			System.out.println(DETAILS + e.getMessage());
+		} catch (DAOInitializationException | DAOSaveException | DAOSearchException | DAOClosureException e) {
+			System.out.println("The migration of identities was not finished.");
+		}
+	}
+
+	/**
+	 * This class collects the read identities into chunks and puts the full chunks to the queue.
+	 */
+	private class Chunker implements IdentityTextFormat.RecordHandler {
+
+		private final BlockingQueue<List<Identity>> queue;
+		private List<Identity> chunk = new ArrayList<>(chunkSize);
+
+		/**
+		 * This is a Constructor for a Chunker class.
+		 *
+		 * @param queue				the queue of the chunks
+		 */
+		Chunker(BlockingQueue<List<Identity>> queue) {
+			this.queue = queue;
+		}
+
+		/* (non-Javadoc)
+		 * @see fr.epita.iam.services.IdentityTextFormat.RecordHandler#identity(fr.epita.iam.datamodel.Identity)
+		 */
+		@Override
+		public void identity(Identity identity) throws IOException {
+
+			chunk.add(identity);
+			if (chunk.size() == chunkSize) {
+				flush();
+			}
+		}
+
+		/* (non-Javadoc)
+		 * @see fr.epita.iam.services.IdentityTextFormat.RecordHandler#deleted(java.lang.String)
+		 */
+		@Override
+		public void deleted(String uid) throws IOException {
+			throw new IOException("The file contains a deleted identity " + uid + ", it has to be compacted first.");
+		}
+
+		/**
+		 * This method puts the collected identities to the queue, if there are any.
+		 *
+		 * @throws IOException		if the waiting was interrupted, because the writer failed
+		 */
+		void flush() throws IOException {
+
+			if (!chunk.isEmpty()) {
+				put(queue, chunk);
+				chunk = new ArrayList<>(chunkSize);
+			}
+		}
+	}
+
+	/**
+	 * This class counts the migrated identities and reports the progress.
+	 */
+	private static class Progress {
+
+		private final String action;
+		private final long start = System.nanoTime();
+		private long count;
+
+		/**
+		 * This is a Constructor for a Progress class.
+		 *
+		 * @param action			the action reported, e.g. 'Imported'
+		 */
+		Progress(String action) {
+			this.action = action;
+		}
+
+		/**
+		 * This method counts migrated identities and reports the progress after every interval.
+		 *
+		 * @param migrated			the number of newly migrated identities
+		 */
+		void add(int migrated) {
+
+			long before = count / PROGRESS_INTERVAL;
+			count += migrated;
+			if (count / PROGRESS_INTERVAL != before) {
+				System.out.println(action + " " + count + " identities (" + rate() + " rows/s)");
+			}
+		}
+
+		/**
+		 * This method reports the final number of migrated identities.
+		 */
+		void finish() {
+
+			double seconds = (System.nanoTime() - start) / 1e9;
+			System.out.println(action + " " + count + " identities in " + String.format("%.1f", seconds)
+					+ " s (" + rate() + " rows/s)");
+		}
+
+		/**
+		 * Rate Getter : This method returns the average number of identities migrated per second.
+		 *
+		 * @return					the number of identities per second
+		 */
+		long rate() {
+
+			long elapsed = System.nanoTime() - start;
+			return (elapsed == 0) ? 0 : (count * 1000000000L / elapsed);
+		}
+	}
+}
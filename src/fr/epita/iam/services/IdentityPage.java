@@ -0,0 +1,115 @@
+package fr.epita.iam.services;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import fr.epita.iam.datamodel.Identity;
+
+/**
+ * This class holds one page of the results of a paged search.
+ * The last identity of the page is the cursor, after which the next page continues.
+ *
+ * @author Lenka Horvathova
+ */
+public class IdentityPage {
+
+	private final List<Identity> identities;
+	private final boolean next;
+
+	/**
+	 * This is a Constructor for an IdentityPage class.
+	 *
+	 * @param identities			the identities of the page, in order
+	 * @param next					true, if there are more identities after the page
+	 */
+	public IdentityPage(List<Identity> identities, boolean next) {
+
+		this.identities = Collections.unmodifiableList(identities);
+		this.next = next;
+	}
+
+	/**
+	 * This method selects a page from all the matching identities: the first identities sorted by the key,
+	 * which come after the cursor. Only the page is kept in a bounded heap, the other identities are just compared,
+	 * so the page is found without sorting all the identities.
+	 *
+	 * @param identities			the matching identities, in any order
+	 * @param sortKey				the attribute the identities are sorted by
+	 * @param after					the last identity of the previous page, null for the first page
+	 * @param limit					the maximal number of identities on the page
+	 * @return						the page
+	 */
+	public static IdentityPage top(Iterator<Identity> identities, IdentitySortKey sortKey, Identity after, int limit) {
+
+		checkLimit(limit);
+		Comparator<Identity> order = sortKey.getComparator();
+		// the head of the heap is the greatest kept identity, one more than the limit shows, if there is a next page
+		PriorityQueue<Identity> heap = new PriorityQueue<>(limit + 1, order.reversed());
+
+		while (identities.hasNext()) {
+			Identity identity = identities.next();
+			if (after != null && order.compare(identity, after) <= 0) {
+				continue;
+			}
+			if (heap.size() <= limit) {
+				heap.add(identity);
+			} else if (order.compare(identity, heap.peek()) < 0) {
+				heap.poll();
+				heap.add(identity);
+			}
+		}
+
+		List<Identity> page = new ArrayList<>(heap);
+		page.sort(order);
+		boolean next = page.size() > limit;
+		if (next) {
+			page.remove(limit);
+		}
+
+		return new IdentityPage(page, next);
+	}
+
+	/**
+	 * This method checks, that a page can hold at least one identity.
+	 *
+	 * @param limit					the maximal number of identities on a page
+	 */
+	public static void checkLimit(int limit) {
+
+		if (limit < 1) {
+			throw new IllegalArgumentException("The limit of a page has to be at least 1 : " + limit);
+		}
+	}
+
+	/**
+	 * Identities Getter : This method returns the identities of the page, in order.
+	 *
+	 * @return						the unmodifiable list of identities
+	 */
+	public List<Identity> getIdentities() {
+		return identities;
+	}
+
+	/**
+	 * This method checks, if there are more identities after this page.
+	 *
+	 * @return						true, if there is a next page;
+	 * 								false, otherwise
+	 */
+	public boolean hasNext() {
+		return next;
+	}
+
+	/**
+	 * Cursor Getter : This method returns the identity, after which the next page continues.
+	 *
+	 * @return						the last identity of the page, null if the page is empty
+	 */
+	public Identity getCursor() {
+		return identities.isEmpty() ? null : identities.get(identities.size() - 1);
+	}
+}
@@ -0,0 +1,95 @@
+package fr.epita.iam.services;
+
+import java.util.Comparator;
+import java.util.function.Function;
+
+import fr.epita.iam.datamodel.Identity;
+
+/**
+ * This enum lists the attributes, by which the identities of a paged search can be sorted.
+ * Identities with the same value are sorted by their UID, so every identity has a unique position
+ * and a page can continue exactly after the last identity of the previous page.
+ *
+ * Missing values are sorted after all the others and the names are compared character by character,
+ * the same way as the database does.
+ *
+ * @author Lenka Horvathova
+ */
+public enum IdentitySortKey {
+
+	/** sorting by the UID, numeric UIDs as numbers */
+	UID(Identity::getUid),
+
+	/** sorting by the display name */
+	DISPLAY_NAME(Identity::getDisplayName),
+
+	/** sorting by the email */
+	EMAIL(Identity::getEmail);
+
+	/** the order of the UIDs: numbers first, by their value, then the other UIDs as texts */
+	private static final Comparator<String> UID_ORDER = Comparator.nullsLast((first, second) -> {
+		Long firstNumber = parseNumber(first);
+		Long secondNumber = parseNumber(second);
+
+		if (firstNumber != null && secondNumber != null) {
+			int order = firstNumber.compareTo(secondNumber);
+			// different UIDs of the same number, e.g. "007" and "7", are still different
+			return (order != 0) ? order : first.compareTo(second);
+		} else if (firstNumber != null || secondNumber != null) {
+			return (firstNumber != null) ? -1 : 1;
+		}
+		return first.compareTo(second);
+	});
+
+	private final Function<Identity, String> attribute;
+
+	/**
+	 * This is a Constructor for an IdentitySortKey enum.
+	 *
+	 * @param attribute				the getter of the sorted attribute
+	 */
+	IdentitySortKey(Function<Identity, String> attribute) {
+
+		this.attribute = attribute;
+	}
+
+	/**
+	 * Value Getter : This method returns the sorted attribute of an identity.
+	 *
+	 * @param identity				the identity
+	 * @return						the value of the attribute
+	 */
+	public String getValue(Identity identity) {
+		return attribute.apply(identity);
+	}
+
+	/**
+	 * Comparator Getter : This method returns the order of the identities, ties broken by the UID.
+	 *
+	 * @return						the comparator of identities
+	 */
+	public Comparator<Identity> getComparator() {
+
+		Comparator<Identity> byUid = Comparator.comparing(Identity::getUid, UID_ORDER);
+		if (this == UID) {
+			return byUid;
+		}
+
+		return Comparator.comparing(attribute, Comparator.nullsLast(Comparator.<String>naturalOrder())).thenComparing(byUid);
+	}
+
+	/**
+	 * This method reads a UID as a number.
+	 *
+	 * @param uid					the UID
+	 * @return						the number or null, if the UID is not a number
+	 */
+	private static Long parseNumber(String uid) {
+
+		try {
+			return Long.valueOf(uid.trim());
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+}
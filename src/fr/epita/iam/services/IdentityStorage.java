@@ -0,0 +1,49 @@
+package fr.epita.iam.services;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * This is an Interface for a way of keeping identities of a FileIdentityDAO in a file.
+ * The DAO keeps all the identities in an in-memory store, the storage only loads them
+ * and makes the changes of the store persistent.
+ *
+ * @author Lenka Horvathova
+ */
+public interface IdentityStorage {
+
+	/**
+	 * File Getter : This method returns the file used by the storage.
+	 *
+	 * @return						the file
+	 */
+	public File getFile();
+
+	/**
+	 * This method reads the file and fills the given store with its identities.
+	 * The store is cleared first.
+	 *
+	 * @param store					the store to be filled
+	 * @throws IOException			if the file cannot be read
+	 */
+	public void load(IdentityStore store) throws IOException;
+
+	/**
+	 * This method makes the given changes persistent.
+	 * It is called after the changes were already applied to the store and returns, when the changes are forced to the disk.
+	 *
+	 * @param changes				the changes to be written, in the order they were made
+	 * @param store					the store with the changes applied
+	 * @throws IOException			if the file cannot be written
+	 */
+	public void write(List<IdentityChange> changes, IdentityStore store) throws IOException;
+
+	/**
+	 * This method releases all the resources held by the storage.
+	 * The storage can be used again after a next load.
+	 *
+	 * @throws IOException			if the resources cannot be released
+	 */
+	public void close() throws IOException;
+}
@@ -0,0 +1,126 @@
+package fr.epita.iam.services;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import fr.epita.iam.datamodel.Identity;
+
+/**
+ * This class keeps identities in memory.
+ * Identities are indexed by their UID, so a lookup, an addition, an update or a deletion
+ * of a single identity does not depend on the number of stored identities.
+ * The order in which the identities were added is kept.
+ * Secondary indexes can be registered, they are kept up to date with every change.
+ *
+ * @author Lenka Horvathova
+ */
+public class IdentityStore {
+
+	private final Map<String, Identity> identities = new LinkedHashMap<>();
+	private final List<IdentityIndex> indexes = new ArrayList<>();
+
+	/**
+	 * This method registers a secondary index and fills it with the already stored identities.
+	 *
+	 * @param index				the index to be kept up to date
+	 */
+	public void addIndex(IdentityIndex index) {
+
+		for (Identity identity : identities.values()) {
+			index.added(identity);
+		}
+		indexes.add(index);
+	}
+
+	/**
+	 * This method returns a stored identity with the given UID.
+	 *
+	 * @param uid				the UID of the identity
+	 * @return					the stored identity or null, if there is no identity with this UID
+	 */
+	public Identity get(String uid) {
+		return identities.get(uid);
+	}
+
+	/**
+	 * This method checks, if there is an identity with the given UID.
+	 *
+	 * @param uid				the UID of the identity
+	 * @return					true, if the identity is stored;
+	 * 							false, otherwise
+	 */
+	public boolean contains(String uid) {
+		return identities.containsKey(uid);
+	}
+
+	/**
+	 * This method stores an identity.
+	 * If there already is an identity with the same UID, it is replaced and keeps its position.
+	 *
+	 * @param identity			the identity to store
+	 * @return					the replaced identity or null, if there was none
+	 */
+	public Identity put(Identity identity) {
+
+		Identity previous = identities.put(identity.getUid(), identity);
+		for (IdentityIndex index : indexes) {
+			if (previous != null) {
+				index.removed(previous);
+			}
+			index.added(identity);
+		}
+
+		return previous;
+	}
+
+	/**
+	 * This method removes an identity with the given UID.
+	 *
+	 * @param uid				the UID of the identity to remove
+	 * @return					the removed identity or null, if there was none
+	 */
+	public Identity remove(String uid) {
+
+		Identity removed = identities.remove(uid);
+		if (removed != null) {
+			for (IdentityIndex index : indexes) {
+				index.removed(removed);
+			}
+		}
+
+		return removed;
+	}
+
+	/**
+	 * This method returns all the stored identities in the order they were added.
+	 *
+	 * @return					the unmodifiable view of the stored identities
+	 */
+	public Collection<Identity> values() {
+		return Collections.unmodifiableCollection(identities.values());
+	}
+
+	/**
+	 * This method returns a number of the stored identities.
+	 *
+	 * @return					the number of identities
+	 */
+	public int size() {
+		return identities.size();
+	}
+
+	/**
+	 * This method removes all the stored identities.
+	 */
+	public void clear() {
+
+		identities.clear();
+		for (IdentityIndex index : indexes) {
+			index.cleared();
+		}
+	}
+}
@@ -0,0 +1,369 @@
+package fr.epita.iam.services;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import fr.epita.iam.datamodel.Identity;
+import fr.epita.iam.exceptions.DAOClosureException;
+import fr.epita.iam.exceptions.DAODeleteException;
+import fr.epita.iam.exceptions.DAOInitializationException;
+import fr.epita.iam.exceptions.DAOSaveException;
+import fr.epita.iam.exceptions.DAOSearchException;
+import fr.epita.iam.exceptions.DAOUpdateException;
+
+/**
+ * This class makes the identities of a target DAO the same as the identities of a source DAO,
+ * e.g. the file of a FileIdentityDAO the same as the table of a JDBCIdentityDAO.
+ *
+ * Both DAOs are described by an IdentityChecksumTree. The trees are compared from the root and only the nodes
+ * with different checksums are descended, so only the ranges of UIDs with a difference are looked at.
+ * Only the differing identities are then read from the source and deleted, updated or saved in the target.
+ * The trees are built by a full scan once and then kept up to date with the published changes of the DAOs,
+ * so a sync costs work proportional to the differences. A DAO without a change publisher or with other writers
+ * (see IdentityDAO#isSoleWriter()) is scanned for every sync, and a DAO is scanned again after a reset.
+ *
+ * This is a limit for a JDBCIdentityDAO: other programs can write its table, so the whole table is streamed
+ * to the client for every sync and only the comparison and the writes are proportional to the differences.
+ * The checksums of the ranges cannot be computed by the database instead, as Derby has no hash function
+ * of strings in SQL and the leaves are not ranges of IDENTITY_UID, but buckets of hashed UIDs.
+ *
+ * The target has to keep the UIDs of the saved identities, e.g. a FileIdentityDAO. The table of a JDBCIdentityDAO
+ * generates its own UIDs, so it can only be the source.
+ *
+ * @author Lenka Horvathova
+ */
+public class IdentitySync {
+
+	private final IdentityDAO source;
+	private final IdentityDAO target;
+	private final IdentityChecksumTree sourceTree;
+	private final IdentityChecksumTree targetTree;
+
+	/**
+	 * This is a Constructor for an IdentitySync class with trees of the default depth.
+	 * Both DAOs are scanned and the trees are registered to their change publishers.
+	 *
+	 * @param source				the DAO with the correct identities
+	 * @param target				the DAO to be made the same as the source
+	 * @throws DAOSearchException	if a DAO cannot be scanned
+	 */
+	public IdentitySync(IdentityDAO source, IdentityDAO target) throws DAOSearchException {
+
+		this(source, target, IdentityChecksumTree.DEFAULT_DEPTH);
+	}
+
+	/**
+	 * This is a Constructor for an IdentitySync class.
+	 * Both DAOs are scanned and the trees are registered to their change publishers.
+	 *
+	 * @param source				the DAO with the correct identities
+	 * @param target				the DAO to be made the same as the source
+	 * @param depth					the depth of the trees, more levels for more identities
+	 * @throws DAOSearchException	if a DAO cannot be scanned
+	 */
+	public IdentitySync(IdentityDAO source, IdentityDAO target, int depth) throws DAOSearchException {
+
+		this.source = source;
+		this.target = target;
+		this.sourceTree = track(source, depth); //a separate method for a build of a tree is used
+		this.targetTree = track(target, depth);
+	}
+
+	/**
+	 * This method makes the target the same as the source.
+	 *
+	 * @return						the report of the sync
+	 * @throws DAOSearchException	if a DAO cannot be read
+	 * @throws DAOSaveException		if the missing identities cannot be saved
+	 * @throws DAOUpdateException	if the different identities cannot be updated
+	 * @throws DAODeleteException	if the extra identities cannot be deleted
+	 */
+	public Report sync() throws DAOSearchException, DAOSaveException, DAOUpdateException, DAODeleteException {
+
+		refresh(source, sourceTree); //a separate method for a rebuild of an outdated tree is used
+		refresh(target, targetTree);
+
+		Report report = new Report();
+		List<String> missing = new ArrayList<>();
+		List<String> different = new ArrayList<>();
+		List<String> extra = new ArrayList<>();
+		compare(1, report, missing, different, extra); //a separate method for a comparison of the trees is used
+
+		List<Identity> toSave = read(missing);
+		List<Identity> toUpdate = read(different);
+		List<Identity> toDelete = new ArrayList<>();
+		for (String uid : extra) {
+			toDelete.add(new Identity(uid, null, null));
+		}
+
+		// the deletions go first and the moved emails are cleared, so an email is free, when it is updated or saved
+		report.deleted = toDelete.isEmpty() ? new BatchResult() : target.deleteAll(toDelete);
+		List<Identity> toClear = findMovedEmails(toUpdate, toSave); //a separate method for a search of moved emails is used
+		report.cleared = toClear.isEmpty() ? new BatchResult() : target.updateAll(toClear);
+		report.updated = toUpdate.isEmpty() ? new BatchResult() : target.updateAll(toUpdate);
+		report.saved = toSave.isEmpty() ? new BatchResult() : target.saveAll(toSave);
+
+		return report;
+	}
+
+	/**
+	 * This is a main method for making the file of identities the same as the table of the database.
+	 * Usage : IdentitySync [file]
+	 *
+	 * @param args					the file of identities, the default file of a FileIdentityDAO, if missing
+	 */
+	public static void main(String[] args) {
+
+		FileIdentityDAO fileDAO = (args.length > 0) ? new FileIdentityDAO(args[0]) : new FileIdentityDAO();
+
+		try {
+			JDBCIdentityDAO databaseDAO = new JDBCIdentityDAO();
+			try {
+				IdentitySync sync = new IdentitySync(databaseDAO, fileDAO);
+				System.out.println(sync.sync());
+				sync.close();
+			} finally {
+				databaseDAO.closeResources();
+			}
+		} catch (DAOInitializationException | DAOSearchException | DAOSaveException | DAOUpdateException
+				| DAODeleteException | DAOClosureException e) {
+			System.out.println("The sync of identities was not finished.");
+		} finally {
+			try {
+				fileDAO.closeResources();
+			} catch (DAOClosureException e) {
+				System.out.println("The file of identities was not closed.");
+			}
+		}
+	}
+
+	/**
+	 * This method stops keeping the trees up to date, the sync cannot be used afterwards.
+	 */
+	public void close() {
+
+		if (source.getChangePublisher() != null) {
+			source.getChangePublisher().removeListener(sourceTree);
+		}
+		if (target.getChangePublisher() != null) {
+			target.getChangePublisher().removeListener(targetTree);
+		}
+	}
+
+	/**
+	 * This method builds a tree of a DAO and registers it to the change publisher of the DAO.
+	 * The tree is registered before the scan, so no change is missed, a change seen twice does no harm.
+	 *
+	 * @param dao					the DAO
+	 * @param depth					the depth of the tree
+	 * @return						the tree
+	 * @throws DAOSearchException	if the DAO cannot be scanned
+	 */
+	private static IdentityChecksumTree track(IdentityDAO dao, int depth) throws DAOSearchException {
+
+		IdentityChecksumTree tree = new IdentityChecksumTree(depth);
+		if (dao.getChangePublisher() != null) {
+			dao.getChangePublisher().addListener(tree);
+		}
+		try (Stream<Identity> identities = dao.searchStream(null)) {
+			tree.rebuild(identities);
+		}
+
+		return tree;
+	}
+
+	/**
+	 * This method scans a DAO again, if its tree cannot be kept up to date, because the DAO doesn't publish
+	 * all the changes of its identities, or the tree missed a change.
+	 *
+	 * @param dao					the DAO
+	 * @param tree					the tree of the DAO
+	 * @throws DAOSearchException	if the DAO cannot be scanned
+	 */
+	private static void refresh(IdentityDAO dao, IdentityChecksumTree tree) throws DAOSearchException {
+
+		if (dao.getChangePublisher() == null || !dao.isSoleWriter() || tree.isStale()) {
+			try (Stream<Identity> identities = dao.searchStream(null)) {
+				tree.rebuild(identities);
+			}
+		}
+	}
+
+	/**
+	 * This method compares a node of the trees and descends into the children with different checksums.
+	 * In a leaf, the UIDs are sorted into the missing, the different and the extra ones.
+	 *
+	 * @param node					the node
+	 * @param report				the report counting the compared nodes
+	 * @param missing				the UIDs only in the source
+	 * @param different				the UIDs with different identities
+	 * @param extra					the UIDs only in the target
+	 */
+	private void compare(int node, Report report, List<String> missing, List<String> different, List<String> extra) {
+
+		report.comparedNodes++;
+		if (sourceTree.getChecksum(node) == targetTree.getChecksum(node)) {
+			return;
+		}
+
+		int leafCount = 1 << sourceTree.getDepth();
+		if (node < leafCount) {
+			compare(2 * node, report, missing, different, extra);
+			compare(2 * node + 1, report, missing, different, extra);
+			return;
+		}
+
+		report.differentLeaves++;
+		Map<String, Long> sourceLeaf = sourceTree.getLeaf(node - leafCount);
+		Map<String, Long> targetLeaf = targetTree.getLeaf(node - leafCount);
+		for (Map.Entry<String, Long> entry : sourceLeaf.entrySet()) {
+			Long targetChecksum = targetLeaf.get(entry.getKey());
+			if (targetChecksum == null) {
+				missing.add(entry.getKey());
+			} else if (!targetChecksum.equals(entry.getValue())) {
+				different.add(entry.getKey());
+			}
+		}
+		for (String uid : targetLeaf.keySet()) {
+			if (!sourceLeaf.containsKey(uid)) {
+				extra.add(uid);
+			}
+		}
+	}
+
+	/**
+	 * This method finds the identities of the target, which still hold an email moved to another UID in the source,
+	 * e.g. when two UIDs swapped their emails. The holders are updated too, so their emails can be cleared first
+	 * and the final values are applied afterwards without a conflict.
+	 *
+	 * @param toUpdate				the identities to update in the target
+	 * @param toSave				the identities to save in the target
+	 * @return						the holders of the moved emails without an email
+	 * @throws DAOSearchException	if the target cannot be read
+	 */
+	private List<Identity> findMovedEmails(List<Identity> toUpdate, List<Identity> toSave) throws DAOSearchException {
+
+		Set<String> updatedUids = new HashSet<>();
+		for (Identity identity : toUpdate) {
+			updatedUids.add(identity.getUid());
+		}
+
+		Map<String, Identity> holders = new LinkedHashMap<>();
+		for (List<Identity> identities : Arrays.asList(toUpdate, toSave)) {
+			for (Identity identity : identities) {
+				Identity holder = (identity.getEmail() == null) ? null : target.findByEmail(identity.getEmail());
+				// a holder, which is not updated, keeps its email, so the conflict is reported by the target
+				if (holder != null && !holder.getUid().equals(identity.getUid()) && updatedUids.contains(holder.getUid())) {
+					holders.put(holder.getUid(), new Identity(holder.getUid(), holder.getDisplayName(), null));
+				}
+			}
+		}
+
+		return new ArrayList<>(holders.values());
+	}
+
+	/**
+	 * This method reads the identities with the given UIDs from the source, one by one.
+	 * An identity deleted from the source in the meantime is skipped.
+	 *
+	 * @param uids					the UIDs
+	 * @return						the identities
+	 * @throws DAOSearchException	if the source cannot be read
+	 */
+	private List<Identity> read(List<String> uids) throws DAOSearchException {
+
+		List<Identity> identities = new ArrayList<>(uids.size());
+		for (String uid : uids) {
+			for (Identity identity : source.search(new Identity(uid, null, null))) {
+				if (uid.equals(identity.getUid())) {
+					identities.add(identity);
+				}
+			}
+		}
+
+		return identities;
+	}
+
+	/**
+	 * This class reports the result of a sync.
+	 */
+	public static class Report {
+
+		private int comparedNodes;
+		private int differentLeaves;
+		private BatchResult cleared;
+		private BatchResult saved;
+		private BatchResult updated;
+		private BatchResult deleted;
+
+		/**
+		 * ComparedNodes Getter : This method returns the number of the compared nodes of the trees.
+		 *
+		 * @return				the number of nodes
+		 */
+		public int getComparedNodes() {
+			return comparedNodes;
+		}
+
+		/**
+		 * DifferentLeaves Getter : This method returns the number of the ranges of UIDs, which had to be compared.
+		 *
+		 * @return				the number of leaves
+		 */
+		public int getDifferentLeaves() {
+			return differentLeaves;
+		}
+
+		/**
+		 * Cleared Getter : This method returns the result of the update, which cleared the emails moved to other UIDs,
+		 * before the final values were applied.
+		 *
+		 * @return				the result
+		 */
+		public BatchResult getCleared() {
+			return cleared;
+		}
+
+		/**
+		 * Saved Getter : This method returns the result of the save of the identities missing in the target.
+		 *
+		 * @return				the result
+		 */
+		public BatchResult getSaved() {
+			return saved;
+		}
+
+		/**
+		 * Updated Getter : This method returns the result of the update of the different identities in the target.
+		 *
+		 * @return				the result
+		 */
+		public BatchResult getUpdated() {
+			return updated;
+		}
+
+		/**
+		 * Deleted Getter : This method returns the result of the deletion of the extra identities in the target.
+		 *
+		 * @return				the result
+		 */
+		public BatchResult getDeleted() {
+			return deleted;
+		}
+
+		/* (non-Javadoc)
+		 * @see java.lang.Object#toString()
+		 */
+		@Override
+		public String toString() {
+			return "compared nodes : " + comparedNodes + ", different ranges : " + differentLeaves
+					+ "\ncleared : " + cleared + "\nsaved : " + saved + "\nupdated : " + updated + "\ndeleted : " + deleted;
+		}
+	}
+}
@@ -0,0 +1,274 @@
+package fr.epita.iam.services;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+
+import fr.epita.iam.datamodel.Identity;
+
+/**
+ * This class reads and writes identities in the text format of the identity files.
+ * Every identity is recorded using the format:
+ *
+ * <pre>
+ * --- Identity ---
+ * uid
+ * displayName
+ * email
+ * --- Identity ---
+ * </pre>
+ *
+ * A deleted identity can be recorded by a tombstone using the format:
+ *
+ * <pre>
+ * --- Deleted ---
+ * uid
+ * --- Deleted ---
+ * </pre>
+ *
+ * When a file is read, the records are replayed in order: an identity record adds or replaces the identity
+ * with its UID and a tombstone removes it.
+ *
+ * @author Lenka Horvathova
+ */
+public class IdentityTextFormat {
+
+	/** the line surrounding an identity record */
+	public static final String IDENTITY_SEPARATOR = "--- Identity ---";
+
+	/** the line surrounding a tombstone of a deleted identity */
+	public static final String DELETED_SEPARATOR = "--- Deleted ---";
+
+	private IdentityTextFormat() {
+		// only static methods
+	}
+
+	/**
+	 * This method reads all the records of the file and replays them into the given store.
+	 * The store is cleared first.
+	 *
+	 * @param file				the file to read
+	 * @param store				the store to be filled
+	 * @return					the number of records in the file
+	 * @throws IOException		if the file cannot be read or is damaged
+	 */
+	public static int load(File file, IdentityStore store) throws IOException {
+
+		store.clear();
+
+		return read(file, new RecordHandler() {
+
+			@Override
+			public void identity(Identity identity) {
+				store.put(identity);
+			}
+
+			@Override
+			public void deleted(String uid) {
+				store.remove(uid);
+			}
+		});
+	}
+
+	/**
+	 * This method reads the records of the file one by one and passes them to the handler,
+	 * so even a file bigger than the memory can be processed.
+	 *
+	 * @param file				the file to read
+	 * @param handler			the handler of the records
+	 * @return					the number of records in the file
+	 * @throws IOException		if the file cannot be read or is damaged, or if the handler fails
+	 */
+	public static int read(File file, RecordHandler handler) throws IOException {
+
+		int records = 0;
+
+		try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+			String line = nextSeparator(reader);
+
+			while (line != null) {
+				if (IDENTITY_SEPARATOR.equals(line)) {
+					handler.identity(scanIdentity(reader)); //a separate method for a scanning of an identity is used
+				} else if (DELETED_SEPARATOR.equals(line)) {
+					handler.deleted(scanTombstone(reader));
+				} else {
+					throw new IOException("Unexpected line in the file : " + line);
+				}
+				records++;
+				line = nextSeparator(reader);
+			}
+		}
+
+		return records;
+	}
+
+	/**
+	 * This method writes the given identities to the file, replacing its content.
+	 * The identities are written to a temporary file first, which is forced to the disk and then replaces the file,
+	 * so the file is never left half written.
+	 *
+	 * @param file				the file to write
+	 * @param identities		the identities to be written
+	 * @throws IOException		if the file cannot be written
+	 */
+	public static void rewrite(File file, Collection<Identity> identities) throws IOException {
+
+		File tmpFile = tmpFile(file);
+
+		try (FileOutputStream output = new FileOutputStream(tmpFile);
+				PrintWriter printer = new PrintWriter(new BufferedWriter(new OutputStreamWriter(output)))) {
+			for (Identity identity : identities) {
+				printIdentity(printer, identity); // a separate method for a print of an identity is used
+			}
+			printer.flush();
+			checkError(printer, tmpFile);
+			output.getChannel().force(false);
+		}
+
+		Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * This method returns a temporary file for the given file, e.g. 'identities.tmp.txt' for 'identities.txt'.
+	 *
+	 * @param file				the file
+	 * @return					the temporary file in the same directory
+	 */
+	public static File tmpFile(File file) {
+
+		String name = file.getName();
+		int dot = name.lastIndexOf('.');
+		String tmpName = (dot < 0) ? (name + ".tmp") : (name.substring(0, dot) + ".tmp" + name.substring(dot));
+
+		return new File(file.getAbsoluteFile().getParentFile(), tmpName);
+	}
+
+	/**
+	 * This is a method for printing an identity record.
+	 *
+	 * @param printer			the printer used for writing the file
+	 * @param identity			the identity to record
+	 */
+	public static void printIdentity(PrintWriter printer, Identity identity) {
+
+		printer.println(IDENTITY_SEPARATOR);
+		printer.println(identity.getUid());
+		printer.println(identity.getDisplayName());
+		printer.println(identity.getEmail());
+		printer.println(IDENTITY_SEPARATOR);
+	}
+
+	/**
+	 * This is a method for printing a tombstone of a deleted identity.
+	 *
+	 * @param printer			the printer used for writing the file
+	 * @param uid				the UID of the deleted identity
+	 */
+	public static void printTombstone(PrintWriter printer, String uid) {
+
+		printer.println(DELETED_SEPARATOR);
+		printer.println(uid);
+		printer.println(DELETED_SEPARATOR);
+	}
+
+	/**
+	 * This method checks, if the printer failed to write anything.
+	 *
+	 * @param printer			the printer to check
+	 * @param file				the file written by the printer
+	 * @throws IOException		if the printer failed
+	 */
+	public static void checkError(PrintWriter printer, File file) throws IOException {
+
+		if (printer.checkError()) {
+			throw new IOException("The file " + file.getAbsolutePath() + " could not be written.");
+		}
+	}
+
+	/**
+	 * This method skips empty lines and returns the opening line of a next record.
+	 *
+	 * @param reader			the reader used for reading the file
+	 * @return					the opening line or null, if the end of the file was reached
+	 * @throws IOException		if the file cannot be read
+	 */
+	private static String nextSeparator(BufferedReader reader) throws IOException {
+
+		String line = reader.readLine();
+		while (line != null && line.trim().isEmpty()) {
+			line = reader.readLine();
+		}
+
+		return line;
+	}
+
+	/**
+	 * This method reads the rest of an identity record, after its opening line.
+	 *
+	 * @param reader			the reader used for reading the file
+	 * @return					the read identity
+	 * @throws IOException		if the file cannot be read or ends in the middle of the record
+	 */
+	private static Identity scanIdentity(BufferedReader reader) throws IOException {
+
+		String uid = reader.readLine();
+		String displayName = reader.readLine();
+		String mail = reader.readLine();
+		reader.readLine();
+
+		if (mail == null) {
+			throw new IOException("The file ends in the middle of an identity.");
+		}
+
+		return new Identity(uid, displayName, mail);
+	}
+
+	/**
+	 * This method reads the rest of a tombstone, after its opening line.
+	 *
+	 * @param reader			the reader used for reading the file
+	 * @return					the UID of the deleted identity
+	 * @throws IOException		if the file cannot be read or ends in the middle of the tombstone
+	 */
+	private static String scanTombstone(BufferedReader reader) throws IOException {
+
+		String uid = reader.readLine();
+		String closing = reader.readLine();
+
+		if (closing == null) {
+			throw new IOException("The file ends in the middle of a deleted identity.");
+		}
+
+		return uid;
+	}
+
+	/**
+	 * This interface receives the records of a file, in the order they were written.
+	 */
+	public interface RecordHandler {
+
+		/**
+		 * This method receives an identity record.
+		 *
+		 * @param identity			the recorded identity
+		 * @throws IOException		if the identity cannot be processed
+		 */
+		void identity(Identity identity) throws IOException;
+
+		/**
+		 * This method receives a tombstone of a deleted identity.
+		 *
+		 * @param uid				the UID of the deleted identity
+		 * @throws IOException		if the tombstone cannot be processed
+		 */
+		void deleted(String uid) throws IOException;
+	}
+}
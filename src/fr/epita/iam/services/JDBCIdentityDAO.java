@@ -3,13 +3,23 @@
  */
 package fr.epita.iam.services;
 
+import java.sql.BatchUpdateException;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import fr.epita.iam.datamodel.Identity;
 import fr.epita.iam.exceptions.DAOClosureException;
@@ -21,27 +31,87 @@ import fr.epita.iam.exceptions.DAOUpdateException;
 
 /**
  * This class manages identities using a database.
+ * Every operation borrows a connection from a ConnectionPool and returns it afterwards,
+ * so one DAO can be used by several callers at the same time.
+ * 
+ * The committed changes are numbered and published to the listeners of the change publisher.
+ * Every write commits its transaction and publishes its changes under a lock of the DAO, so the changes
+ * of calls running at the same time on different connections are numbered in the order of their commits.
  * 
  * @author Lenka Horvathova
  */
 public class JDBCIdentityDAO implements IdentityDAO {
 
 	private static final String DETAILS = "Details: ";
-	private Connection connection;
-	private PreparedStatement preparedStatement;
-	private ResultSet results;	
+
+	private static final String CONNECTION_STRING = "jdbc:derby://localhost:1527/iam;create=true";
+	private static final String USER = "IAM";
+	private static final String PASSWORD = "123";
+
+	private static final String INSERT_STATEMENT = "INSERT into IDENTITIES "
+												 + "(IDENTITY_DISPLAYNAME, IDENTITY_EMAIL) "
+												 + "values(?, ?)";
+	private static final String UPDATE_STATEMENT = "UPDATE IDENTITIES "
+												 + "SET IDENTITY_DISPLAYNAME = ?, "
+												 + "IDENTITY_EMAIL = ? "
+												 + "where IDENTITY_UID = ?";
+	private static final String DELETE_STATEMENT = "DELETE from IDENTITIES where IDENTITY_UID = ?";
+	private static final String SELECT_STATEMENT = "SELECT * from IDENTITIES";
+	private static final String EMAIL_STATEMENT = "SELECT * from IDENTITIES where IDENTITY_EMAIL = ?";
+	private static final String UID_CONDITION = "IDENTITY_UID = ?";
+	private static final String NAME_CONDITION = "IDENTITY_DISPLAYNAME LIKE ? ESCAPE '\\'";
+
+	/** the number of statements sent to the database at once by a bulk operation */
+	private static final int BATCH_SIZE = 1000;
+
+	/** the default number of rows fetched from the database at once by a stream search */
+	public static final int DEFAULT_FETCH_SIZE = 100;
+
+	private final ConnectionPool pool;
+	private final boolean ownPool;
+	private int fetchSize = DEFAULT_FETCH_SIZE;
+	private final IdentityChangePublisher publisher = new IdentityChangePublisher();
+	private final Object commitLock = new Object();
 	
 	/**
 	 * This is a Constructor for a JDBCIdentityDAO class.
-	 * A connection with a database is set with every initialization. 
+	 * A pool of connections with a database is created with every initialization and closed with the DAO. 
 	 * @throws DAOInitializationException		the customized exception that can thrown during initializing
 	 */
 	public JDBCIdentityDAO() throws DAOInitializationException {
+		this(new ConnectionPool(CONNECTION_STRING, USER, PASSWORD), true);
+	}
+	
+	/**
+	 * This is a Constructor for a JDBCIdentityDAO class using a shared pool of connections.
+	 * The pool is not closed with the DAO, it is up to its creator.
+	 * @param pool								the pool of connections with the database
+	 * @throws DAOInitializationException		the customized exception that can thrown during initializing
+	 */
+	public JDBCIdentityDAO(ConnectionPool pool) throws DAOInitializationException {
+		this(pool, false);
+	}
+	
+	/**
+	 * This is a Constructor for a JDBCIdentityDAO class.
+	 * A first connection is borrowed to check, that the database can be reached.
+	 * @param pool								the pool of connections with the database
+	 * @param ownPool							true, if the pool should be closed with the DAO
+	 * @throws DAOInitializationException		the customized exception that can thrown during initializing
+	 */
+	private JDBCIdentityDAO(ConnectionPool pool, boolean ownPool) throws DAOInitializationException {
+		this.pool = pool;
+		this.ownPool = ownPool;
+		
 		try {
-			this.connection = DriverManager.getConnection("jdbc:derby://localhost:1527/iam;create=true","IAM","123");
+			// the connection stays open in the pool for the first operation
+			pool.getConnection().close();
 		} catch(SQLException e) {
 			System.out.println("Error during an initialization of data!");
 			System.out.println(DETAILS + e.getMessage());
+			if (ownPool) {
+				pool.close();
+			}
 			throw new DAOInitializationException();
 		}
 	}
@@ -52,14 +122,19 @@ public class JDBCIdentityDAO implements IdentityDAO {
 	@Override
 	public void save(Identity identity) throws DAOSaveException {
 		
-		String statement = "INSERT into IDENTITIES "
-						 + "(IDENTITY_DISPLAYNAME, IDENTITY_EMAIL) "
-						 + "values(?, ?)";
-		try {
-			preparedStatement = this.connection.prepareStatement(statement);		
+		try (Connection connection = pool.getConnection();
+			 PreparedStatement preparedStatement = connection.prepareStatement(INSERT_STATEMENT, Statement.RETURN_GENERATED_KEYS)) {		
+			// the pool rolls back an uncommitted transaction and restores the auto-commit, when the connection is returned
+			connection.setAutoCommit(false);
 			preparedStatement.setString(1, identity.getDisplayName());
 			preparedStatement.setString(2, identity.getEmail());		
 			preparedStatement.execute();
+			String uid;
+			try (ResultSet keys = preparedStatement.getGeneratedKeys()) {
+				uid = keys.next() ? keys.getString(1) : null;
+			}
+			// the UID is generated by the database
+			commit(connection, IdentityChange.Type.SAVE, new Identity(uid, identity.getDisplayName(), identity.getEmail())); //a separate method for an ordered commit is used
 		} catch (SQLException e) {
 			System.out.println("Error during a save of data!");
 			System.out.println(DETAILS + e.getMessage());
@@ -73,16 +148,56 @@ public class JDBCIdentityDAO implements IdentityDAO {
 	@Override
 	public List<Identity> search(Identity criteria) throws DAOSearchException {
 		
-		List<Identity> returnedList = new ArrayList<>();
+		try (Stream<Identity> identities = searchStream(criteria)) {
+			return identities.collect(Collectors.toList());
+		} catch (IllegalStateException e) {
+			throw new DAOSearchException();
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.epita.iam.services.IdentityDAO#searchStream()
+	 */
+	@Override
+	public Stream<Identity> searchStream(Identity criteria) throws DAOSearchException {
+		
+		Connection connection = null;
+		PreparedStatement streamStatement = null;
 		try {
-			preparedStatement = this.connection.prepareStatement("SELECT * from IDENTITIES");
-			results = preparedStatement.executeQuery();
-	
-			while (results.next()){
-				String uid = results.getString("IDENTITY_UID");
-				String displayName = results.getString("IDENTITY_DISPLAYNAME");
-				String email = results.getString("IDENTITY_EMAIL");			
-				returnedList.add(new Identity(uid, displayName, email));
+			// the connection is kept until the stream is closed
+			connection = pool.getConnection();
+			// a forward-only statement, so the rows are fetched lazily in chunks and are not kept
+			streamStatement = prepareSearch(connection, criteria); //a separate method for a translation of criteria is used
+			streamStatement.setFetchSize(fetchSize);
+			ResultSet cursor = streamStatement.executeQuery();
+			
+			return StreamSupport.stream(new IdentitySpliterator(cursor), false)
+					.onClose(new CursorCloser(connection, streamStatement, cursor));
+		} catch (SQLException e) {
+			System.out.println("Error during a search of data!");
+			System.out.println(DETAILS + e.getMessage());
+			closeQuietly(streamStatement);
+			closeQuietly(connection);
+			throw new DAOSearchException();
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.epita.iam.services.IdentityDAO#searchPage()
+	 */
+	@Override
+	public IdentityPage searchPage(Identity criteria, IdentitySortKey sortKey, Identity after, int limit)
+			throws DAOSearchException {
+		
+		IdentityPage.checkLimit(limit);
+		List<Identity> identities = new ArrayList<>(limit + 1);
+		
+		// one more row than the limit is asked for, to know if there is a next page
+		try (Connection connection = pool.getConnection();
+			 PreparedStatement preparedStatement = prepareSearch(connection, criteria, sortKey, after, limit + 1);
+			 ResultSet rows = preparedStatement.executeQuery()) {
+			while (rows.next()) {
+				identities.add(readIdentity(rows));
 			}
 		} catch (SQLException e) {
 			System.out.println("Error during a search of data!");
@@ -90,7 +205,71 @@ public class JDBCIdentityDAO implements IdentityDAO {
 			throw new DAOSearchException();
 		}
 		
-		return returnedList;
+		boolean next = identities.size() > limit;
+		if (next) {
+			identities.remove(limit);
+		}
+		
+		return new IdentityPage(identities, next);
+	}
+
+	/**
+	 * This is a search method that returns the identity with the given email.
+	 * The email is looked up in the unique index of the table (see IAMSQL.sql).
+	 * 
+	 * @see fr.epita.iam.services.IdentityDAO#findByEmail(String)
+	 */
+	@Override
+	public Identity findByEmail(String email) throws DAOSearchException {
+		
+		if (email == null) {
+			return null;
+		}
+		
+		try (Connection connection = pool.getConnection();
+			 PreparedStatement preparedStatement = connection.prepareStatement(EMAIL_STATEMENT)) {
+			preparedStatement.setString(1, email);
+			try (ResultSet rows = preparedStatement.executeQuery()) {
+				return rows.next() ? readIdentity(rows) : null;
+			}
+		} catch (SQLException e) {
+			System.out.println("Error during a search of data!");
+			System.out.println(DETAILS + e.getMessage());
+			throw new DAOSearchException();
+		}
+	}
+
+	/**
+	 * ChangePublisher Getter : This method returns the publisher of the saves, updates and deletions of this DAO.
+	 * Listeners registered there receive every change, after it was committed, and a notice of a reset.
+	 * The changes made by other programs in the same table are not seen, see isSoleWriter().
+	 * 
+	 * @return									the publisher
+	 */
+	@Override
+	public IdentityChangePublisher getChangePublisher() {
+		return publisher;
+	}
+
+	/**
+	 * FetchSize Getter : This method returns the number of rows fetched from the database at once by a stream search.
+	 * 
+	 * @return									the fetch size
+	 */
+	public int getFetchSize() {
+		return fetchSize;
+	}
+
+	/**
+	 * FetchSize Setter : This method sets the number of rows fetched from the database at once by a stream search.
+	 * 
+	 * @param fetchSize							the fetch size to set, at least 1
+	 */
+	public void setFetchSize(int fetchSize) {
+		if (fetchSize < 1) {
+			throw new IllegalArgumentException("The fetch size has to be at least 1 : " + fetchSize);
+		}
+		this.fetchSize = fetchSize;
 	}
 
 	/* (non-Javadoc)
@@ -99,16 +278,15 @@ public class JDBCIdentityDAO implements IdentityDAO {
 	@Override
 	public void update(Identity identity) throws DAOUpdateException {
 		
-		String statement  = "UPDATE IDENTITIES "
-						  + "SET IDENTITY_DISPLAYNAME = ?,"
-						  + "IDENTITY_EMAIL = ?"
-						  + "where IDENTITY_UID = ?";		
-		try {
-			preparedStatement = connection.prepareStatement(statement);		
+		try (Connection connection = pool.getConnection();
+			 PreparedStatement preparedStatement = connection.prepareStatement(UPDATE_STATEMENT)) {		
+			connection.setAutoCommit(false);
 			preparedStatement.setString(1, identity.getDisplayName());
 			preparedStatement.setString(2, identity.getEmail());
 			preparedStatement.setString(3, identity.getUid());		
-			preparedStatement.execute();
+			if (preparedStatement.executeUpdate() > 0) {
+				commit(connection, IdentityChange.Type.UPDATE, identity);
+			}
 		} catch (SQLException e) {
 			System.out.println("Error during an update of a file!");
 			System.out.println(DETAILS + e.getMessage());
@@ -122,68 +300,131 @@ public class JDBCIdentityDAO implements IdentityDAO {
 	@Override
 	public void delete(Identity identity) throws DAODeleteException {
 		
-		String statement = "DELETE from IDENTITIES where IDENTITY_UID = ?";
-		try {
-			preparedStatement = connection.prepareStatement(statement);	
+		try (Connection connection = pool.getConnection();
+			 PreparedStatement preparedStatement = connection.prepareStatement(DELETE_STATEMENT)) {	
+			connection.setAutoCommit(false);
 			preparedStatement.setString(1, identity.getUid());		
-			preparedStatement.execute();
+			if (preparedStatement.executeUpdate() > 0) {
+				commit(connection, IdentityChange.Type.DELETE, identity);
+			}
 		} catch (SQLException e) {
 			System.out.println("Error during an deletion of a file!");
 			System.out.println(DETAILS + e.getMessage());
 			throw new DAODeleteException();
-		}		
+		}
 	}
 
 	/* (non-Javadoc)
-	 * @see fr.epita.iam.services.IdentityDAO#closeResources()
+	 * @see fr.epita.iam.services.IdentityDAO#saveAll()
 	 */
 	@Override
-	public void closeResources() throws DAOClosureException {
+	public BatchResult saveAll(Collection<Identity> identities) throws DAOSaveException {
+		
+		try {
+			return executeBatch(IdentityChange.Type.SAVE, INSERT_STATEMENT, identities, (statement, identity) -> {
+				statement.setString(1, identity.getDisplayName());
+				statement.setString(2, identity.getEmail());
+			});
+		} catch (SQLException e) {
+			System.out.println("Error during a save of data!");
+			System.out.println(DETAILS + e.getMessage());
+			throw new DAOSaveException();
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.epita.iam.services.IdentityDAO#updateAll()
+	 */
+	@Override
+	public BatchResult updateAll(Collection<Identity> identities) throws DAOUpdateException {
+		
+		try {
+			return executeBatch(IdentityChange.Type.UPDATE, UPDATE_STATEMENT, identities, (statement, identity) -> {
+				statement.setString(1, identity.getDisplayName());
+				statement.setString(2, identity.getEmail());
+				statement.setString(3, identity.getUid());
+			});
+		} catch (SQLException e) {
+			System.out.println("Error during an update of data!");
+			System.out.println(DETAILS + e.getMessage());
+			throw new DAOUpdateException();
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.epita.iam.services.IdentityDAO#deleteAll()
+	 */
+	@Override
+	public BatchResult deleteAll(Collection<Identity> identities) throws DAODeleteException {
+		
 		try {
-			this.preparedStatement.close();
-			this.connection.close();
+			return executeBatch(IdentityChange.Type.DELETE, DELETE_STATEMENT, identities, (statement, identity) -> statement.setString(1, identity.getUid()));
 		} catch (SQLException e) {
-			System.out.println("Error during a closure of resources!");
+			System.out.println("Error during a deletion of data!");
 			System.out.println(DETAILS + e.getMessage());
-			throw new DAOClosureException();
+			throw new DAODeleteException();
 		}
 	}
 
+	/* (non-Javadoc)
+	 * @see fr.epita.iam.services.IdentityDAO#closeResources()
+	 */
+	@Override
+	public void closeResources() throws DAOClosureException {
+		
+		// the statements and connections are closed after every operation, only an own pool is left
+		if (ownPool) {
+			pool.close();
+		}
+	}
+	
+	/**
+	 * Pool Getter : This method returns the pool of connections used by the DAO, e.g. to read its metrics.
+	 * 
+	 * @return									the pool
+	 */
+	public ConnectionPool getPool() {
+		return pool;
+	}
+
 	/* (non-Javadoc)
 	 * @see fr.epita.iam.services.IdentityDAO#resetToOriginal()
 	 */
 	@Override
 	public void resetToOriginal() throws DAOInitializationException {
 		
-		try {
-			String statement  = "DELETE from IDENTITIES";	
-			preparedStatement = connection.prepareStatement(statement);
-			preparedStatement.execute();
-				
-			statement  = "ALTER TABLE IDENTITIES ALTER COLUMN IDENTITY_UID RESTART WITH 1";
-			preparedStatement = connection.prepareStatement(statement);
-			preparedStatement.execute();
-				
-			statement = "INSERT into IDENTITIES "
-					  + "(IDENTITY_DISPLAYNAME, IDENTITY_EMAIL) "
-					  + "values(?, ?)";
-			preparedStatement = connection.prepareStatement(statement);
-				
-			preparedStatement.setString(1, "Lenka Horvathova");
-			preparedStatement.setString(2, "l.h@gmail.com");
-			preparedStatement.execute();
-				
-			preparedStatement.setString(1, "Janko Hrasko");
-			preparedStatement.setString(2, "jh@gmail.com");
-			preparedStatement.execute();
-				
-			preparedStatement.setString(1, "John Smith");
-			preparedStatement.setString(2, "js@yahoo.com");
-			preparedStatement.execute();
-				
-			preparedStatement.setString(1, "Anne Black");
-			preparedStatement.setString(2, "anne.b@yahoo.com");	
-			preparedStatement.execute();
+		try (Connection connection = pool.getConnection()) {
+			// every statement commits on its own, so no other write may commit and be published in between
+			synchronized (commitLock) {
+				try (PreparedStatement preparedStatement = connection.prepareStatement("DELETE from IDENTITIES")) {
+					preparedStatement.execute();
+				}
+			
+				String statement  = "ALTER TABLE IDENTITIES ALTER COLUMN IDENTITY_UID RESTART WITH 1";
+				try (PreparedStatement preparedStatement = connection.prepareStatement(statement)) {
+					preparedStatement.execute();
+				}
+			
+				try (PreparedStatement preparedStatement = connection.prepareStatement(INSERT_STATEMENT)) {
+					
+					preparedStatement.setString(1, "Lenka Horvathova");
+					preparedStatement.setString(2, "l.h@gmail.com");
+					preparedStatement.execute();
+					
+					preparedStatement.setString(1, "Janko Hrasko");
+					preparedStatement.setString(2, "jh@gmail.com");
+					preparedStatement.execute();
+					
+					preparedStatement.setString(1, "John Smith");
+					preparedStatement.setString(2, "js@yahoo.com");
+					preparedStatement.execute();
+					
+					preparedStatement.setString(1, "Anne Black");
+					preparedStatement.setString(2, "anne.b@yahoo.com");	
+					preparedStatement.execute();
+				}
+				publisher.publishReset();
+			}
 		} catch (SQLException e) {
 			System.out.println("Error during a reset of table in the database!");
 			System.out.println(DETAILS + e.getMessage());
@@ -197,28 +438,492 @@ public class JDBCIdentityDAO implements IdentityDAO {
 	@Override
 	public void printContent() throws DAOSearchException {
 		
-		String connectionString = "jdbc:derby://localhost:1527/iam;create=true";
-		String user = "IAM";
-		String password = "123";
-		
-		try {
-			Connection connection2 = DriverManager.getConnection(connectionString, user, password);		
-			PreparedStatement preparedStatement2 = connection2.prepareStatement("SELECT * from IAM.IDENTITIES");		
-			ResultSet results2 = preparedStatement2.executeQuery();
-			
-			while (results2.next()) {			
-				String uid = results2.getString("IDENTITY_UID");
-				String displayName = results2.getString("IDENTITY_DISPLAYNAME");
-				String email = results2.getString("IDENTITY_EMAIL");			
-				System.out.println(uid + " - " + displayName + " - " + email);
-			}		
-			preparedStatement2.close();
-			results2.close();
-			connection2.close();
-		} catch (SQLException e) {
+		try (Stream<Identity> identities = searchStream(null)) {
+			identities.forEach(System.out::println);
+		} catch (IllegalStateException e) {
 			System.out.println("Error during a print of a content!");
 			System.out.println(DETAILS + e.getMessage());
 			throw new DAOSearchException();
 		}
 	}
+	
+	/**
+	 * This method prepares a search statement with the criteria translated to a WHERE clause,
+	 * so the database returns only the matching rows and can use its indexes:
+	 * an identity matches, if it has the same UID or its name starts with the name in the criteria.
+	 * 
+	 * @param connection						the connection used for the search
+	 * @param criteria							the criteria of the identity to be met, null for all the identities
+	 * @return									the forward-only statement with all its parameters set
+	 * @throws SQLException						if the statement cannot be prepared
+	 */
+	private static PreparedStatement prepareSearch(Connection connection, Identity criteria) throws SQLException {
+		
+		return prepareSearch(connection, criteria, null, null, 0);
+	}
+	
+	/**
+	 * This method prepares a search statement for a page of identities.
+	 * The page continues after the cursor using a keyset condition on the sorted column and the UID,
+	 * so the database can start reading from its index at the cursor instead of skipping the previous pages.
+	 * 
+	 * @param connection						the connection used for the search
+	 * @param criteria							the criteria of the identity to be met, null for all the identities
+	 * @param sortKey							the attribute the identities are sorted by, null for no order
+	 * @param after								the last identity of the previous page, null for the first page
+	 * @param limit								the maximal number of returned rows, 0 for all the rows
+	 * @return									the forward-only statement with all its parameters set
+	 * @throws SQLException						if the statement cannot be prepared
+	 */
+	private static PreparedStatement prepareSearch(Connection connection, Identity criteria, IdentitySortKey sortKey,
+			Identity after, int limit) throws SQLException {
+		
+		List<String> conditions = new ArrayList<>();
+		List<Object> parameters = new ArrayList<>();
+		
+		if (criteria != null) {
+			Integer uid = parseUid(criteria.getUid());
+			String name = criteria.getDisplayName();
+			List<String> alternatives = new ArrayList<>();
+			if (uid != null) {
+				alternatives.add(UID_CONDITION);
+				parameters.add(uid);
+			}
+			if (name != null) {
+				alternatives.add(NAME_CONDITION);
+				parameters.add(escapeLike(name) + "%");
+			}
+			// criteria without any usable value match nothing, as in the file version
+			conditions.add(alternatives.isEmpty() ? "1 = 0" : "(" + String.join(" or ", alternatives) + ")");
+		}
+		if (after != null) {
+			conditions.add(keysetCondition(sortKey, after, parameters)); //a separate method for a keyset condition is used
+		}
+		
+		StringBuilder sql = new StringBuilder(SELECT_STATEMENT);
+		if (!conditions.isEmpty()) {
+			sql.append(" where ").append(String.join(" and ", conditions));
+		}
+		if (sortKey != null) {
+			sql.append(" order by ").append(column(sortKey));
+			if (sortKey != IdentitySortKey.UID) {
+				sql.append(", IDENTITY_UID");
+			}
+		}
+		if (limit > 0) {
+			sql.append(" fetch first ? rows only");
+			parameters.add(limit);
+		}
+		
+		PreparedStatement statement = connection.prepareStatement(sql.toString(),
+				ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+		for (int i = 0; i < parameters.size(); i++) {
+			statement.setObject(i + 1, parameters.get(i));
+		}
+		
+		return statement;
+	}
+	
+	/**
+	 * This method returns the condition for the rows after the cursor, in the order of the sort key.
+	 * Rows without a value are sorted after all the others, as the database does.
+	 * 
+	 * @param sortKey							the attribute the identities are sorted by
+	 * @param after								the last identity of the previous page
+	 * @param parameters						the parameters of the statement, the values of the condition are added
+	 * @return									the condition
+	 */
+	private static String keysetCondition(IdentitySortKey sortKey, Identity after, List<Object> parameters) {
+		
+		Integer uid = parseUid(after.getUid());
+		if (uid == null) {
+			throw new IllegalArgumentException("The cursor is not an identity from the database : " + after.getUid());
+		}
+		
+		String column = column(sortKey);
+		String value = sortKey.getValue(after);
+		if (sortKey == IdentitySortKey.UID) {
+			parameters.add(uid);
+			return "IDENTITY_UID > ?";
+		} else if (value == null) {
+			parameters.add(uid);
+			return "(" + column + " is null and IDENTITY_UID > ?)";
+		}
+		
+		parameters.add(value);
+		parameters.add(value);
+		parameters.add(uid);
+		return "(" + column + " > ? or " + column + " is null or (" + column + " = ? and IDENTITY_UID > ?))";
+	}
+	
+	/**
+	 * This method returns the column of the table, which holds the sorted attribute.
+	 * 
+	 * @param sortKey							the attribute the identities are sorted by
+	 * @return									the name of the column
+	 */
+	private static String column(IdentitySortKey sortKey) {
+		
+		switch (sortKey) {
+		case DISPLAY_NAME:
+			return "IDENTITY_DISPLAYNAME";
+		case EMAIL:
+			return "IDENTITY_EMAIL";
+		default:
+			return "IDENTITY_UID";
+		}
+	}
+	
+	/**
+	 * This method converts a UID to the number used in the database.
+	 * 
+	 * @param uid								the UID
+	 * @return									the number or null, if the UID is not a number and so cannot exist in the database
+	 */
+	private static Integer parseUid(String uid) {
+		
+		if (uid == null) {
+			return null;
+		}
+		try {
+			return Integer.valueOf(uid.trim());
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+	
+	/**
+	 * This method escapes the wildcards of a LIKE pattern, so the value is matched literally.
+	 * 
+	 * @param value								the value to escape
+	 * @return									the escaped value
+	 */
+	private static String escapeLike(String value) {
+		
+		return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+	}
+	
+	/**
+	 * This method executes a statement for every identity in a single transaction.
+	 * The updates and the deletions are sent to the database in batches, so the database is not asked once per identity.
+	 * If a statement of a batch fails, e.g. for a duplicate email, only that batch is rolled back to a savepoint
+	 * and its statements are executed one by one, so only the failing identities are reported and the others are kept.
+	 * The saves are always executed one by one, as the database returns the generated UID of a single statement only,
+	 * and every saved identity is reported and published with its UID.
+	 * If the connection fails, the whole transaction is rolled back.
+	 * The changes are published together with the commit, in the order of the commits.
+	 * 
+	 * @param type								the kind of the changes
+	 * @param sql								the statement to execute
+	 * @param identities						the identities to execute the statement for
+	 * @param setter							the setter of the parameters of the statement for an identity
+	 * @return									the result for every identity
+	 * @throws SQLException						if the transaction fails and was rolled back
+	 */
+	private BatchResult executeBatch(IdentityChange.Type type, String sql, Collection<Identity> identities, ParameterSetter setter)
+			throws SQLException {
+		
+		BatchResult result = new BatchResult();
+		List<Identity> pending = new ArrayList<>(BATCH_SIZE);
+		List<IdentityChange> changes = new ArrayList<>();
+		int keys = (type == IdentityChange.Type.SAVE) ? Statement.RETURN_GENERATED_KEYS : Statement.NO_GENERATED_KEYS;
+		
+		try (Connection connection = pool.getConnection()) {
+			// the pool restores the auto-commit, when the connection is returned
+			connection.setAutoCommit(false);
+			
+			try (PreparedStatement batch = connection.prepareStatement(sql, keys)) {
+				if (type == IdentityChange.Type.SAVE) {
+					// the generated UIDs are returned only for single statements, not for a batch
+					pending.addAll(identities);
+					executeOneByOne(type, batch, setter, pending, result, changes); //a separate method for an execution of single statements is used
+				} else {
+					for (Identity identity : identities) {
+						setter.set(batch, identity);
+						batch.addBatch();
+						pending.add(identity);
+						
+						if (pending.size() == BATCH_SIZE) {
+							executePending(type, batch, setter, pending, result, changes); //a separate method for an execution of a batch is used
+						}
+					}
+					if (!pending.isEmpty()) {
+						executePending(type, batch, setter, pending, result, changes);
+					}
+				}
+				commit(connection, changes); //a separate method for an ordered commit is used
+			} catch (SQLException e) {
+				connection.rollback();
+				throw e;
+			}
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * This method executes the pending batch of updates or deletions and records its results and its changes.
+	 * If a statement of the batch fails, the batch is undone and its statements are executed one by one.
+	 * 
+	 * @param type								the kind of the changes
+	 * @param batch								the statement with the pending batch
+	 * @param setter							the setter of the parameters of the statement for an identity
+	 * @param pending							the identities of the batch, cleared afterwards
+	 * @param result							the result to be filled
+	 * @param changes							the list, where the successful changes are added
+	 * @throws SQLException						if the batch fails for another reason than its statements
+	 */
+	private static void executePending(IdentityChange.Type type, PreparedStatement batch, ParameterSetter setter,
+			List<Identity> pending, BatchResult result, List<IdentityChange> changes) throws SQLException {
+		
+		Connection connection = batch.getConnection();
+		Savepoint savepoint = connection.setSavepoint();
+		int[] counts;
+		try {
+			counts = batch.executeBatch();
+		} catch (BatchUpdateException e) {
+			// some drivers stop at the failing statement, others abort the transaction, so the batch is undone as a whole
+			connection.rollback(savepoint);
+			batch.clearBatch();
+			executeOneByOne(type, batch, setter, pending, result, changes); //a separate method for an execution of single statements is used
+			return;
+		}
+		connection.releaseSavepoint(savepoint);
+		
+		for (int i = 0; i < pending.size(); i++) {
+			int count = (i < counts.length) ? counts[i] : Statement.EXECUTE_FAILED;
+			if (count != Statement.EXECUTE_FAILED && count != 0) {
+				changes.add(new IdentityChange(type, pending.get(i)));
+			}
+		}
+		
+		report(result, pending, counts);
+	}
+	
+	/**
+	 * This method executes the statement for every identity of a failed batch or of a save separately,
+	 * each with its own savepoint, so a failing identity is reported and undone, while the other identities are kept.
+	 * A violated constraint of the table, e.g. a duplicate email, rejects the identity, any other error fails it.
+	 * A saved identity is reported with the UID generated by the database.
+	 * 
+	 * @param type								the kind of the changes
+	 * @param statement							the statement
+	 * @param setter							the setter of the parameters of the statement for an identity
+	 * @param pending							the identities, cleared afterwards
+	 * @param result							the result to be filled
+	 * @param changes							the list, where the successful changes are added
+	 * @throws SQLException						if a savepoint cannot be set or rolled back
+	 */
+	private static void executeOneByOne(IdentityChange.Type type, PreparedStatement statement, ParameterSetter setter,
+			List<Identity> pending, BatchResult result, List<IdentityChange> changes) throws SQLException {
+		
+		Connection connection = statement.getConnection();
+		for (Identity identity : pending) {
+			Savepoint savepoint = connection.setSavepoint();
+			int count;
+			String uid = identity.getUid();
+			try {
+				setter.set(statement, identity);
+				count = statement.executeUpdate();
+				if (type == IdentityChange.Type.SAVE) {
+					uid = null;
+					try (ResultSet generated = statement.getGeneratedKeys()) {
+						if (generated != null && generated.next()) {
+							uid = generated.getString(1);
+						}
+					}
+				}
+				connection.releaseSavepoint(savepoint);
+			} catch (SQLException e) {
+				connection.rollback(savepoint);
+				// the SQL state class 23 is a violation of an integrity constraint
+				boolean violation = e.getSQLState() != null && e.getSQLState().startsWith("23");
+				result.add(identity, violation ? BatchResult.Status.REJECTED : BatchResult.Status.FAILED, e.getMessage());
+				continue;
+			}
+			
+			if (count == 0) {
+				result.add(identity, BatchResult.Status.NOT_FOUND, "there is no identity with this UID");
+			} else {
+				Identity changed = new Identity(uid, identity.getDisplayName(), identity.getEmail());
+				result.add(changed, BatchResult.Status.SUCCESS, null);
+				changes.add(new IdentityChange(type, changed));
+			}
+		}
+		pending.clear();
+	}
+	
+	/**
+	 * This method commits a single change and publishes it.
+	 * 
+	 * @param connection						the connection with the uncommitted change
+	 * @param type								the kind of the change
+	 * @param identity							the changed identity
+	 * @throws SQLException						if the transaction cannot be committed
+	 */
+	private void commit(Connection connection, IdentityChange.Type type, Identity identity) throws SQLException {
+		commit(connection, Collections.singletonList(new IdentityChange(type, identity)));
+	}
+	
+	/**
+	 * This method commits the transaction of a connection and publishes its changes.
+	 * No other write of this DAO commits in between, so the changes are numbered in the order of the commits
+	 * and a replay of the change log ends in the same state as the table.
+	 * 
+	 * @param connection						the connection with the uncommitted changes
+	 * @param changes							the changes of the transaction, in their order
+	 * @throws SQLException						if the transaction cannot be committed
+	 */
+	private void commit(Connection connection, List<IdentityChange> changes) throws SQLException {
+		
+		synchronized (commitLock) {
+			connection.commit();
+			publisher.publish(changes);
+		}
+	}
+	
+	/**
+	 * This method records the results of an executed batch, one update count for every identity.
+	 * 
+	 * @param result							the result to be filled
+	 * @param executed							the identities of the batch, cleared afterwards
+	 * @param counts							the update counts returned by the database
+	 */
+	private static void report(BatchResult result, List<Identity> executed, int[] counts) {
+		
+		for (int i = 0; i < executed.size(); i++) {
+			int count = (i < counts.length) ? counts[i] : Statement.EXECUTE_FAILED;
+			
+			if (count == Statement.EXECUTE_FAILED) {
+				result.add(executed.get(i), BatchResult.Status.FAILED, null);
+			} else if (count == 0) {
+				result.add(executed.get(i), BatchResult.Status.NOT_FOUND, "there is no identity with this UID");
+			} else {
+				result.add(executed.get(i), BatchResult.Status.SUCCESS, null);
+			}
+		}
+		executed.clear();
+	}
+	
+	/**
+	 * This is an Interface for setting the parameters of a statement for an identity.
+	 */
+	private interface ParameterSetter {
+		
+		/**
+		 * This method sets the parameters of the statement.
+		 * 
+		 * @param statement						the statement
+		 * @param identity						the identity providing the values
+		 * @throws SQLException					if a parameter cannot be set
+		 */
+		void set(PreparedStatement statement, Identity identity) throws SQLException;
+	}
+	
+	/**
+	 * This method reads an identity from the current row of a result set.
+	 * 
+	 * @param row								the result set positioned at a row
+	 * @return									the read identity
+	 * @throws SQLException						if the row cannot be read
+	 */
+	private static Identity readIdentity(ResultSet row) throws SQLException {
+		
+		String uid = row.getString("IDENTITY_UID");
+		String displayName = row.getString("IDENTITY_DISPLAYNAME");
+		String email = row.getString("IDENTITY_EMAIL");
+		
+		return new Identity(uid, displayName, email);
+	}
+	
+	/**
+	 * This method closes a statement or a connection and ignores any error, used when an error is already being reported.
+	 * 
+	 * @param statement							the statement or the connection to close, may be null
+	 */
+	private static void closeQuietly(AutoCloseable statement) {
+		
+		if (statement != null) {
+			try {
+				statement.close();
+			} catch (Exception e) {
+				// the original error is reported instead
+			}
+		}
+	}
+	
+	/**
+	 * This class walks a result set row by row for a stream search.
+	 * A database error during the walk is reported as an IllegalStateException, as a stream cannot throw checked exceptions.
+	 */
+	private static class IdentitySpliterator extends Spliterators.AbstractSpliterator<Identity> {
+		
+		private final ResultSet cursor;
+		
+		/**
+		 * This is a Constructor for an IdentitySpliterator class.
+		 * 
+		 * @param cursor						the result set to walk
+		 */
+		IdentitySpliterator(ResultSet cursor) {
+			super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+			this.cursor = cursor;
+		}
+		
+		/* (non-Javadoc)
+		 * @see java.util.Spliterator#tryAdvance(java.util.function.Consumer)
+		 */
+		@Override
+		public boolean tryAdvance(Consumer<? super Identity> action) {
+			
+			try {
+				if (!cursor.next()) {
+					return false;
+				}
+				action.accept(readIdentity(cursor));
+				return true;
+			} catch (SQLException e) {
+				throw new IllegalStateException("Error during a search of data! " + DETAILS + e.getMessage(), e);
+			}
+		}
+	}
+	
+	/**
+	 * This class closes a result set, its statement and returns its connection to the pool, when a stream search is closed.
+	 */
+	private static class CursorCloser implements Runnable {
+		
+		private final Connection connection;
+		private final PreparedStatement statement;
+		private final ResultSet cursor;
+		
+		/**
+		 * This is a Constructor for a CursorCloser class.
+		 * 
+		 * @param connection					the connection of the stream search
+		 * @param statement						the statement of the stream search
+		 * @param cursor						the result set of the stream search
+		 */
+		CursorCloser(Connection connection, PreparedStatement statement, ResultSet cursor) {
+			this.connection = connection;
+			this.statement = statement;
+			this.cursor = cursor;
+		}
+		
+		/* (non-Javadoc)
+		 * @see java.lang.Runnable#run()
+		 */
+		@Override
+		public void run() {
+			
+			try {
+				cursor.close();
+			} catch (SQLException e) {
+				System.out.println("Error during a closure of resources!");
+				System.out.println(DETAILS + e.getMessage());
+			}
+			closeQuietly(statement);
+			closeQuietly(connection);
+		}
+	}
 }
@@ -0,0 +1,278 @@
+package fr.epita.iam.services;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import fr.epita.iam.datamodel.Identity;
+
+/**
+ * This class keeps identities in an append-only journal file.
+ * Every save or update appends a single identity record and every deletion appends a tombstone,
+ * so a write does not depend on the size of the file. The appended records are forced to the disk once per write.
+ * When the file is loaded, the records are replayed to rebuild the identities.
+ *
+ * Replaced and deleted records stay in the file as garbage. Once their ratio passes the configured threshold,
+ * a background compactor rewrites the file with only the current identities.
+ * The journal uses the same text format as the original identity file, so an existing file can be used directly.
+ *
+ * @author Lenka Horvathova
+ */
+public class JournalIdentityStorage implements IdentityStorage {
+
+	private static final String DETAILS = "Details: ";
+
+	/** the default ratio of garbage records, which triggers a compaction */
+	public static final double DEFAULT_GARBAGE_THRESHOLD = 0.5;
+
+	/** the number of records, which the file has to reach before it is compacted at all */
+	private static final int MIN_COMPACTION_RECORDS = 1000;
+
+	private final File file;
+	private final double garbageThreshold;
+	private final Object lock = new Object();
+
+	private FileOutputStream output;
+	private PrintWriter printer;
+	private ExecutorService compactor;
+	private int records;
+	private List<IdentityChange> pending;
+
+	/**
+	 * This is a Constructor for a JournalIdentityStorage class with the default garbage threshold.
+	 *
+	 * @param filePath				a path to the journal file
+	 */
+	public JournalIdentityStorage(String filePath) {
+
+		this(filePath, DEFAULT_GARBAGE_THRESHOLD);
+	}
+
+	/**
+	 * This is a Constructor for a JournalIdentityStorage class.
+	 *
+	 * @param filePath				a path to the journal file
+	 * @param garbageThreshold		the ratio (between 0 and 1) of replaced and deleted records in the file,
+	 * 								above which the file is compacted
+	 */
+	public JournalIdentityStorage(String filePath, double garbageThreshold) {
+
+		if (garbageThreshold <= 0 || garbageThreshold >= 1) {
+			throw new IllegalArgumentException("The garbage threshold has to be between 0 and 1 : " + garbageThreshold);
+		}
+		this.file = new File(filePath);
+		this.garbageThreshold = garbageThreshold;
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.epita.iam.services.IdentityStorage#getFile()
+	 */
+	@Override
+	public File getFile() {
+		return file;
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.epita.iam.services.IdentityStorage#load()
+	 */
+	@Override
+	public void load(IdentityStore store) throws IOException {
+
+		close(); // a running compaction has to finish before the file is read again
+
+		synchronized (lock) {
+			records = IdentityTextFormat.load(file, store);
+			openAppend(); //a separate method for an opening of the journal is used
+			compactor = Executors.newSingleThreadExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "identity-journal-compactor");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.epita.iam.services.IdentityStorage#write()
+	 */
+	@Override
+	public void write(List<IdentityChange> changes, IdentityStore store) throws IOException {
+
+		synchronized (lock) {
+			if (printer == null) {
+				throw new IOException("The journal " + file.getAbsolutePath() + " is not loaded.");
+			}
+
+			for (IdentityChange change : changes) {
+				printChange(printer, change); //a separate method for a print of a change is used
+			}
+			printer.flush();
+			IdentityTextFormat.checkError(printer, file);
+			output.getChannel().force(false);
+
+			records += changes.size();
+			if (pending != null) {
+				pending.addAll(changes);
+			} else if (needsCompaction(store.size())) {
+				// the store only holds references, so the snapshot is cheap and the heavy work is left to the compactor
+				List<Identity> snapshot = new ArrayList<>(store.values());
+				pending = new ArrayList<>();
+				compactor.execute(() -> compact(snapshot));
+			}
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.epita.iam.services.IdentityStorage#close()
+	 */
+	@Override
+	public void close() throws IOException {
+
+		ExecutorService runningCompactor;
+		synchronized (lock) {
+			runningCompactor = compactor;
+			compactor = null;
+		}
+
+		if (runningCompactor != null) {
+			runningCompactor.shutdown();
+			try {
+				runningCompactor.awaitTermination(1, TimeUnit.MINUTES);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		synchronized (lock) {
+			if (printer != null) {
+				printer.close();
+				printer = null;
+				output = null;
+			}
+		}
+	}
+
+	/**
+	 * Garbage Ratio Getter : This method returns the ratio of replaced and deleted records in the file.
+	 *
+	 * @param live					the number of current identities
+	 * @return						the ratio between 0 and 1
+	 */
+	public double getGarbageRatio(int live) {
+
+		synchronized (lock) {
+			return (records == 0) ? 0 : ((double) (records - live) / records);
+		}
+	}
+
+	/**
+	 * This method checks, if the file is big enough and contains too much garbage.
+	 *
+	 * @param live					the number of current identities
+	 * @return						true, if the file should be compacted;
+	 * 								false, otherwise
+	 */
+	private boolean needsCompaction(int live) {
+		return records >= MIN_COMPACTION_RECORDS && getGarbageRatio(live) > garbageThreshold;
+	}
+
+	/**
+	 * This method rewrites the file with only the current identities.
+	 * It runs on the background compactor. The snapshot is written to a temporary file without blocking writers,
+	 * then the changes appended in the meantime are added and the temporary file replaces the journal.
+	 *
+	 * @param snapshot				the identities at the moment the compaction was triggered
+	 */
+	private void compact(List<Identity> snapshot) {
+
+		File tmpFile = IdentityTextFormat.tmpFile(file);
+		try {
+			try (PrintWriter tmpPrinter = new PrintWriter(new BufferedWriter(new FileWriter(tmpFile)))) {
+				for (Identity identity : snapshot) {
+					IdentityTextFormat.printIdentity(tmpPrinter, identity);
+				}
+				IdentityTextFormat.checkError(tmpPrinter, tmpFile);
+			}
+
+			synchronized (lock) {
+				try (FileOutputStream tmpOutput = new FileOutputStream(tmpFile, true);
+						PrintWriter tmpPrinter = new PrintWriter(new BufferedWriter(new OutputStreamWriter(tmpOutput)))) {
+					for (IdentityChange change : pending) {
+						printChange(tmpPrinter, change);
+					}
+					tmpPrinter.flush();
+					IdentityTextFormat.checkError(tmpPrinter, tmpFile);
+					tmpOutput.getChannel().force(false);
+				}
+
+				printer.close();
+				printer = null;
+				Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+				openAppend();
+				records = snapshot.size() + pending.size();
+			}
+		} catch (IOException e) {
+			System.out.println("Error during a compaction of a journal!");
+			System.out.println(DETAILS + e.getMessage());
+			tmpFile.delete();
+		} finally {
+			synchronized (lock) {
+				pending = null;
+				if (printer == null && compactor != null) {
+					reopen();
+				}
+			}
+		}
+	}
+
+	/**
+	 * This method opens the journal for appending.
+	 *
+	 * @throws IOException			if the journal cannot be opened
+	 */
+	private void openAppend() throws IOException {
+
+		output = new FileOutputStream(file, true);
+		printer = new PrintWriter(new BufferedWriter(new OutputStreamWriter(output)));
+	}
+
+	/**
+	 * This method opens the journal for appending again, after a failed compaction.
+	 */
+	private void reopen() {
+
+		try {
+			openAppend();
+		} catch (IOException e) {
+			System.out.println("Error during a reopening of a journal!");
+			System.out.println(DETAILS + e.getMessage());
+			printer = null;
+			output = null;
+		}
+	}
+
+	/**
+	 * This method appends a record for the given change.
+	 *
+	 * @param target				the printer used for writing the file
+	 * @param change				the change to record
+	 */
+	private static void printChange(PrintWriter target, IdentityChange change) {
+
+		if (change.getType() == IdentityChange.Type.DELETE) {
+			IdentityTextFormat.printTombstone(target, change.getIdentity().getUid());
+		} else {
+			IdentityTextFormat.printIdentity(target, change.getIdentity());
+		}
+	}
+}
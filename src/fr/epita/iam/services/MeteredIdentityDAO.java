@@ -0,0 +1,387 @@
+package fr.epita.iam.services;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import fr.epita.iam.datamodel.Identity;
+import fr.epita.iam.exceptions.DAOClosureException;
+import fr.epita.iam.exceptions.DAODeleteException;
+import fr.epita.iam.exceptions.DAOInitializationException;
+import fr.epita.iam.exceptions.DAOSaveException;
+import fr.epita.iam.exceptions.DAOSearchException;
+import fr.epita.iam.exceptions.DAOUpdateException;
+
+/**
+ * This class measures the calls of another IdentityDAO.
+ * It implements an IdentityDAO interface and passes every call to the wrapped DAO.
+ *
+ * For every operation, it records the number of calls, the number of failed calls, the durations (see OperationMetrics)
+ * and, for the searches, the number of returned identities. The metrics can be published as JMX MBeans
+ * named 'fr.epita.iam:type=IdentityDAO,name=...,operation=...' and written periodically to a file.
+ *
+ * @author Lenka Horvathova
+ */
+public class MeteredIdentityDAO implements IdentityDAO {
+
+	private static final String DETAILS = "Details: ";
+
+	private final IdentityDAO dao;
+	private final Map<String, OperationMetrics> metrics = new LinkedHashMap<>();
+	private final OperationMetrics saveMetrics = add("save");
+	private final OperationMetrics searchMetrics = add("search");
+	private final OperationMetrics searchStreamMetrics = add("searchStream");
+	private final OperationMetrics searchPageMetrics = add("searchPage");
+	private final OperationMetrics findByEmailMetrics = add("findByEmail");
+	private final OperationMetrics updateMetrics = add("update");
+	private final OperationMetrics deleteMetrics = add("delete");
+	private final OperationMetrics saveAllMetrics = add("saveAll");
+	private final OperationMetrics updateAllMetrics = add("updateAll");
+	private final OperationMetrics deleteAllMetrics = add("deleteAll");
+
+	private final List<ObjectName> registered = new ArrayList<>();
+	private ScheduledExecutorService snapshots;
+
+	/**
+	 * This is a Constructor for a MeteredIdentityDAO class.
+	 *
+	 * @param dao					the DAO to be measured
+	 */
+	public MeteredIdentityDAO(IdentityDAO dao) {
+		this.dao = dao;
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.epita.iam.services.IdentityDAO#save()
+	 */
+	@Override
+	public void save(Identity identity) throws DAOSaveException {
+
+		measure(saveMetrics, () -> {
+			dao.save(identity);
+			return null;
+		});
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.epita.iam.services.IdentityDAO#search()
+	 */
+	@Override
+	public List<Identity> search(Identity criteria) throws DAOSearchException {
+
+		List<Identity> identities = measure(searchMetrics, () -> dao.search(criteria));
+		searchMetrics.recordResultSize(identities.size());
+
+		return identities;
+	}
+
+	/**
+	 * This is a search method that returns the identities that met criteria one by one.
+	 * The duration covers only the opening of the stream, the number of identities is recorded, when the stream is closed.
+	 *
+	 * @see fr.epita.iam.services.IdentityDAO#searchStream(Identity)
+	 */
+	@Override
+	public Stream<Identity> searchStream(Identity criteria) throws DAOSearchException {
+
+		Stream<Identity> identities = measure(searchStreamMetrics, () -> dao.searchStream(criteria));
+		LongAdder size = new LongAdder();
+		AtomicBoolean closed = new AtomicBoolean();
+
+		return identities.peek(identity -> size.increment()).onClose(() -> {
+			if (closed.compareAndSet(false, true)) {
+				searchStreamMetrics.recordResultSize(size.sum());
+			}
+		});
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.epita.iam.services.IdentityDAO#searchPage()
+	 */
+	@Override
+	public IdentityPage searchPage(Identity criteria, IdentitySortKey sortKey, Identity after, int limit)
+			throws DAOSearchException {
+
+		IdentityPage page = measure(searchPageMetrics, () -> dao.searchPage(criteria, sortKey, after, limit));
+		searchPageMetrics.recordResultSize(page.getIdentities().size());
+
+		return page;
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.epita.iam.services.IdentityDAO#findByEmail()
+	 */
+	@Override
+	public Identity findByEmail(String email) throws DAOSearchException {
+
+		Identity identity = measure(findByEmailMetrics, () -> dao.findByEmail(email));
+		findByEmailMetrics.recordResultSize((identity == null) ? 0 : 1);
+
+		return identity;
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.epita.iam.services.IdentityDAO#update()
+	 */
+	@Override
+	public void update(Identity identity) throws DAOUpdateException {
+
+		measure(updateMetrics, () -> {
+			dao.update(identity);
+			return null;
+		});
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.epita.iam.services.IdentityDAO#delete()
+	 */
+	@Override
+	public void delete(Identity identity) throws DAODeleteException {
+
+		measure(deleteMetrics, () -> {
+			dao.delete(identity);
+			return null;
+		});
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.epita.iam.services.IdentityDAO#saveAll()
+	 */
+	@Override
+	public BatchResult saveAll(Collection<Identity> identities) throws DAOSaveException {
+
+		return measure(saveAllMetrics, () -> dao.saveAll(identities));
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.epita.iam.services.IdentityDAO#updateAll()
+	 */
+	@Override
+	public BatchResult updateAll(Collection<Identity> identities) throws DAOUpdateException {
+
+		return measure(updateAllMetrics, () -> dao.updateAll(identities));
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.epita.iam.services.IdentityDAO#deleteAll()
+	 */
+	@Override
+	public BatchResult deleteAll(Collection<Identity> identities) throws DAODeleteException {
+
+		return measure(deleteAllMetrics, () -> dao.deleteAll(identities));
+	}
+
+	/**
+	 * This method stops the snapshots, unregisters the MBeans and closes the wrapped DAO.
+	 *
+	 * @see fr.epita.iam.services.IdentityDAO#closeResources()
+	 */
+	@Override
+	public void closeResources() throws DAOClosureException {
+
+		stopSnapshots();
+		unregisterMBeans();
+		dao.closeResources();
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.epita.iam.services.IdentityDAO#resetToOriginal()
+	 */
+	@Override
+	public void resetToOriginal() throws DAOInitializationException {
+		dao.resetToOriginal();
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.epita.iam.services.IdentityDAO#printContent()
+	 */
+	@Override
+	public void printContent() throws DAOSearchException {
+		dao.printContent();
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.epita.iam.services.IdentityDAO#getChangePublisher()
+	 */
+	@Override
+	public IdentityChangePublisher getChangePublisher() {
+		return dao.getChangePublisher();
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.epita.iam.services.IdentityDAO#isSoleWriter()
+	 */
+	@Override
+	public boolean isSoleWriter() {
+		return dao.isSoleWriter();
+	}
+
+	/**
+	 * Metrics Getter : This method returns the metrics of all the operations.
+	 *
+	 * @return						the unmodifiable map of the metrics by the name of the operation
+	 */
+	public Map<String, OperationMetrics> getMetrics() {
+		return Collections.unmodifiableMap(metrics);
+	}
+
+	/**
+	 * This method publishes the metrics of every operation as an MBean in the platform MBean server.
+	 *
+	 * @param name					the name distinguishing this DAO from the others, e.g. 'file' or 'database'
+	 * @throws JMException			if an MBean cannot be registered
+	 */
+	public synchronized void registerMBeans(String name) throws JMException {
+
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		for (OperationMetrics operation : metrics.values()) {
+			ObjectName objectName = new ObjectName("fr.epita.iam:type=IdentityDAO,name=" + ObjectName.quote(name)
+					+ ",operation=" + operation.getName());
+			server.registerMBean(operation, objectName);
+			registered.add(objectName);
+		}
+	}
+
+	/**
+	 * This method removes the published MBeans.
+	 */
+	public synchronized void unregisterMBeans() {
+
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		for (ObjectName objectName : registered) {
+			try {
+				server.unregisterMBean(objectName);
+			} catch (JMException e) {
+				System.out.println("Error during an unregistration of metrics!");
+				System.out.println(DETAILS + e.getMessage());
+			}
+		}
+		registered.clear();
+	}
+
+	/**
+	 * This method starts writing a snapshot of the metrics to the end of the file periodically, on a background thread.
+	 *
+	 * @param file					the file the snapshots are appended to
+	 * @param periodMillis			the time between two snapshots in milliseconds
+	 */
+	public synchronized void startSnapshots(File file, long periodMillis) {
+
+		stopSnapshots();
+		snapshots = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "identity-metrics-snapshot");
+			thread.setDaemon(true);
+			return thread;
+		});
+		snapshots.scheduleAtFixedRate(() -> {
+			try {
+				writeSnapshot(file); //a separate method for a write of a snapshot is used
+			} catch (IOException e) {
+				System.out.println("Error during a write of metrics!");
+				System.out.println(DETAILS + e.getMessage());
+			}
+		}, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * This method stops the periodic snapshots, if they are running.
+	 */
+	public synchronized void stopSnapshots() {
+
+		if (snapshots != null) {
+			snapshots.shutdown();
+			snapshots = null;
+		}
+	}
+
+	/**
+	 * This method appends a snapshot of the metrics of all the operations to the end of the file.
+	 *
+	 * @param file					the file the snapshot is appended to
+	 * @throws IOException			if the file cannot be written
+	 */
+	public void writeSnapshot(File file) throws IOException {
+
+		try (PrintWriter printer = new PrintWriter(new BufferedWriter(new FileWriter(file, true)))) {
+			printer.println("--- Metrics " + new Date() + " ---");
+			for (OperationMetrics operation : metrics.values()) {
+				printer.println(operation);
+			}
+			IdentityTextFormat.checkError(printer, file);
+		}
+	}
+
+	/**
+	 * This method creates the metrics of an operation.
+	 *
+	 * @param name					the name of the operation
+	 * @return						the metrics
+	 */
+	private OperationMetrics add(String name) {
+
+		OperationMetrics operation = new OperationMetrics(name);
+		metrics.put(name, operation);
+
+		return operation;
+	}
+
+	/**
+	 * This method runs a call of the wrapped DAO and records its duration and its failure.
+	 *
+	 * @param operation				the metrics of the operation
+	 * @param call					the call of the DAO
+	 * @param <T>					the type of the result
+	 * @param <E>					the type of the exception of the DAO
+	 * @return						the result of the call
+	 * @throws E					the exception of the DAO
+	 */
+	private static <T, E extends Exception> T measure(OperationMetrics operation, DAOCall<T, E> call) throws E {
+
+		long start = System.nanoTime();
+		boolean failed = true;
+		try {
+			T result = call.call();
+			failed = false;
+			return result;
+		} finally {
+			operation.record(System.nanoTime() - start, failed);
+		}
+	}
+
+	/**
+	 * This is an Interface for a call of the wrapped DAO.
+	 *
+	 * @param <T>					the type of the result
+	 * @param <E>					the type of the exception of the DAO
+	 */
+	private interface DAOCall<T, E extends Exception> {
+
+		/**
+		 * This method calls the DAO.
+		 *
+		 * @return					the result of the call
+		 * @throws E				the exception of the DAO
+		 */
+		T call() throws E;
+	}
+}
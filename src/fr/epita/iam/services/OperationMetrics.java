@@ -0,0 +1,255 @@
+package fr.epita.iam.services;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class records the number of calls, the failures, the durations and the result sizes of a single DAO operation.
+ *
+ * The durations are counted in a histogram with buckets growing by powers of two, each split into 8 sub-buckets,
+ * so every duration is kept with a precision of about 12 % in a fixed small array.
+ * Recording a call only increments a few counters without any lock, so it can be done on every call.
+ * The percentiles are computed from the histogram, when they are read.
+ *
+ * @author Lenka Horvathova
+ */
+public class OperationMetrics implements OperationMetricsMBean {
+
+	/** the number of bits of a duration used to choose a sub-bucket */
+	private static final int SUB_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BITS;
+	private static final int BUCKETS = (Long.SIZE - SUB_BITS + 1) * SUB_BUCKETS;
+
+	private final String name;
+	private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder errors = new LongAdder();
+	private final LongAdder totalNanos = new LongAdder();
+	private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+	private final LongAdder results = new LongAdder();
+	private final LongAdder totalResultSize = new LongAdder();
+	private final LongAccumulator maxResultSize = new LongAccumulator(Math::max, 0);
+
+	/**
+	 * This is a Constructor for an OperationMetrics class.
+	 *
+	 * @param name					the name of the operation
+	 */
+	public OperationMetrics(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * This method records a finished call.
+	 *
+	 * @param nanos					the duration of the call in nanoseconds
+	 * @param failed				true, if the call failed
+	 */
+	public void record(long nanos, boolean failed) {
+
+		long duration = Math.max(0, nanos);
+		histogram.incrementAndGet(bucket(duration));
+		count.increment();
+		totalNanos.add(duration);
+		maxNanos.accumulate(duration);
+		if (failed) {
+			errors.increment();
+		}
+	}
+
+	/**
+	 * This method records the number of identities returned by a call.
+	 *
+	 * @param size					the number of identities
+	 */
+	public void recordResultSize(long size) {
+
+		results.increment();
+		totalResultSize.add(size);
+		maxResultSize.accumulate(size);
+	}
+
+	/**
+	 * Name Getter : This method returns the name of the operation.
+	 *
+	 * @return						the name
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.epita.iam.services.OperationMetricsMBean#getCount()
+	 */
+	@Override
+	public long getCount() {
+		return count.sum();
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.epita.iam.services.OperationMetricsMBean#getErrorCount()
+	 */
+	@Override
+	public long getErrorCount() {
+		return errors.sum();
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.epita.iam.services.OperationMetricsMBean#getMeanMicros()
+	 */
+	@Override
+	public double getMeanMicros() {
+
+		long calls = count.sum();
+		return (calls == 0) ? 0 : (totalNanos.sum() / 1000.0 / calls);
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.epita.iam.services.OperationMetricsMBean#getP50Micros()
+	 */
+	@Override
+	public long getP50Micros() {
+		return percentileMicros(0.50);
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.epita.iam.services.OperationMetricsMBean#getP95Micros()
+	 */
+	@Override
+	public long getP95Micros() {
+		return percentileMicros(0.95);
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.epita.iam.services.OperationMetricsMBean#getP99Micros()
+	 */
+	@Override
+	public long getP99Micros() {
+		return percentileMicros(0.99);
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.epita.iam.services.OperationMetricsMBean#getMaxMicros()
+	 */
+	@Override
+	public long getMaxMicros() {
+		return TimeUnit.NANOSECONDS.toMicros(maxNanos.get());
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.epita.iam.services.OperationMetricsMBean#getMeanResultSize()
+	 */
+	@Override
+	public double getMeanResultSize() {
+
+		long calls = results.sum();
+		return (calls == 0) ? 0 : ((double) totalResultSize.sum() / calls);
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.epita.iam.services.OperationMetricsMBean#getMaxResultSize()
+	 */
+	@Override
+	public long getMaxResultSize() {
+		return maxResultSize.get();
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.epita.iam.services.OperationMetricsMBean#reset()
+	 */
+	@Override
+	public void reset() {
+
+		for (int i = 0; i < BUCKETS; i++) {
+			histogram.set(i, 0);
+		}
+		count.reset();
+		errors.reset();
+		totalNanos.reset();
+		maxNanos.reset();
+		results.reset();
+		totalResultSize.reset();
+		maxResultSize.reset();
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+
+		return name + " : count=" + getCount() + ", errors=" + getErrorCount()
+			 + ", mean=" + String.format("%.1f", getMeanMicros()) + "us, p50=" + getP50Micros() + "us, p95=" + getP95Micros()
+			 + "us, p99=" + getP99Micros() + "us, max=" + getMaxMicros() + "us"
+			 + ((results.sum() == 0) ? "" : (", mean size=" + String.format("%.1f", getMeanResultSize())
+			 + ", max size=" + getMaxResultSize()));
+	}
+
+	/**
+	 * This method returns the duration, which the given part of the calls did not exceed.
+	 *
+	 * @param part					the part of the calls, between 0 and 1
+	 * @return						the upper bound of the bucket of the percentile, in microseconds
+	 */
+	private long percentileMicros(double part) {
+
+		long total = 0;
+		long[] counts = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++) {
+			counts[i] = histogram.get(i);
+			total += counts[i];
+		}
+		if (total == 0) {
+			return 0;
+		}
+
+		long rank = (long) Math.ceil(part * total);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts[i];
+			if (seen >= rank) {
+				// the bucket cannot be longer than the longest call
+				long upper = (i + 1 < BUCKETS) ? (lowerBound(i + 1) - 1) : Long.MAX_VALUE;
+				return TimeUnit.NANOSECONDS.toMicros(Math.min(upper, maxNanos.get()));
+			}
+		}
+
+		return getMaxMicros();
+	}
+
+	/**
+	 * This method returns the bucket of a duration.
+	 *
+	 * @param nanos					the duration, not negative
+	 * @return						the position of the bucket
+	 */
+	private static int bucket(long nanos) {
+
+		if (nanos < SUB_BUCKETS) {
+			return (int) nanos;
+		}
+		int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(nanos);
+		int sub = (int) (nanos >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+
+		return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+	}
+
+	/**
+	 * This method returns the shortest duration of a bucket.
+	 *
+	 * @param bucket				the position of the bucket
+	 * @return						the shortest duration in nanoseconds
+	 */
+	private static long lowerBound(int bucket) {
+
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+		long sub = bucket % SUB_BUCKETS;
+
+		return (SUB_BUCKETS + sub) << (exponent - SUB_BITS);
+	}
+}
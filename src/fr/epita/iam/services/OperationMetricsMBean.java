@@ -0,0 +1,78 @@
+package fr.epita.iam.services;
+
+/**
+ * This is an Interface of the metrics of a single DAO operation, as they are published through JMX.
+ * All the times are in microseconds.
+ *
+ * @author Lenka Horvathova
+ */
+public interface OperationMetricsMBean {
+
+	/**
+	 * Count Getter : This method returns the number of finished calls, including the failed ones.
+	 *
+	 * @return						the number of calls
+	 */
+	public long getCount();
+
+	/**
+	 * ErrorCount Getter : This method returns the number of failed calls.
+	 *
+	 * @return						the number of failed calls
+	 */
+	public long getErrorCount();
+
+	/**
+	 * MeanMicros Getter : This method returns the average duration of a call.
+	 *
+	 * @return						the average duration
+	 */
+	public double getMeanMicros();
+
+	/**
+	 * P50Micros Getter : This method returns the median duration of a call.
+	 *
+	 * @return						the duration, which half of the calls did not exceed
+	 */
+	public long getP50Micros();
+
+	/**
+	 * P95Micros Getter : This method returns the 95th percentile of the duration of a call.
+	 *
+	 * @return						the duration, which 95 % of the calls did not exceed
+	 */
+	public long getP95Micros();
+
+	/**
+	 * P99Micros Getter : This method returns the 99th percentile of the duration of a call.
+	 *
+	 * @return						the duration, which 99 % of the calls did not exceed
+	 */
+	public long getP99Micros();
+
+	/**
+	 * MaxMicros Getter : This method returns the longest duration of a call.
+	 *
+	 * @return						the longest duration
+	 */
+	public long getMaxMicros();
+
+	/**
+	 * MeanResultSize Getter : This method returns the average number of identities returned by a call.
+	 *
+	 * @return						the average number of identities, 0 for operations returning no identities
+	 */
+	public double getMeanResultSize();
+
+	/**
+	 * MaxResultSize Getter : This method returns the largest number of identities returned by a call.
+	 *
+	 * @return						the largest number of identities
+	 */
+	public long getMaxResultSize();
+
+	/**
+	 * This method clears all the metrics.
+	 */
+	public void reset();
+}
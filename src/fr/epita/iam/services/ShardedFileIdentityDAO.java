@@ -0,0 +1,588 @@
+package fr.epita.iam.services;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import fr.epita.iam.datamodel.Identity;
+import fr.epita.iam.exceptions.DAOClosureException;
+import fr.epita.iam.exceptions.DAODeleteException;
+import fr.epita.iam.exceptions.DAOInitializationException;
+import fr.epita.iam.exceptions.DAOSaveException;
+import fr.epita.iam.exceptions.DAOSearchException;
+import fr.epita.iam.exceptions.DAOUpdateException;
+
+/**
+ * This class manages identities spread over several files, called shards.
+ * It implements an IdentityDAO interface.
+ *
+ * Every identity belongs to the shard given by the hash of its UID and every shard is a separate FileIdentityDAO.
+ * A save, an update or a deletion touches only the shard of the identity, so only a part of the identities
+ * has to be written. Searches and bulk operations are run on all the concerned shards at once
+ * on a fork-join pool and their results are merged.
+ *
+ * A bulk operation is atomic within every shard, but not across the shards:
+ * if one shard fails, the changes of the other shards are kept.
+ *
+ * An email is unique across all the shards. Every shard checks only its own identities, so the saves and the updates
+ * are checked against the email indexes of all the shards first, one after another, while the deletions
+ * and the searches still run at the same time.
+ *
+ * @author Lenka Horvathova
+ */
+public class ShardedFileIdentityDAO implements IdentityDAO {
+
+	private static final String DETAILS = "Details: ";
+	private static final String EMAIL_TAKEN = "an identity with this email already exists";
+
+	private final List<FileIdentityDAO> shards = new ArrayList<>();
+	private final ForkJoinPool pool;
+	private final Object emailLock = new Object();
+
+	/**
+	 * This is a Constructor for a ShardedFileIdentityDAO class with shards in text files.
+	 * The shards are kept next to the given file, e.g. 'identities.0.txt', 'identities.1.txt', etc.
+	 *
+	 * @param filePath			a path to the file with identities, which is split into the shards
+	 * @param shardCount		the number of shards
+	 */
+	public ShardedFileIdentityDAO(String filePath, int shardCount) {
+
+		this(textStorages(filePath, shardCount));
+	}
+
+	/**
+	 * This is a Constructor for a ShardedFileIdentityDAO class working with the given storages, one for every shard.
+	 * The storages must always be given in the same order, as an identity is looked up by the position of its shard.
+	 *
+	 * @param storages			the storages of the shards
+	 */
+	public ShardedFileIdentityDAO(List<? extends IdentityStorage> storages) {
+
+		if (storages.isEmpty()) {
+			throw new IllegalArgumentException("There has to be at least one shard.");
+		}
+		for (IdentityStorage storage : storages) {
+			shards.add(new FileIdentityDAO(storage));
+		}
+		this.pool = new ForkJoinPool(Math.min(storages.size(), Runtime.getRuntime().availableProcessors()));
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.epita.iam.services.IdentityDAO#save()
+	 */
+	@Override
+	public void save(Identity identity) throws DAOSaveException {
+
+		synchronized (emailLock) {
+			boolean taken;
+			try {
+				taken = isEmailTaken(identity, new HashMap<>()); //a separate method for a check of an email in all the shards is used
+			} catch (DAOSearchException e) {
+				throw new DAOSaveException();
+			}
+			if (taken) {
+				System.out.println("Error during a save of data!");
+				System.out.println(DETAILS + EMAIL_TAKEN + " : " + identity.getUid());
+				DAOSaveException exception = new DAOSaveException();
+				exception.setFaultObject(identity);
+				throw exception;
+			}
+			shardOf(identity.getUid()).save(identity);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.epita.iam.services.IdentityDAO#search()
+	 */
+	@Override
+	public List<Identity> search(Identity criteria) throws DAOSearchException {
+
+		// a search only by a UID is sent only to its shard
+		if (criteria != null && criteria.getDisplayName() == null) {
+			return shardOf(criteria.getUid()).search(criteria);
+		}
+
+		List<Identity> identities = new ArrayList<>();
+		try {
+			for (List<Identity> found : onAllShards(shard -> shard.search(criteria))) {
+				identities.addAll(found);
+			}
+		} catch (Exception e) {
+			System.out.println("Error during a search of data!");
+			System.out.println(DETAILS + e.getMessage());
+			throw new DAOSearchException();
+		}
+
+		return identities;
+	}
+
+	/**
+	 * This is a search method that returns the identities that met criteria one by one, shard after shard.
+	 * Every shard is opened only when the previous one is finished and its stream holds the read lock of the shard
+	 * until then. A failure of a shard is reported as an IllegalStateException, as a stream cannot throw checked exceptions.
+	 *
+	 * @see fr.epita.iam.services.IdentityDAO#searchStream(Identity)
+	 */
+	@Override
+	public Stream<Identity> searchStream(Identity criteria) throws DAOSearchException {
+
+		return shards.stream().flatMap(shard -> {
+			try {
+				return shard.searchStream(criteria);
+			} catch (DAOSearchException e) {
+				throw new IllegalStateException("A shard cannot be searched.", e);
+			}
+		});
+	}
+
+	/**
+	 * This is a search method that returns one page of the identities that met criteria, sorted by the given key.
+	 * Every shard returns its own first page after the cursor and the pages are merged, so a page of the whole set
+	 * is found reading at most one page from every shard.
+	 *
+	 * @see fr.epita.iam.services.IdentityDAO#searchPage(Identity, IdentitySortKey, Identity, int)
+	 */
+	@Override
+	public IdentityPage searchPage(Identity criteria, IdentitySortKey sortKey, Identity after, int limit)
+			throws DAOSearchException {
+
+		IdentityPage.checkLimit(limit);
+		List<Identity> candidates = new ArrayList<>();
+		boolean next = false;
+
+		try {
+			for (IdentityPage page : onAllShards(shard -> shard.searchPage(criteria, sortKey, after, limit))) {
+				candidates.addAll(page.getIdentities());
+				next |= page.hasNext();
+			}
+		} catch (Exception e) {
+			System.out.println("Error during a search of data!");
+			System.out.println(DETAILS + e.getMessage());
+			throw new DAOSearchException();
+		}
+
+		IdentityPage merged = IdentityPage.top(candidates.iterator(), sortKey, after, limit);
+		return new IdentityPage(new ArrayList<>(merged.getIdentities()), next || merged.hasNext());
+	}
+
+	/**
+	 * This is a search method that returns the identity with the given email.
+	 * The shards are not chosen by the email, so the email index of every shard is asked, one after another.
+	 * The saves and the updates keep the emails unique across all the shards, so at most one shard finds the email.
+	 *
+	 * @see fr.epita.iam.services.IdentityDAO#findByEmail(String)
+	 */
+	@Override
+	public Identity findByEmail(String email) throws DAOSearchException {
+
+		for (FileIdentityDAO shard : shards) {
+			Identity identity = shard.findByEmail(email);
+			if (identity != null) {
+				return identity;
+			}
+		}
+
+		return null;
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.epita.iam.services.IdentityDAO#update()
+	 */
+	@Override
+	public void update(Identity identity) throws DAOUpdateException {
+
+		synchronized (emailLock) {
+			boolean taken;
+			try {
+				taken = isEmailTaken(identity, new HashMap<>());
+			} catch (DAOSearchException e) {
+				throw new DAOUpdateException();
+			}
+			if (taken) {
+				System.out.println("Error during an update of data!");
+				System.out.println(DETAILS + EMAIL_TAKEN + " : " + identity.getUid());
+				DAOUpdateException exception = new DAOUpdateException();
+				exception.setFaultObject(identity);
+				throw exception;
+			}
+			shardOf(identity.getUid()).update(identity);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.epita.iam.services.IdentityDAO#delete()
+	 */
+	@Override
+	public void delete(Identity identity) throws DAODeleteException {
+
+		shardOf(identity.getUid()).delete(identity);
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.epita.iam.services.IdentityDAO#saveAll()
+	 */
+	@Override
+	public BatchResult saveAll(Collection<Identity> identities) throws DAOSaveException {
+
+		try {
+			return applyChecked(identities, FileIdentityDAO::saveAll); //a separate method for a bulk operation with unique emails is used
+		} catch (Exception e) {
+			System.out.println("Error during a save of data!");
+			System.out.println(DETAILS + e.getMessage());
+			throw new DAOSaveException();
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.epita.iam.services.IdentityDAO#updateAll()
+	 */
+	@Override
+	public BatchResult updateAll(Collection<Identity> identities) throws DAOUpdateException {
+
+		try {
+			return applyChecked(identities, FileIdentityDAO::updateAll);
+		} catch (Exception e) {
+			System.out.println("Error during an update of data!");
+			System.out.println(DETAILS + e.getMessage());
+			throw new DAOUpdateException();
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.epita.iam.services.IdentityDAO#deleteAll()
+	 */
+	@Override
+	public BatchResult deleteAll(Collection<Identity> identities) throws DAODeleteException {
+
+		try {
+			return applyAll(identities, FileIdentityDAO::deleteAll);
+		} catch (Exception e) {
+			System.out.println("Error during a deletion of data!");
+			System.out.println(DETAILS + e.getMessage());
+			throw new DAODeleteException();
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.epita.iam.services.IdentityDAO#closeResources()
+	 */
+	@Override
+	public void closeResources() throws DAOClosureException {
+
+		boolean failed = false;
+		for (FileIdentityDAO shard : shards) {
+			try {
+				shard.closeResources();
+			} catch (DAOClosureException e) {
+				failed = true;
+			}
+		}
+		pool.shutdown();
+
+		if (failed) {
+			throw new DAOClosureException();
+		}
+	}
+
+	/**
+	 * This method replaces the identities of all the shards with the original example identities,
+	 * each of them saved to its shard.
+	 *
+	 * @see fr.epita.iam.services.IdentityDAO#resetToOriginal()
+	 */
+	@Override
+	public void resetToOriginal() throws DAOInitializationException {
+
+		IdentityStore original = new IdentityStore();
+		try {
+			IdentityTextFormat.load(new File(FileIdentityDAO.ORIGINAL_FILE_PATH), original);
+
+			List<List<Identity>> partitions = partition(original.values());
+			for (int i = 0; i < shards.size(); i++) {
+				FileIdentityDAO shard = shards.get(i);
+				shard.deleteAll(shard.search(null));
+				shard.saveAll(partitions.get(i));
+			}
+		} catch (IOException | DAOSearchException | DAOSaveException | DAODeleteException e) {
+			System.out.println("Error during a reset of the shards!");
+			System.out.println(DETAILS + e.getMessage());
+			throw new DAOInitializationException();
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.epita.iam.services.IdentityDAO#printContent()
+	 */
+	@Override
+	public void printContent() throws DAOSearchException {
+
+		for (FileIdentityDAO shard : shards) {
+			shard.printContent();
+		}
+	}
+
+	/**
+	 * ShardCount Getter : This method returns the number of shards.
+	 *
+	 * @return					the number of shards
+	 */
+	public int getShardCount() {
+		return shards.size();
+	}
+
+	/**
+	 * This method returns the shard, which an identity with the given UID belongs to.
+	 *
+	 * @param uid				the UID of the identity
+	 * @return					the shard
+	 */
+	private FileIdentityDAO shardOf(String uid) {
+		return shards.get(shardIndex(uid));
+	}
+
+	/**
+	 * This method returns the position of the shard, which an identity with the given UID belongs to.
+	 *
+	 * @param uid				the UID of the identity
+	 * @return					the position of the shard
+	 */
+	private int shardIndex(String uid) {
+		return Math.floorMod(Objects.hashCode(uid), shards.size());
+	}
+
+	/**
+	 * This method splits the identities by their shards, keeping their order.
+	 *
+	 * @param identities		the identities
+	 * @return					the identities of every shard, by the position of the shard
+	 */
+	private List<List<Identity>> partition(Collection<Identity> identities) {
+
+		List<List<Identity>> partitions = new ArrayList<>();
+		for (int i = 0; i < shards.size(); i++) {
+			partitions.add(new ArrayList<>());
+		}
+		for (Identity identity : identities) {
+			partitions.get(shardIndex(identity.getUid())).add(identity);
+		}
+
+		return partitions;
+	}
+
+	/**
+	 * This method runs a bulk operation on every shard with its identities at once
+	 * and merges the results in the order the identities were given.
+	 *
+	 * @param identities		the identities to save, update or delete
+	 * @param operation			the bulk operation of a shard
+	 * @return					the result for every identity
+	 * @throws Exception		the failure of the first failed shard
+	 */
+	private BatchResult applyAll(Collection<Identity> identities, BulkOperation operation) throws Exception {
+
+		List<List<Identity>> partitions = partition(identities);
+		List<Callable<BatchResult>> tasks = new ArrayList<>();
+		for (int i = 0; i < shards.size(); i++) {
+			FileIdentityDAO shard = shards.get(i);
+			List<Identity> partition = partitions.get(i);
+			tasks.add(() -> partition.isEmpty() ? new BatchResult() : operation.apply(shard, partition));
+		}
+		List<BatchResult> results = await(pool.invokeAll(tasks));
+
+		// every shard reports its identities in order, so the results are taken back in the order of the shards
+		int[] positions = new int[shards.size()];
+		BatchResult result = new BatchResult();
+		for (Identity identity : identities) {
+			int index = shardIndex(identity.getUid());
+			BatchResult.Item item = results.get(index).getItems().get(positions[index]++);
+			result.add(item.getIdentity(), item.getStatus(), item.getMessage());
+		}
+
+		return result;
+	}
+
+	/**
+	 * This method runs a bulk operation, which may take emails, with the emails unique across all the shards.
+	 * An identity with an email of an identity with another UID, in a shard or earlier in the bulk, is rejected
+	 * and the other identities are passed to their shards.
+	 *
+	 * @param identities		the identities to save or update
+	 * @param operation			the bulk operation of a shard
+	 * @return					the result for every identity
+	 * @throws Exception		the failure of the first failed shard
+	 */
+	private BatchResult applyChecked(Collection<Identity> identities, BulkOperation operation) throws Exception {
+
+		synchronized (emailLock) {
+			Map<String, String> claimed = new HashMap<>();
+			List<Identity> accepted = new ArrayList<>();
+			boolean[] rejected = new boolean[identities.size()];
+			int position = 0;
+			for (Identity identity : identities) {
+				rejected[position] = isEmailTaken(identity, claimed);
+				if (!rejected[position]) {
+					accepted.add(identity);
+				}
+				position++;
+			}
+
+			Iterator<BatchResult.Item> items = applyAll(accepted, operation).getItems().iterator(); //a separate method for a bulk operation is used
+			BatchResult result = new BatchResult();
+			position = 0;
+			for (Identity identity : identities) {
+				if (rejected[position++]) {
+					result.add(identity, BatchResult.Status.REJECTED, EMAIL_TAKEN);
+				} else {
+					BatchResult.Item item = items.next();
+					result.add(item.getIdentity(), item.getStatus(), item.getMessage());
+				}
+			}
+
+			return result;
+		}
+	}
+
+	/**
+	 * This method tells, if the email of an identity belongs to an identity with another UID,
+	 * in any shard or among the identities already claimed by the same bulk operation.
+	 * A free email is claimed for the identity.
+	 *
+	 * @param identity				the identity to save or update
+	 * @param claimed				the UIDs of the emails claimed by the bulk operation
+	 * @return						true, if the email is taken;
+	 * 								false, if it is free or belongs to the same UID
+	 * @throws DAOSearchException	if a shard cannot be searched
+	 */
+	private boolean isEmailTaken(Identity identity, Map<String, String> claimed) throws DAOSearchException {
+
+		String email = identity.getEmail();
+		if (email == null) {
+			return false;
+		}
+
+		String owner;
+		if (claimed.containsKey(email)) {
+			owner = claimed.get(email);
+		} else {
+			Identity found = findByEmail(email);
+			owner = (found == null) ? null : found.getUid();
+		}
+		if (owner != null && !owner.equals(identity.getUid())) {
+			return true;
+		}
+		claimed.put(email, identity.getUid());
+
+		return false;
+	}
+
+	/**
+	 * This method runs an operation on all the shards at once.
+	 *
+	 * @param operation			the operation of a shard
+	 * @param <T>				the type of the results
+	 * @return					the results, by the position of the shard
+	 * @throws Exception		the failure of the first failed shard
+	 */
+	private <T> List<T> onAllShards(ShardOperation<T> operation) throws Exception {
+
+		List<Callable<T>> tasks = new ArrayList<>();
+		for (FileIdentityDAO shard : shards) {
+			tasks.add(() -> operation.apply(shard));
+		}
+
+		return await(pool.invokeAll(tasks));
+	}
+
+	/**
+	 * This method collects the results of finished tasks.
+	 *
+	 * @param futures			the finished tasks
+	 * @param <T>				the type of the results
+	 * @return					the results, in the order of the tasks
+	 * @throws Exception		the failure of the first failed task
+	 */
+	private static <T> List<T> await(List<Future<T>> futures) throws Exception {
+
+		List<T> results = new ArrayList<>();
+		for (Future<T> future : futures) {
+			try {
+				results.add(future.get());
+			} catch (ExecutionException e) {
+				throw (e.getCause() instanceof Exception) ? (Exception) e.getCause() : e;
+			}
+		}
+
+		return results;
+	}
+
+	/**
+	 * This method returns the text storages of the shards of the given file.
+	 *
+	 * @param filePath			a path to the file with identities
+	 * @param shardCount		the number of shards
+	 * @return					the storages, by the position of the shard
+	 */
+	private static List<IdentityStorage> textStorages(String filePath, int shardCount) {
+
+		if (shardCount < 1) {
+			throw new IllegalArgumentException("There has to be at least one shard : " + shardCount);
+		}
+
+		File file = new File(filePath);
+		String name = file.getName();
+		int dot = name.lastIndexOf('.');
+		List<IdentityStorage> storages = new ArrayList<>();
+
+		for (int i = 0; i < shardCount; i++) {
+			String shardName = (dot < 0) ? (name + "." + i) : (name.substring(0, dot) + "." + i + name.substring(dot));
+			storages.add(new TextIdentityStorage(new File(file.getAbsoluteFile().getParentFile(), shardName).getPath()));
+		}
+
+		return storages;
+	}
+
+	/**
+	 * This is an Interface for an operation run on a single shard.
+	 *
+	 * @param <T>				the type of the result
+	 */
+	private interface ShardOperation<T> {
+
+		/**
+		 * This method runs the operation on the shard.
+		 *
+		 * @param shard			the shard
+		 * @return				the result of the operation
+		 * @throws Exception	if the operation fails
+		 */
+		T apply(FileIdentityDAO shard) throws Exception;
+	}
+
+	/**
+	 * This is an Interface for a bulk operation run on a single shard with its identities.
+	 */
+	private interface BulkOperation {
+
+		/**
+		 * This method runs the bulk operation on the shard.
+		 *
+		 * @param shard			the shard
+		 * @param identities	the identities of the shard
+		 * @return				the result for every identity
+		 * @throws Exception	if the operation fails
+		 */
+		BatchResult apply(FileIdentityDAO shard, Collection<Identity> identities) throws Exception;
+	}
+}
@@ -0,0 +1,303 @@
+package fr.epita.iam.services;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class caches prepared statements of a single connection, keyed by their SQL text and their options.
+ * A statement is compiled by the database only the first time and then reused by every next caller.
+ *
+ * A caller closes a cached statement as any other statement. The statement is not really closed, only its results
+ * and parameters are cleared and it is returned to the cache. When the cache is full, the least recently used
+ * statement, which is not in use, is closed for real.
+ *
+ * @author Lenka Horvathova
+ */
+public class StatementCache {
+
+	private static final String DETAILS = "Details: ";
+
+	private final int maxSize;
+	private final Map<String, CachedStatement> statements = new LinkedHashMap<>(16, 0.75f, true);
+	private final AtomicLong hits;
+	private final AtomicLong misses;
+
+	/**
+	 * This is a Constructor for a StatementCache class.
+	 *
+	 * @param maxSize				the maximal number of cached statements
+	 * @param hits					the counter of statements found in the cache
+	 * @param misses				the counter of statements, which had to be prepared
+	 */
+	public StatementCache(int maxSize, AtomicLong hits, AtomicLong misses) {
+
+		this.maxSize = maxSize;
+		this.hits = hits;
+		this.misses = misses;
+	}
+
+	/**
+	 * This method returns a prepared statement for the given SQL text, from the cache if possible.
+	 * If the cached statement is already in use, a new statement is prepared and closed normally.
+	 *
+	 * @param connection			the physical connection of the cache
+	 * @param sql					the SQL text of the statement
+	 * @param resultSetType			the type of the result sets of the statement
+	 * @param resultSetConcurrency	the concurrency of the result sets of the statement
+	 * @return						the statement, which has to be closed after use
+	 * @throws SQLException			if the statement cannot be prepared
+	 */
+	public PreparedStatement prepare(Connection connection, String sql, int resultSetType, int resultSetConcurrency)
+			throws SQLException {
+
+		return prepare(resultSetType + ":" + resultSetConcurrency + ":" + sql,
+				() -> connection.prepareStatement(sql, resultSetType, resultSetConcurrency));
+	}
+
+	/**
+	 * This method returns a prepared statement for the given SQL text, which returns the generated keys or not,
+	 * from the cache if possible.
+	 *
+	 * @param connection			the physical connection of the cache
+	 * @param sql					the SQL text of the statement
+	 * @param autoGeneratedKeys		Statement.RETURN_GENERATED_KEYS or Statement.NO_GENERATED_KEYS
+	 * @return						the statement, which has to be closed after use
+	 * @throws SQLException			if the statement cannot be prepared
+	 */
+	public PreparedStatement prepare(Connection connection, String sql, int autoGeneratedKeys) throws SQLException {
+
+		return prepare("keys" + autoGeneratedKeys + ":" + sql, () -> connection.prepareStatement(sql, autoGeneratedKeys));
+	}
+
+	/**
+	 * This method returns the statement cached under a key or prepares and caches a new one.
+	 *
+	 * @param key					the key of the statement, its SQL text and its options
+	 * @param factory				the preparation of a new statement
+	 * @return						the statement, which has to be closed after use
+	 * @throws SQLException			if the statement cannot be prepared
+	 */
+	private synchronized PreparedStatement prepare(String key, StatementFactory factory) throws SQLException {
+
+		CachedStatement cached = statements.get(key);
+
+		if (cached != null && !cached.inUse) {
+			hits.incrementAndGet();
+			return cached.lend();
+		}
+
+		misses.incrementAndGet();
+		PreparedStatement statement = factory.prepare();
+		if (cached != null || maxSize == 0) {
+			return statement;
+		}
+
+		cached = new CachedStatement(statement);
+		statements.put(key, cached);
+		evict(); //a separate method for an eviction of the least recently used statements is used
+
+		return cached.lend();
+	}
+
+	/**
+	 * This method returns all the statements to the cache, even if their callers did not close them.
+	 * It is used, when the connection is returned to the pool.
+	 */
+	public synchronized void releaseAll() {
+
+		for (CachedStatement cached : statements.values()) {
+			if (cached.inUse) {
+				cached.release();
+			}
+		}
+	}
+
+	/**
+	 * This method closes all the cached statements, before the connection is closed.
+	 */
+	public synchronized void closeAll() {
+
+		for (CachedStatement cached : statements.values()) {
+			cached.close();
+		}
+		statements.clear();
+	}
+
+	/**
+	 * Size Getter : This method returns the number of cached statements.
+	 *
+	 * @return						the number of statements
+	 */
+	public synchronized int size() {
+		return statements.size();
+	}
+
+	/**
+	 * This method closes the least recently used statements, which are not in use, while the cache is too big.
+	 */
+	private void evict() {
+
+		Iterator<CachedStatement> iterator = statements.values().iterator();
+		while (statements.size() > maxSize && iterator.hasNext()) {
+			CachedStatement cached = iterator.next();
+			if (!cached.inUse) {
+				iterator.remove();
+				cached.close();
+			}
+		}
+	}
+
+	/**
+	 * This interface prepares a new physical statement.
+	 */
+	private interface StatementFactory {
+
+		/**
+		 * This method prepares the statement.
+		 *
+		 * @return					the statement
+		 * @throws SQLException		if the statement cannot be prepared
+		 */
+		PreparedStatement prepare() throws SQLException;
+	}
+
+	/**
+	 * This class holds a cached statement and the results it returned to its current caller.
+	 */
+	private class CachedStatement {
+
+		private final PreparedStatement statement;
+		private final List<ResultSet> results = new ArrayList<>();
+		private boolean inUse;
+		private Lease lease;
+
+		/**
+		 * This is a Constructor for a CachedStatement class.
+		 *
+		 * @param statement			the physical statement
+		 */
+		CachedStatement(PreparedStatement statement) {
+			this.statement = statement;
+		}
+
+		/**
+		 * This method marks the statement as used and returns a new handle of it for the caller.
+		 *
+		 * @return					the handle, which returns the statement to the cache, when it is closed
+		 */
+		PreparedStatement lend() {
+
+			inUse = true;
+			lease = new Lease(this);
+			return (PreparedStatement) Proxy.newProxyInstance(StatementCache.class.getClassLoader(),
+					new Class<?>[] {PreparedStatement.class}, lease);
+		}
+
+		/**
+		 * This method clears the results and the parameters of the statement, so it can be reused.
+		 * The handle of the current caller stops working.
+		 */
+		void release() {
+
+			try {
+				for (ResultSet result : results) {
+					result.close();
+				}
+				statement.clearParameters();
+				statement.clearBatch();
+			} catch (SQLException e) {
+				System.out.println("Error during a release of a statement!");
+				System.out.println(DETAILS + e.getMessage());
+			} finally {
+				results.clear();
+				lease.active = false;
+				inUse = false;
+			}
+		}
+
+		/**
+		 * This method closes the physical statement.
+		 */
+		void close() {
+
+			try {
+				statement.close();
+			} catch (SQLException e) {
+				System.out.println("Error during a closure of a statement!");
+				System.out.println(DETAILS + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * This class is a handle of a cached statement lent to a caller.
+	 * It passes all the calls to the statement, except for a closure, which returns the statement to the cache.
+	 */
+	private class Lease implements InvocationHandler {
+
+		private final CachedStatement cached;
+		private boolean active = true;
+
+		/**
+		 * This is a Constructor for a Lease class.
+		 *
+		 * @param cached			the lent statement
+		 */
+		Lease(CachedStatement cached) {
+			this.cached = cached;
+		}
+
+		/* (non-Javadoc)
+		 * @see java.lang.reflect.InvocationHandler#invoke(java.lang.Object, java.lang.reflect.Method, java.lang.Object[])
+		 */
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+
+			synchronized (StatementCache.this) {
+				switch (method.getName()) {
+				case "close":
+					if (active) {
+						cached.release();
+					}
+					return null;
+
+				case "isClosed":
+					return !active || cached.statement.isClosed();
+
+				case "equals":
+					return proxy == args[0];
+
+				case "hashCode":
+					return System.identityHashCode(proxy);
+
+				default:
+					if (!active) {
+						throw new SQLException("The statement was already closed.");
+					}
+					Object result;
+					try {
+						result = method.invoke(cached.statement, args);
+					} catch (InvocationTargetException e) {
+						throw e.getCause();
+					}
+					if (result instanceof ResultSet) {
+						cached.results.add((ResultSet) result);
+					}
+					return result;
+				}
+			}
+		}
+	}
+}
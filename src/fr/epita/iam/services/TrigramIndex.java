@@ -0,0 +1,401 @@
+package fr.epita.iam.services;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import fr.epita.iam.datamodel.Identity;
+
+/**
+ * This class is a trigram index over the names and the emails of identities.
+ *
+ * Every name and email is cut into trigrams, all the groups of three following characters of the text
+ * with a space added before and after it, e.g. ' ab', 'abc', 'bc '. For every trigram, the index keeps the identities
+ * containing it. A searched text is cut the same way, so only the identities sharing its trigrams are looked at:
+ * - a text contained in a name or an email contains all the trigrams of the text,
+ * - a similar text, e.g. with a typo, shares most of its trigrams.
+ * The texts are normalized, so a search does not depend on the case and the accents.
+ *
+ * @author Lenka Horvathova
+ */
+public class TrigramIndex implements IdentityIndex {
+
+	/** the default part of the trigrams of a searched text, which a similar text has to share */
+	public static final double DEFAULT_MIN_SIMILARITY = 0.5;
+
+	private static final int GRAM = 3;
+
+	private final double minSimilarity;
+	private final Map<Long, Set<Identity>> postings = new HashMap<>();
+
+	/**
+	 * This is a Constructor for a TrigramIndex class with the default similarity.
+	 */
+	public TrigramIndex() {
+
+		this(DEFAULT_MIN_SIMILARITY);
+	}
+
+	/**
+	 * This is a Constructor for a TrigramIndex class.
+	 *
+	 * @param minSimilarity			the part of the trigrams of a searched text, which a similar text has to share,
+	 * 								between 0 (exclusive) and 1 (only texts containing all the trigrams)
+	 */
+	public TrigramIndex(double minSimilarity) {
+
+		if (!(minSimilarity > 0 && minSimilarity <= 1)) {
+			throw new IllegalArgumentException("The similarity has to be between 0 and 1 : " + minSimilarity);
+		}
+		this.minSimilarity = minSimilarity;
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.epita.iam.services.IdentityIndex#added()
+	 */
+	@Override
+	public void added(Identity identity) {
+
+		for (Long trigram : trigrams(identity)) {
+			postings.computeIfAbsent(trigram, key -> new HashSet<>()).add(identity);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.epita.iam.services.IdentityIndex#removed()
+	 */
+	@Override
+	public void removed(Identity identity) {
+
+		for (Long trigram : trigrams(identity)) {
+			Set<Identity> identities = postings.get(trigram);
+			if (identities != null) {
+				identities.remove(identity);
+				if (identities.isEmpty()) {
+					postings.remove(trigram);
+				}
+			}
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.epita.iam.services.IdentityIndex#cleared()
+	 */
+	@Override
+	public void cleared() {
+
+		postings.clear();
+	}
+
+	/**
+	 * This method returns the identities with a name or an email containing the given text.
+	 * The identities containing the text earlier come first, then the ones with a shorter name or email.
+	 *
+	 * @param text					the searched text, e.g. 'vath' or 'gmail'
+	 * @param limit					the maximal number of returned identities
+	 * @return						the matching identities
+	 */
+	public List<Identity> findContaining(String text, int limit) {
+
+		String searched = DisplayNameIndex.normalize(text);
+		if (searched.isEmpty()) {
+			return Collections.emptyList();
+		}
+
+		Collection<Identity> candidates;
+		if (searched.length() < GRAM) {
+			//a text shorter than a trigram is a part of the trigrams, which contain it
+			candidates = new HashSet<>();
+			for (Map.Entry<Long, Set<Identity>> entry : postings.entrySet()) {
+				if (decode(entry.getKey()).contains(searched)) {
+					candidates.addAll(entry.getValue());
+				}
+			}
+		} else {
+			candidates = sharingAll(searched); //a separate method for an intersection of the trigrams is used
+		}
+
+		List<Match> matches = new ArrayList<>();
+		for (Identity identity : candidates) {
+			//the trigrams can be in the text in another order, so the text itself is checked
+			Match match = Match.containing(identity, searched);
+			if (match != null) {
+				matches.add(match);
+			}
+		}
+
+		return top(matches, limit);
+	}
+
+	/**
+	 * This method returns the identities with a name or an email similar to the given text, the most similar first.
+	 * The similarity is the Dice coefficient of the trigrams of the two texts, it is 1 for the same texts.
+	 *
+	 * @param text					the searched text, e.g. 'horvatova'
+	 * @param limit					the maximal number of returned identities
+	 * @return						the similar identities
+	 */
+	public List<Identity> findSimilar(String text, int limit) {
+
+		String searched = DisplayNameIndex.normalize(text);
+		Set<Long> searchedTrigrams = new HashSet<>();
+		addTrigrams(searchedTrigrams, searched, true);
+		if (searchedTrigrams.isEmpty()) {
+			return Collections.emptyList();
+		}
+
+		// an identity sharing at least 'needed' trigrams has to be in one of the (lists - needed + 1) shortest lists
+		int needed = Math.max(1, (int) Math.ceil(searchedTrigrams.size() * minSimilarity));
+		List<Set<Identity>> lists = postingsOf(searchedTrigrams);
+		if (lists.size() < needed) {
+			return Collections.emptyList();
+		}
+
+		Set<Identity> candidates = new HashSet<>();
+		for (Set<Identity> identities : lists.subList(0, lists.size() - needed + 1)) {
+			candidates.addAll(identities);
+		}
+
+		List<Match> matches = new ArrayList<>();
+		for (Identity identity : candidates) {
+			//the shared trigrams are counted in the lists first, only the identities sharing enough are compared exactly
+			if (count(lists, identity) < needed) {
+				continue;
+			}
+			Match match = Match.similar(identity, searchedTrigrams, needed);
+			if (match != null) {
+				matches.add(match);
+			}
+		}
+
+		return top(matches, limit);
+	}
+
+	/**
+	 * This method returns the identities, which contain all the trigrams of the text (without the added spaces).
+	 *
+	 * @param searched				the normalized text of at least three characters
+	 * @return						the identities
+	 */
+	private Collection<Identity> sharingAll(String searched) {
+
+		Set<Long> searchedTrigrams = new HashSet<>();
+		addTrigrams(searchedTrigrams, searched, false);
+		List<Set<Identity>> lists = postingsOf(searchedTrigrams);
+		if (lists.size() < searchedTrigrams.size()) {
+			return Collections.emptyList();
+		}
+
+		// the shortest list is walked, the others are only asked
+		List<Identity> identities = new ArrayList<>();
+		for (Identity identity : lists.get(0)) {
+			boolean inAll = true;
+			for (int i = 1; i < lists.size() && inAll; i++) {
+				inAll = lists.get(i).contains(identity);
+			}
+			if (inAll) {
+				identities.add(identity);
+			}
+		}
+
+		return identities;
+	}
+
+	/**
+	 * This method returns the lists of identities of the given trigrams, the shortest first.
+	 * The trigrams without any identity are left out.
+	 *
+	 * @param trigrams				the trigrams
+	 * @return						the lists of identities
+	 */
+	private List<Set<Identity>> postingsOf(Set<Long> trigrams) {
+
+		List<Set<Identity>> lists = new ArrayList<>();
+		for (Long trigram : trigrams) {
+			Set<Identity> identities = postings.get(trigram);
+			if (identities != null) {
+				lists.add(identities);
+			}
+		}
+		lists.sort(Comparator.comparingInt(Set::size));
+
+		return lists;
+	}
+
+	/**
+	 * This method counts the lists of identities containing an identity.
+	 *
+	 * @param lists					the lists of identities
+	 * @param identity				the identity
+	 * @return						the number of lists
+	 */
+	private static int count(List<Set<Identity>> lists, Identity identity) {
+
+		int count = 0;
+		for (Set<Identity> identities : lists) {
+			if (identities.contains(identity)) {
+				count++;
+			}
+		}
+
+		return count;
+	}
+
+	/**
+	 * This method returns all the trigrams of the name and the email of an identity.
+	 *
+	 * @param identity				the identity
+	 * @return						the trigrams
+	 */
+	private static Set<Long> trigrams(Identity identity) {
+
+		Set<Long> trigrams = new HashSet<>();
+		if (identity.getDisplayName() != null) {
+			addTrigrams(trigrams, DisplayNameIndex.normalize(identity.getDisplayName()), true);
+		}
+		if (identity.getEmail() != null) {
+			addTrigrams(trigrams, DisplayNameIndex.normalize(identity.getEmail()), true);
+		}
+
+		return trigrams;
+	}
+
+	/**
+	 * This method adds the trigrams of a text to a set.
+	 *
+	 * @param trigrams				the set of trigrams
+	 * @param text					the normalized text
+	 * @param padded				true, if a space should be added before and after the text
+	 */
+	private static void addTrigrams(Set<Long> trigrams, String text, boolean padded) {
+
+		String gramText = padded ? (" " + text + " ") : text;
+		for (int i = 0; i + GRAM <= gramText.length(); i++) {
+			trigrams.add(encode(gramText, i));
+		}
+	}
+
+	/**
+	 * This method packs three characters of a text into a number.
+	 *
+	 * @param text					the text
+	 * @param start					the position of the first character
+	 * @return						the trigram as a number
+	 */
+	private static long encode(String text, int start) {
+		return ((long) text.charAt(start) << 32) | ((long) text.charAt(start + 1) << 16) | text.charAt(start + 2);
+	}
+
+	/**
+	 * This method unpacks a trigram into three characters.
+	 *
+	 * @param trigram				the trigram as a number
+	 * @return						the trigram as a text
+	 */
+	private static String decode(long trigram) {
+		return new String(new char[] {(char) (trigram >>> 32), (char) (trigram >>> 16), (char) trigram});
+	}
+
+	/**
+	 * This method sorts the matches, the best first, and returns the identities of the first ones.
+	 *
+	 * @param matches				the matches
+	 * @param limit					the maximal number of returned identities
+	 * @return						the identities
+	 */
+	private static List<Identity> top(List<Match> matches, int limit) {
+
+		IdentityPage.checkLimit(limit);
+		matches.sort(Comparator.comparingDouble((Match match) -> match.rank)
+				.thenComparing(match -> match.identity, IdentitySortKey.UID.getComparator()));
+
+		List<Identity> identities = new ArrayList<>();
+		for (Match match : matches.subList(0, Math.min(limit, matches.size()))) {
+			identities.add(match.identity);
+		}
+
+		return identities;
+	}
+
+	/**
+	 * This class holds an identity found by a search with its rank, the lower the better.
+	 */
+	private static class Match {
+
+		private final Identity identity;
+		private final double rank;
+
+		/**
+		 * This is a Constructor for a Match class.
+		 *
+		 * @param identity			the found identity
+		 * @param rank				the rank of the identity
+		 */
+		Match(Identity identity, double rank) {
+
+			this.identity = identity;
+			this.rank = rank;
+		}
+
+		/**
+		 * This method checks, if a name or an email of an identity contains the text.
+		 * The rank is the position of the text, the length of the field breaks the ties.
+		 *
+		 * @param identity			the identity
+		 * @param searched			the normalized text
+		 * @return					the match or null, if the identity doesn't contain the text
+		 */
+		static Match containing(Identity identity, String searched) {
+
+			double best = Double.MAX_VALUE;
+			for (String field : new String[] {identity.getDisplayName(), identity.getEmail()}) {
+				if (field != null) {
+					String normalized = DisplayNameIndex.normalize(field);
+					int position = normalized.indexOf(searched);
+					if (position >= 0) {
+						best = Math.min(best, position + normalized.length() / (normalized.length() + 1.0));
+					}
+				}
+			}
+
+			return (best == Double.MAX_VALUE) ? null : new Match(identity, best);
+		}
+
+		/**
+		 * This method compares the trigrams of a name and an email of an identity with the trigrams of a text.
+		 * The rank is the negative similarity of the more similar field.
+		 *
+		 * @param identity			the identity
+		 * @param searchedTrigrams	the trigrams of the text
+		 * @param needed			the number of trigrams a field has to share with the text
+		 * @return					the match or null, if no field is similar enough
+		 */
+		static Match similar(Identity identity, Set<Long> searchedTrigrams, int needed) {
+
+			double best = 0;
+			for (String field : new String[] {identity.getDisplayName(), identity.getEmail()}) {
+				if (field != null) {
+					Set<Long> fieldTrigrams = new HashSet<>();
+					addTrigrams(fieldTrigrams, DisplayNameIndex.normalize(field), true);
+					int shared = 0;
+					for (Long trigram : fieldTrigrams) {
+						if (searchedTrigrams.contains(trigram)) {
+							shared++;
+						}
+					}
+					if (shared >= needed) {
+						best = Math.max(best, 2.0 * shared / (searchedTrigrams.size() + fieldTrigrams.size()));
+					}
+				}
+			}
+
+			return (best == 0) ? null : new Match(identity, -best);
+		}
+	}
+}
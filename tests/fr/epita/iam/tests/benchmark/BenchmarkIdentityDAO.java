@@ -0,0 +1,338 @@
+package fr.epita.iam.tests.benchmark;
+
+import java.io.File;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import fr.epita.iam.datamodel.Identity;
+import fr.epita.iam.services.BatchResult;
+import fr.epita.iam.services.BinaryIdentityStorage;
+import fr.epita.iam.services.ConnectionPool;
+import fr.epita.iam.services.FileIdentityDAO;
+import fr.epita.iam.services.IdentityDAO;
+import fr.epita.iam.services.JDBCIdentityDAO;
+import fr.epita.iam.services.JournalIdentityStorage;
+import fr.epita.iam.services.TextIdentityStorage;
+
+/**
+ * This class measures the performance of the IdentityDAO implementations.
+ * For every backend and every size of a dataset, it fills the DAO with generated identities and then
+ * measures a search by UID, a search by a name prefix, a full scan, an update, a save and a deletion.
+ *
+ * Every operation is first run for a while without being measured, so the code is compiled by the JIT,
+ * and then measured for a fixed time. The throughput, the allocation rate of the benchmark thread
+ * and the garbage collections during the measurement are reported for every operation.
+ *
+ * Arguments (all optional) :
+ * <pre>
+ * backends		comma separated list of 'file', 'journal', 'binary' and 'jdbc', 'file' by default
+ * sizes		comma separated list of dataset sizes, '1000,10000,100000' by default (up to 10000000)
+ * url			JDBC URL of the database, a separate 'iambench' database of the running Derby network server by default
+ * </pre>
+ *
+ * @author Lenka Horvathova
+ */
+public class BenchmarkIdentityDAO {
+
+	private static final String DETAILS = "Details: ";
+	private static final String DIVIDER = "~ ~ ~ ~ ~ ~ ~ ~ ~ ~";
+
+	private static final String DEFAULT_BACKENDS = "file";
+	private static final String DEFAULT_SIZES = "1000,10000,100000";
+	// only the client driver is in the lib folder, so the database is reached through the network server, as in JDBCIdentityDAO
+	private static final String DEFAULT_URL = "jdbc:derby://localhost:1527/iambench;create=true";
+	private static final String USER = "IAM";
+	private static final String PASSWORD = "123";
+
+	private static final String CREATE_TABLE = "CREATE TABLE IDENTITIES ("
+											 + "IDENTITY_UID INT NOT NULL GENERATED ALWAYS AS IDENTITY PRIMARY KEY, "
+											 + "IDENTITY_DISPLAYNAME VARCHAR(255), "
+											 + "IDENTITY_EMAIL VARCHAR(255))";
+	private static final String CREATE_NAME_INDEX = "CREATE INDEX IDENTITIES_DISPLAYNAME_IDX ON IDENTITIES(IDENTITY_DISPLAYNAME)";
+	private static final String CREATE_EMAIL_INDEX = "ALTER TABLE IDENTITIES ADD CONSTRAINT IDENTITIES_EMAIL_UQ UNIQUE (IDENTITY_EMAIL)";
+	private static final String CLEAR_TABLE = "DELETE from IDENTITIES";
+
+	private static final long WARMUP_MILLIS = 2000;
+	private static final long MEASURE_MILLIS = 5000;
+	private static final int FILL_CHUNK = 10000;
+	private static final String SAVED_NAME = "Saved Identity ";
+
+	private static final File DIRECTORY = new File(System.getProperty("java.io.tmpdir"), "iam-benchmark");
+
+	/**
+	 * This is a main method for benchmarking.
+	 *
+	 * @param args			the backends, the sizes and the JDBC URL, all optional
+	 */
+	public static void main(String[] args) {
+
+		String[] backends = ((args.length > 0) ? args[0] : DEFAULT_BACKENDS).split(",");
+		String[] sizes = ((args.length > 1) ? args[1] : DEFAULT_SIZES).split(",");
+		String url = (args.length > 2) ? args[2] : DEFAULT_URL;
+
+		System.out.println(String.format("%-8s %10s %-18s %14s %14s %12s %10s",
+				"backend", "size", "operation", "ops/s", "alloc MB/s", "alloc B/op", "gc count"));
+
+		for (String backend : backends) {
+			for (String size : sizes) {
+				try {
+					benchmark(backend.trim(), Integer.parseInt(size.trim()), url);
+				} catch (Exception e) {
+					System.out.println("Error during a benchmark of " + backend + " with " + size + " identities!");
+					System.out.println(DETAILS + e.getMessage());
+				}
+			}
+			System.out.println(DIVIDER);
+		}
+	}
+
+	/**
+	 * This method fills a new DAO of the given backend and measures all the operations.
+	 *
+	 * @param backend			the name of the backend
+	 * @param size				the number of identities in the dataset
+	 * @param url				the JDBC URL of the database
+	 * @throws Exception		if the DAO cannot be created or an operation fails
+	 */
+	private static void benchmark(String backend, int size, String url) throws Exception {
+
+		ConnectionPool pool = null;
+		IdentityDAO dao;
+
+		switch (backend) {
+		case "file":
+			dao = new FileIdentityDAO(new TextIdentityStorage(prepareFile("identities.txt")));
+			break;
+
+		case "journal":
+			dao = new FileIdentityDAO(new JournalIdentityStorage(prepareFile("identities.journal.txt")));
+			break;
+
+		case "binary":
+			dao = new FileIdentityDAO(new BinaryIdentityStorage(prepareFile("identities.bin")));
+			break;
+
+		case "jdbc":
+			pool = new ConnectionPool(url, USER, PASSWORD);
+			prepareTable(pool); //a separate method for a preparation of a table is used
+			dao = new JDBCIdentityDAO(pool);
+			break;
+
+		default:
+			throw new IllegalArgumentException("Unknown backend : " + backend);
+		}
+
+		try {
+			String[] uids = fill(dao, size); //a separate method for a filling of a DAO is used
+			Random random = new Random(size);
+
+			measure(backend, size, "search by uid", Integer.MAX_VALUE,
+					i -> dao.search(new Identity(uids[random.nextInt(size)], null, null)));
+
+			measure(backend, size, "search by prefix", Integer.MAX_VALUE,
+					i -> dao.search(new Identity(null, prefix(random.nextInt(size)), null)));
+
+			measure(backend, size, "search by email", Integer.MAX_VALUE,
+					i -> dao.findByEmail(email(random.nextInt(size))));
+
+			measure(backend, size, "full scan", Integer.MAX_VALUE, i -> {
+				try (Stream<Identity> identities = dao.searchStream(null)) {
+					// every identity is visited, a count alone could be answered from the size of the stream
+					identities.mapToInt(identity -> 1).sum();
+				}
+			});
+
+			measure(backend, size, "update", Integer.MAX_VALUE, i -> {
+				int index = random.nextInt(size);
+				dao.update(new Identity(uids[index], name(index), "updated." + i + "@iam.com"));
+			});
+
+			measure(backend, size, "save", Integer.MAX_VALUE,
+					i -> dao.save(new Identity("saved" + i, SAVED_NAME + i, "saved." + i + "@iam.com")));
+
+			// only the saved identities are deleted, so the dataset keeps its size
+			List<Identity> saved = dao.search(new Identity(null, SAVED_NAME, null));
+			measure(backend, size, "delete", saved.size(), i -> dao.delete(saved.get(i)));
+		} finally {
+			dao.closeResources();
+			if (pool != null) {
+				pool.close();
+			}
+		}
+	}
+
+	/**
+	 * This method runs the operation without measuring for the warmup time and then measures it.
+	 * The operation is not run more times than the limit, even if the time is not up.
+	 *
+	 * @param backend			the name of the backend
+	 * @param size				the number of identities in the dataset
+	 * @param name				the name of the operation
+	 * @param limit				the maximal number of runs
+	 * @param operation			the operation to measure
+	 * @throws Exception		if the operation fails
+	 */
+	private static void measure(String backend, int size, String name, int limit, Operation operation) throws Exception {
+
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long threadId = Thread.currentThread().getId();
+
+		int runs = 0;
+		long end = System.currentTimeMillis() + WARMUP_MILLIS;
+		while (runs < limit && System.currentTimeMillis() < end) {
+			operation.run(runs++);
+		}
+
+		long gcCount = gcCount();
+		long allocated = threads.getThreadAllocatedBytes(threadId);
+		long start = System.nanoTime();
+		int measured = 0;
+		end = System.currentTimeMillis() + MEASURE_MILLIS;
+		while (runs < limit && System.currentTimeMillis() < end) {
+			operation.run(runs++);
+			measured++;
+		}
+		long elapsed = System.nanoTime() - start;
+		allocated = threads.getThreadAllocatedBytes(threadId) - allocated;
+		gcCount = gcCount() - gcCount;
+
+		double seconds = elapsed / 1e9;
+		System.out.println(String.format("%-8s %10d %-18s %14.1f %14.1f %12d %10d",
+				backend, size, name, measured / seconds, allocated / seconds / (1024 * 1024),
+				(measured == 0) ? 0 : allocated / measured, gcCount));
+	}
+
+	/**
+	 * This method saves the generated identities into the DAO, a chunk at once.
+	 * The run stops, if any identity is not saved, so a smaller dataset is never measured.
+	 *
+	 * @param dao				the DAO to be filled
+	 * @param size				the number of identities
+	 * @return					the UIDs of the identities, as assigned by the DAO
+	 * @throws Exception		if the identities cannot be saved
+	 */
+	private static String[] fill(IdentityDAO dao, int size) throws Exception {
+
+		List<Identity> chunk = new ArrayList<>(FILL_CHUNK);
+		for (int i = 0; i < size; i++) {
+			chunk.add(new Identity(String.valueOf(i), name(i), email(i)));
+			if (chunk.size() == FILL_CHUNK || i == size - 1) {
+				BatchResult result = dao.saveAll(chunk);
+				if (!result.isSuccessful()) {
+					throw new IllegalStateException("The dataset was not filled : " + result);
+				}
+				chunk.clear();
+			}
+		}
+
+		// the database generates its own UIDs
+		try (Stream<Identity> identities = dao.searchStream(null)) {
+			return identities.map(Identity::getUid).toArray(String[]::new);
+		}
+	}
+
+	/**
+	 * This method returns a name of a generated identity.
+	 *
+	 * @param index				the index of the identity
+	 * @return					the name
+	 */
+	private static String name(int index) {
+		return "Identity " + index;
+	}
+
+	/**
+	 * This method returns an email of a generated identity.
+	 *
+	 * @param index				the index of the identity
+	 * @return					the email
+	 */
+	private static String email(int index) {
+		return "identity." + index + "@iam.com";
+	}
+
+	/**
+	 * This method returns a prefix of a name of a generated identity, matching about ten identities.
+	 *
+	 * @param index				the index of the identity
+	 * @return					the name without its last digit
+	 */
+	private static String prefix(int index) {
+
+		String name = name(index);
+		return name.substring(0, name.length() - 1);
+	}
+
+	/**
+	 * This method returns an empty file for a file backend.
+	 *
+	 * @param fileName			the name of the file
+	 * @return					the path to the file
+	 */
+	private static String prepareFile(String fileName) {
+
+		DIRECTORY.mkdirs();
+		File file = new File(DIRECTORY, fileName);
+		file.delete();
+
+		return file.getAbsolutePath();
+	}
+
+	/**
+	 * This method creates the table of identities, if it doesn't exist, and empties it.
+	 *
+	 * @param pool				the pool of connections with the database
+	 * @throws SQLException		if the table cannot be prepared
+	 */
+	private static void prepareTable(ConnectionPool pool) throws SQLException {
+
+		try (Connection connection = pool.getConnection();
+				Statement statement = connection.createStatement()) {
+			try {
+				statement.execute(CREATE_TABLE);
+				statement.execute(CREATE_NAME_INDEX);
+				statement.execute(CREATE_EMAIL_INDEX);
+			} catch (SQLException e) {
+				// the table already exists
+			}
+			statement.execute(CLEAR_TABLE);
+		}
+	}
+
+	/**
+	 * This method returns the number of garbage collections since the start of the JVM.
+	 *
+	 * @return					the number of collections of all the collectors
+	 */
+	private static long gcCount() {
+
+		long count = 0;
+		for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+			count += Math.max(0, collector.getCollectionCount());
+		}
+
+		return count;
+	}
+
+	/**
+	 * This interface represents a single run of a measured operation.
+	 */
+	@FunctionalInterface
+	private interface Operation {
+
+		/**
+		 * This method runs the operation once.
+		 *
+		 * @param run			the number of the run, starting with 0
+		 * @throws Exception	if the operation fails
+		 */
+		void run(int run) throws Exception;
+	}
+}
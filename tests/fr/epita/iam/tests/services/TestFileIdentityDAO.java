@@ -12,6 +12,7 @@ import fr.epita.iam.exceptions.DAODeleteException;
 import fr.epita.iam.exceptions.DAOInitializationException;
 import fr.epita.iam.exceptions.DAOSaveException;
 import fr.epita.iam.exceptions.DAOUpdateException;
+import fr.epita.iam.services.BatchResult;
 import fr.epita.iam.services.FileIdentityDAO;
 
 /**
@@ -94,6 +95,15 @@ public class TestFileIdentityDAO {
 		} catch (DAODeleteException e) {
 			e.printStackTrace();
 		}		
+		
+		try {
+			System.out.println(DIVIDER);
+			System.out.println("TEST FOR THE SAVEALL METHOD");
+			testSaveAll();
+			System.out.println(DIVIDER + "\n");
+		} catch (DAOSaveException e) {
+			e.printStackTrace();
+		}
 	}
 	
 	/**
@@ -198,4 +208,45 @@ public class TestFileIdentityDAO {
 			throw new DAODeleteException();			
 		}
 	}
+	
+	/**
+	 * This method tests saving several identities into the file at once.
+	 * One of the identities has an already used UID, so it has to be rejected, while the others are saved.
+	 * 
+	 * @throws DAOSaveException 		the customized exception that can thrown during saving
+	 */
+	public static void testSaveAll() throws DAOSaveException {
+		
+		try {
+			FileIdentityDAO dao = new FileIdentityDAO();
+			List<Identity> identities = Arrays.asList(new Identity("6", "Marie Curie", "marie.c@gmail.com"),
+													  new Identity("7", "Paul Martin", "pmartin@yahoo.com"),
+													  new Identity("1", "Lenka Horvathova", "l.h@gmail.com"));
+			int initialSize = dao.search(null).size();
+			
+			System.out.println("\nThese Identities should be added to the file, except the last one : " + identities);
+			
+			BatchResult result = dao.saveAll(identities);
+			System.out.println("\nResult of the save : " + result);
+			
+			int finalSize = dao.search(null).size();
+			
+			if (finalSize - initialSize != result.count(BatchResult.Status.SUCCESS)
+			 || result.getItems().get(2).getStatus() != BatchResult.Status.REJECTED) {
+				
+				System.out.println("Something went wrong while saving new identities!");
+				
+			} else {
+				
+				System.out.println("\nContent of an updated file : ");
+				dao.printContent();
+			}
+			
+			dao.closeResources();
+		} catch (Exception e) {
+			System.out.println("Error during a test of a save of data!");
+			System.out.println(DETAILS + e.getMessage());
+			throw new DAOSaveException();
+		}
+	}
 }
@@ -0,0 +1,288 @@
+package fr.epita.iam.tests.services;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import fr.epita.iam.datamodel.Identity;
+import fr.epita.iam.exceptions.DAOSaveException;
+import fr.epita.iam.exceptions.DAOUpdateException;
+import fr.epita.iam.services.BatchResult;
+import fr.epita.iam.services.FileIdentityDAO;
+import fr.epita.iam.services.IdentityChange;
+import fr.epita.iam.services.IdentityStore;
+import fr.epita.iam.services.TextIdentityStorage;
+
+/**
+ * This class tests the group commit of FileIdentityDAO class: the changes of several threads written together.
+ * The DAOs work with temporary files, so the testing file is not changed.
+ *
+ * @author Lenka Horvathova
+ */
+public class TestGroupCommit {
+
+	private static final String DETAILS = "Details: ";
+	private static final String DIVIDER = "~ ~ ~ ~ ~ ~ ~ ~ ~ ~";
+
+	private static final int WRITERS = 8;
+	private static final int BATCHES = 20;
+	private static final int BATCH_SIZE = 5;
+	private static final File DIRECTORY = new File(System.getProperty("java.io.tmpdir"), "iam-group-commit");
+
+	/**
+	 * This is a main method for testing.
+	 *
+	 * @param args			arguments from command line, unused
+	 */
+	public static void main(String[] args) {
+
+		try {
+			System.out.println(DIVIDER);
+			System.out.println("TEST FOR CONCURRENT WRITERS");
+			testConcurrentWriters();
+			System.out.println(DIVIDER + "\n");
+		} catch (DAOSaveException e) {
+			e.printStackTrace();
+		}
+
+		try {
+			System.out.println(DIVIDER);
+			System.out.println("TEST FOR A FAILED WRITE OF A GROUP");
+			testFailedWrite();
+			System.out.println(DIVIDER + "\n");
+		} catch (DAOUpdateException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * This method tests several threads saving identities at the same time.
+	 * Every batch ends with an identity of an already used UID, so every caller has to get its own results:
+	 * its identities saved and the last one rejected. The changes have to be written in fewer writes than batches
+	 * and all of them have to be found in the file, when it is read again.
+	 *
+	 * @throws DAOSaveException 		the customized exception that can thrown during saving
+	 */
+	public static void testConcurrentWriters() throws DAOSaveException {
+
+		ExecutorService writers = Executors.newFixedThreadPool(WRITERS);
+		try {
+			CountingStorage storage = new CountingStorage(prepareFile("identities.txt"));
+			FileIdentityDAO dao = new FileIdentityDAO(storage);
+			dao.save(new Identity("taken", "Taken Identity", "taken@iam.com"));
+			dao.setMaxBatchDelay(2);
+			storage.writes.set(0);
+
+			CountDownLatch start = new CountDownLatch(1);
+			List<Future<Boolean>> results = new ArrayList<>();
+			for (int writer = 0; writer < WRITERS; writer++) {
+				int number = writer;
+				results.add(writers.submit(() -> {
+					start.await();
+					return writeBatches(dao, number); //a separate method for the batches of a writer is used
+				}));
+			}
+			start.countDown();
+
+			boolean ownResults = true;
+			for (Future<Boolean> result : results) {
+				ownResults &= result.get();
+			}
+			int expected = 1 + WRITERS * BATCHES * (BATCH_SIZE - 1);
+			int saved = dao.search(null).size();
+			dao.closeResources();
+
+			FileIdentityDAO reloaded = new FileIdentityDAO(storage.getFile().getPath());
+			int durable = reloaded.search(null).size();
+			reloaded.closeResources();
+
+			System.out.println("\n" + (WRITERS * BATCHES) + " batches were written in " + storage.writes.get() + " writes.");
+
+			if (!ownResults || saved != expected || durable != expected || storage.writes.get() >= WRITERS * BATCHES) {
+
+				System.out.println("Something went wrong while saving identities at the same time!");
+
+			} else {
+
+				System.out.println("Every writer got its own results and all " + expected + " identities are in the file.");
+			}
+		} catch (Exception e) {
+			System.out.println("Error during a test of a save of data!");
+			System.out.println(DETAILS + e.getMessage());
+			throw new DAOSaveException();
+		} finally {
+			writers.shutdown();
+		}
+	}
+
+	/**
+	 * This method tests a group, which cannot be written to the file.
+	 * Every writer of the group has to fail, and the DAO has to hold its previous identities,
+	 * so a next write succeeds and the file holds the same identities as the DAO.
+	 *
+	 * @throws DAOUpdateException 		the customized exception that can thrown during updating
+	 */
+	public static void testFailedWrite() throws DAOUpdateException {
+
+		ExecutorService writers = Executors.newFixedThreadPool(WRITERS);
+		try {
+			CountingStorage storage = new CountingStorage(prepareFile("identities.failing.txt"));
+			FileIdentityDAO dao = new FileIdentityDAO(storage);
+			dao.save(new Identity("1", "Lenka Horvathova", "l.h@gmail.com"));
+			dao.save(new Identity("2", "Janko Hrasko", "jh@gmail.com"));
+			List<String> before = describe(dao.search(null));
+
+			storage.failing = true;
+			CountDownLatch start = new CountDownLatch(1);
+			List<Future<Boolean>> failures = new ArrayList<>();
+			for (int writer = 0; writer < WRITERS; writer++) {
+				int number = writer;
+				Callable<Boolean> change = () -> {
+					start.await();
+					try {
+						if (number % 2 == 0) {
+							dao.save(new Identity("new" + number, "New Identity", "new." + number + "@iam.com"));
+						} else {
+							dao.update(new Identity("1", "Updated Identity " + number, "updated." + number + "@iam.com"));
+						}
+						return false;
+					} catch (DAOSaveException | DAOUpdateException e) {
+						return true;
+					}
+				};
+				failures.add(writers.submit(change));
+			}
+			start.countDown();
+
+			boolean allFailed = true;
+			for (Future<Boolean> failure : failures) {
+				allFailed &= failure.get();
+			}
+			boolean restored = before.equals(describe(dao.search(null)));
+
+			storage.failing = false;
+			dao.update(new Identity("2", "Janko Hrasko", "janko.hrasko@gmail.com"));
+			List<String> after = describe(dao.search(null));
+			dao.closeResources();
+
+			FileIdentityDAO reloaded = new FileIdentityDAO(storage.getFile().getPath());
+			boolean durable = after.equals(describe(reloaded.search(null)));
+			reloaded.closeResources();
+
+			if (!allFailed || !restored || !durable) {
+
+				System.out.println("Something went wrong while failing to write identities!");
+
+			} else {
+
+				System.out.println("\nEvery writer failed, the identities were restored and the next write succeeded : ");
+				System.out.println(after);
+			}
+		} catch (Exception e) {
+			System.out.println("Error during a test of an update of data!");
+			System.out.println(DETAILS + e.getMessage());
+			throw new DAOUpdateException();
+		} finally {
+			writers.shutdown();
+		}
+	}
+
+	/**
+	 * This method saves the batches of a single writer and checks the result of every batch.
+	 *
+	 * @param dao						the shared DAO
+	 * @param writer					the number of the writer
+	 * @return							true, if every batch got the results of its own identities;
+	 * 									false, otherwise
+	 * @throws DAOSaveException 		the customized exception that can thrown during saving
+	 */
+	private static boolean writeBatches(FileIdentityDAO dao, int writer) throws DAOSaveException {
+
+		boolean ownResults = true;
+		for (int batch = 0; batch < BATCHES; batch++) {
+			List<Identity> identities = new ArrayList<>(BATCH_SIZE);
+			for (int i = 0; i < BATCH_SIZE - 1; i++) {
+				String uid = writer + "." + batch + "." + i;
+				identities.add(new Identity(uid, "Identity " + uid, uid + "@iam.com"));
+			}
+			identities.add(new Identity("taken", "Taken Identity", "other." + writer + "." + batch + "@iam.com"));
+
+			List<BatchResult.Item> items = dao.saveAll(identities).getItems();
+			ownResults &= items.size() == BATCH_SIZE;
+			for (int i = 0; ownResults && i < BATCH_SIZE; i++) {
+				BatchResult.Status expected = (i < BATCH_SIZE - 1) ? BatchResult.Status.SUCCESS : BatchResult.Status.REJECTED;
+				ownResults = items.get(i).getStatus() == expected
+						  && items.get(i).getIdentity().getEmail().equals(identities.get(i).getEmail());
+			}
+		}
+
+		return ownResults;
+	}
+
+	/**
+	 * This method describes identities, sorted by their UIDs.
+	 *
+	 * @param identities				the identities
+	 * @return							the descriptions of the identities
+	 */
+	private static List<String> describe(List<Identity> identities) {
+
+		return identities.stream().sorted(Comparator.comparing(Identity::getUid))
+				.map(identity -> identity.getUid() + "|" + identity.getDisplayName() + "|" + identity.getEmail())
+				.collect(Collectors.toList());
+	}
+
+	/**
+	 * This method returns a path to an empty temporary file.
+	 *
+	 * @param name						the name of the file
+	 * @return							the path to the file
+	 */
+	private static String prepareFile(String name) {
+
+		File file = new File(DIRECTORY, name);
+		file.delete();
+
+		return file.getPath();
+	}
+
+	/**
+	 * This class is a text storage, which counts its writes and can be made to fail.
+	 */
+	private static class CountingStorage extends TextIdentityStorage {
+
+		private final AtomicInteger writes = new AtomicInteger();
+		private volatile boolean failing;
+
+		/**
+		 * This is a Constructor for a CountingStorage class.
+		 *
+		 * @param filePath				a path to the file with identities
+		 */
+		CountingStorage(String filePath) {
+			super(filePath);
+		}
+
+		/* (non-Javadoc)
+		 * @see fr.epita.iam.services.TextIdentityStorage#write()
+		 */
+		@Override
+		public void write(List<IdentityChange> changes, IdentityStore store) throws IOException {
+
+			if (failing) {
+				throw new IOException("The disk is full.");
+			}
+			writes.incrementAndGet();
+			super.write(changes, store);
+		}
+	}
+}
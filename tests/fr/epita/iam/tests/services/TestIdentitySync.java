@@ -0,0 +1,198 @@
+package fr.epita.iam.tests.services;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import fr.epita.iam.datamodel.Identity;
+import fr.epita.iam.exceptions.DAOSearchException;
+import fr.epita.iam.services.BatchResult;
+import fr.epita.iam.services.FileIdentityDAO;
+import fr.epita.iam.services.IdentityDAO;
+import fr.epita.iam.services.IdentitySync;
+import fr.epita.iam.services.MeteredIdentityDAO;
+
+/**
+ * This class tests the correct implementation of IdentitySync class.
+ * Two FileIdentityDAOs in temporary files are synced, so neither the testing file nor the database is changed.
+ *
+ * @author Lenka Horvathova
+ */
+public class TestIdentitySync {
+
+	private static final String DETAILS = "Details: ";
+	private static final String DIVIDER = "~ ~ ~ ~ ~ ~ ~ ~ ~ ~";
+
+	private static final int SIZE = 10000;
+	private static final File DIRECTORY = new File(System.getProperty("java.io.tmpdir"), "iam-sync");
+
+	/**
+	 * This is a main method for testing.
+	 *
+	 * @param args			arguments from command line, unused
+	 */
+	public static void main(String[] args) {
+
+		try {
+			System.out.println(DIVIDER);
+			System.out.println("TEST FOR A SYNC OF A FEW CHANGES");
+			testFewChanges();
+			System.out.println(DIVIDER + "\n");
+		} catch (DAOSearchException e) {
+			e.printStackTrace();
+		}
+
+		try {
+			System.out.println(DIVIDER);
+			System.out.println("TEST FOR A SYNC OF SWAPPED EMAILS");
+			testSwappedEmails();
+			System.out.println(DIVIDER + "\n");
+		} catch (DAOSearchException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * This method tests, that a sync of a few changes in a large source looks only at the changed ranges.
+	 * After the trees are built, no DAO may be scanned again and only the changed identities may be written.
+	 *
+	 * @throws DAOSearchException 		the customized exception that can thrown during searching
+	 */
+	public static void testFewChanges() throws DAOSearchException {
+
+		try {
+			MeteredIdentityDAO source = new MeteredIdentityDAO(new FileIdentityDAO(prepareFile("source.txt")));
+			MeteredIdentityDAO target = new MeteredIdentityDAO(new FileIdentityDAO(prepareFile("target.txt")));
+			List<Identity> identities = new ArrayList<>(SIZE);
+			for (int i = 0; i < SIZE; i++) {
+				identities.add(new Identity(String.valueOf(i), "Identity " + i, "identity." + i + "@iam.com"));
+			}
+			source.saveAll(identities);
+			target.saveAll(identities);
+
+			IdentitySync sync = new IdentitySync(source, target);
+			long scans = source.getMetrics().get("searchStream").getCount() + target.getMetrics().get("searchStream").getCount();
+
+			source.update(new Identity("10", "Updated Identity", "updated.10@iam.com"));
+			source.update(new Identity("2000", "Updated Identity", "identity.2000@iam.com"));
+			source.delete(new Identity("30", null, null));
+			source.delete(new Identity("4000", null, null));
+			source.save(new Identity("new1", "New Identity", "new.1@iam.com"));
+
+			IdentitySync.Report report = sync.sync();
+			System.out.println("\nReport of the sync : \n" + report);
+
+			long rescans = source.getMetrics().get("searchStream").getCount() + target.getMetrics().get("searchStream").getCount() - scans;
+			int written = report.getSaved().getItems().size() + report.getUpdated().getItems().size()
+						+ report.getDeleted().getItems().size();
+
+			if (!sameContent(source, target) || rescans != 0 || written != 5 || report.getDifferentLeaves() > 5) {
+
+				System.out.println("Something went wrong while syncing a few changes!");
+
+			} else {
+
+				System.out.println("\nThe target is the same as the source, " + report.getComparedNodes()
+								 + " nodes were compared without a scan.");
+			}
+
+			sync.close();
+			source.closeResources();
+			target.closeResources();
+		} catch (Exception e) {
+			System.out.println("Error during a test of a sync of data!");
+			System.out.println(DETAILS + e.getMessage());
+			throw new DAOSearchException();
+		}
+	}
+
+	/**
+	 * This method tests a sync of two identities, which swapped their emails in the source.
+	 * Every update is refused, while the other identity holds the email, so the emails have to be cleared first.
+	 *
+	 * @throws DAOSearchException 		the customized exception that can thrown during searching
+	 */
+	public static void testSwappedEmails() throws DAOSearchException {
+
+		try {
+			FileIdentityDAO source = new FileIdentityDAO(prepareFile("source.swap.txt"));
+			FileIdentityDAO target = new FileIdentityDAO(prepareFile("target.swap.txt"));
+			List<Identity> identities = Arrays.asList(new Identity("1", "Lenka Horvathova", "l.h@gmail.com"),
+													  new Identity("2", "Janko Hrasko", "jh@gmail.com"));
+			source.saveAll(identities);
+			target.saveAll(identities);
+
+			IdentitySync sync = new IdentitySync(source, target);
+
+			source.update(new Identity("1", "Lenka Horvathova", "swap@gmail.com"));
+			source.update(new Identity("2", "Janko Hrasko", "l.h@gmail.com"));
+			source.update(new Identity("1", "Lenka Horvathova", "jh@gmail.com"));
+
+			IdentitySync.Report report = sync.sync();
+			System.out.println("\nReport of the sync : \n" + report);
+
+			if (!sameContent(source, target) || report.getUpdated().count(BatchResult.Status.REJECTED) != 0) {
+
+				System.out.println("Something went wrong while syncing swapped emails!");
+
+			} else {
+
+				System.out.println("\nContent of the synced target : ");
+				target.printContent();
+			}
+
+			sync.close();
+			source.closeResources();
+			target.closeResources();
+		} catch (Exception e) {
+			System.out.println("Error during a test of a sync of data!");
+			System.out.println(DETAILS + e.getMessage());
+			throw new DAOSearchException();
+		}
+	}
+
+	/**
+	 * This method checks, that two DAOs hold the same identities.
+	 *
+	 * @param source					the first DAO
+	 * @param target					the second DAO
+	 * @return							true, if the DAOs hold the same identities;
+	 * 									false, otherwise
+	 * @throws DAOSearchException 		the customized exception that can thrown during searching
+	 */
+	private static boolean sameContent(IdentityDAO source, IdentityDAO target) throws DAOSearchException {
+
+		return describe(source).equals(describe(target));
+	}
+
+	/**
+	 * This method describes all the identities of a DAO, sorted by their UIDs.
+	 *
+	 * @param dao						the DAO
+	 * @return							the descriptions of the identities
+	 * @throws DAOSearchException 		the customized exception that can thrown during searching
+	 */
+	private static List<String> describe(IdentityDAO dao) throws DAOSearchException {
+
+		return dao.search(null).stream().sorted(Comparator.comparing(Identity::getUid))
+				.map(identity -> identity.getUid() + "|" + identity.getDisplayName() + "|" + identity.getEmail())
+				.collect(Collectors.toList());
+	}
+
+	/**
+	 * This method returns a path to an empty temporary file.
+	 *
+	 * @param name						the name of the file
+	 * @return							the path to the file
+	 */
+	private static String prepareFile(String name) {
+
+		File file = new File(DIRECTORY, name);
+		file.delete();
+
+		return file.getPath();
+	}
+}